@@ -0,0 +1,41 @@
+package util.service;
+
+import util.service.handler.AbstractServiceHandler;
+
+/**
+ * Reaches into the {@link ServiceConnector} singleton for the parts benchmarked directly,
+ * through its package private hooks, so that a change to them breaks the build of the benchmarks
+ */
+public final class ConnectorAccess {
+
+    private ConnectorAccess() {
+    }
+
+    /**
+     * Returns the singleton connector
+     */
+    public static ServiceConnector getConnector() {
+        return ServiceConnector.getInstance();
+    }
+
+    /**
+     * Returns the handler of the given service intent of the connector, or null if none
+     */
+    public static AbstractServiceHandler getServiceHandler(String serviceIntent) {
+        return getConnector().getServiceHandler(serviceIntent);
+    }
+
+    /**
+     * Adds a handler to the connector, without binding it
+     */
+    public static void putServiceHandler(String serviceIntent, AbstractServiceHandler serviceHandler) {
+        getConnector().putServiceHandler(serviceIntent, serviceHandler);
+    }
+
+    /**
+     * Removes a handler added with {@link #putServiceHandler(String, AbstractServiceHandler)}, without destroying it
+     */
+    public static AbstractServiceHandler removeServiceHandler(String serviceIntent) {
+        return getConnector().removeServiceHandler(serviceIntent);
+    }
+}
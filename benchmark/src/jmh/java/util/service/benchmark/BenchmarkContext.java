@@ -0,0 +1,58 @@
+package util.service.benchmark;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A Context that resolves every intent, and connects every bind right away to an in process service
+ */
+public class BenchmarkContext extends Context {
+
+    private static final String PACKAGE_NAME = "util.service.benchmark";
+
+    private final PackageManager packageManager = new PackageManager() {
+        @Override
+        public List<ResolveInfo> queryIntentServices(Intent intent, int flags) {
+            ResolveInfo resolveInfo = new ResolveInfo();
+            resolveInfo.serviceInfo = new ServiceInfo();
+            resolveInfo.serviceInfo.packageName = PACKAGE_NAME;
+            resolveInfo.serviceInfo.name = intent.getAction();
+            return Collections.singletonList(resolveInfo);
+        }
+    };
+
+    private final IBenchmarkService.Stub service = new IBenchmarkService.Stub() {
+        @Override
+        public int echo(int value) {
+            return value;
+        }
+    };
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public PackageManager getPackageManager() {
+        return packageManager;
+    }
+
+    @Override
+    public boolean bindService(Intent intent, ServiceConnection connection, int flags) {
+        connection.onServiceConnected(intent.getComponent(), service);
+        return true;
+    }
+
+    @Override
+    public void unbindService(ServiceConnection connection) {
+    }
+}
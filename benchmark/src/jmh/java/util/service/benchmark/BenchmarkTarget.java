@@ -0,0 +1,48 @@
+package util.service.benchmark;
+
+import util.service.annotation.ServiceConnectionCallback;
+import util.service.annotation.ServiceInfo;
+
+/**
+ * A target with one service field and one callback, below a few levels of plain classes,
+ * like an Activity subclass would be
+ */
+public class BenchmarkTarget extends BenchmarkTargetBase {
+
+    public static final String INTENT_BENCHMARK_SERVICE = "util.service.benchmark.BENCHMARK_SERVICE";
+
+    @ServiceInfo(serviceIntent = INTENT_BENCHMARK_SERVICE)
+    IBenchmarkService benchmarkService;
+
+    private int connectionChanges;
+    private String title;
+    private long createdAt;
+
+    @ServiceConnectionCallback
+    public void onServiceConnectionChanged(String serviceIntent, boolean connected) {
+        connectionChanges++;
+    }
+
+    public boolean isServiceSet() {
+        return benchmarkService != null;
+    }
+
+    /**
+     * Waits until all the given targets got their service field set
+     */
+    public static void awaitServiceSet(BenchmarkTarget... targets) throws InterruptedException {
+        for (BenchmarkTarget target : targets) {
+            while (!target.isServiceSet()) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,28 @@
+package util.service.benchmark;
+
+/**
+ * Plain base classes the connector walks through while binding a {@link BenchmarkTarget}
+ */
+class BenchmarkTargetBase extends BenchmarkTargetRoot {
+
+    private Object state;
+    private int flags;
+
+    protected void onCreate() {
+    }
+
+    protected void onDestroy() {
+    }
+}
+
+class BenchmarkTargetRoot {
+
+    private Object context;
+    private Object resources;
+
+    protected void onStart() {
+    }
+
+    protected void onStop() {
+    }
+}
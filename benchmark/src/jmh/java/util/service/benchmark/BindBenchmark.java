@@ -0,0 +1,57 @@
+package util.service.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import util.service.ServiceConnector;
+
+/**
+ * Cost of binding a target (scanning its class for fields and callbacks) and unbinding it,
+ * while other targets are bound to the same service
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BindBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int boundTargets;
+
+    private BenchmarkContext context;
+    private BenchmarkTarget[] targets;
+
+    @Setup
+    public void setup() throws Exception {
+        context = new BenchmarkContext();
+        targets = new BenchmarkTarget[boundTargets];
+        for (int i = 0; i < boundTargets; i++) {
+            targets[i] = new BenchmarkTarget();
+            ServiceConnector.bind(targets[i], context);
+        }
+        BenchmarkTarget.awaitServiceSet(targets);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (BenchmarkTarget target : targets) {
+            ServiceConnector.unbind(target);
+        }
+    }
+
+    @Benchmark
+    public BenchmarkTarget bindAndUnbind() {
+        BenchmarkTarget target = new BenchmarkTarget();
+        ServiceConnector.bind(target, context);
+        ServiceConnector.unbind(target);
+        return target;
+    }
+}
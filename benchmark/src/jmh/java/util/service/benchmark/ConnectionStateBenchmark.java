@@ -0,0 +1,84 @@
+package util.service.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import util.service.ConnectorAccess;
+import util.service.ServiceConnector;
+import util.service.handler.AbstractServiceHandler;
+import util.service.handler.AidlServiceHandler;
+import util.service.handler.ServiceListener;
+
+/**
+ * Cost of checking the connection state with many connected services
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConnectionStateBenchmark {
+
+    private static final String INTENT_PREFIX = "util.service.benchmark.SERVICE_";
+
+    @Param({"10", "100", "1000"})
+    public int serviceCount;
+
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkContext context = new BenchmarkContext();
+        executor = Executors.newSingleThreadExecutor();
+        ServiceListener serviceListener = new ServiceListener() {
+            @Override
+            public void onServiceConnected(String serviceIntent, AbstractServiceHandler serviceHandler) {
+            }
+
+            @Override
+            public void onServiceDisconnected(String serviceIntent, AbstractServiceHandler serviceHandler) {
+            }
+
+            @Override
+            public void onServiceConnectionFailed(String serviceIntent, Exception exception) {
+            }
+        };
+        for (int i = 0; i < serviceCount; i++) {
+            String serviceIntent = INTENT_PREFIX + i;
+            AbstractServiceHandler serviceHandler = new AidlServiceHandler<>(context, serviceIntent,
+                    IBenchmarkService.class, executor, serviceListener, false);
+            ConnectorAccess.putServiceHandler(serviceIntent, serviceHandler);
+            serviceHandler.connectToService();
+        }
+        while (!ServiceConnector.isAllConnected()) {
+            Thread.sleep(1);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (int i = 0; i < serviceCount; i++) {
+            ConnectorAccess.removeServiceHandler(INTENT_PREFIX + i).destroy();
+        }
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public boolean isAllConnected() {
+        return ServiceConnector.isAllConnected();
+    }
+
+    @Benchmark
+    public boolean isConnected() {
+        return ServiceConnector.isConnected(INTENT_PREFIX + (serviceCount - 1));
+    }
+}
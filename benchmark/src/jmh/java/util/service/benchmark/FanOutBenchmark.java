@@ -0,0 +1,65 @@
+package util.service.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import util.service.ConnectorAccess;
+import util.service.ServiceConnector;
+import util.service.handler.AbstractServiceHandler;
+
+import static util.service.benchmark.BenchmarkTarget.INTENT_BENCHMARK_SERVICE;
+
+/**
+ * Cost of delivering a connection event to the fields and callbacks of all the bound targets
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FanOutBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int boundTargets;
+
+    private ServiceConnector connector;
+    private AbstractServiceHandler serviceHandler;
+    private BenchmarkTarget[] targets;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkContext context = new BenchmarkContext();
+        targets = new BenchmarkTarget[boundTargets];
+        for (int i = 0; i < boundTargets; i++) {
+            targets[i] = new BenchmarkTarget();
+            ServiceConnector.bind(targets[i], context);
+        }
+        BenchmarkTarget.awaitServiceSet(targets);
+        connector = ConnectorAccess.getConnector();
+        serviceHandler = ConnectorAccess.getServiceHandler(INTENT_BENCHMARK_SERVICE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (BenchmarkTarget target : targets) {
+            ServiceConnector.unbind(target);
+        }
+    }
+
+    @Benchmark
+    public void onServiceConnected() {
+        connector.onServiceConnected(INTENT_BENCHMARK_SERVICE, serviceHandler);
+    }
+
+    @Benchmark
+    public void onServiceDisconnected() {
+        connector.onServiceDisconnected(INTENT_BENCHMARK_SERVICE, serviceHandler);
+    }
+}
@@ -0,0 +1,48 @@
+package util.service.benchmark;
+
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+/**
+ * A service interface shaped like the ones generated from AIDL
+ */
+public interface IBenchmarkService extends IInterface {
+
+    int echo(int value) throws RemoteException;
+
+    /**
+     * Local implementation, looked up by the connector as an AIDL stub
+     */
+    abstract class Stub implements IBenchmarkService, IBinder {
+
+        public static IBenchmarkService asInterface(IBinder binder) {
+            return binder instanceof IBenchmarkService ? (IBenchmarkService) binder : null;
+        }
+
+        @Override
+        public IBinder asBinder() {
+            return this;
+        }
+
+        @Override
+        public void linkToDeath(DeathRecipient recipient, int flags) {
+        }
+
+        @Override
+        public boolean unlinkToDeath(DeathRecipient recipient, int flags) {
+            return true;
+        }
+
+        @Override
+        public IInterface queryLocalInterface(String descriptor) {
+            return this;
+        }
+
+        @Override
+        public boolean transact(int code, Parcel data, Parcel reply, int flags) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package android.app;
+
+import android.content.Context;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public abstract class Activity extends Context {
+
+    public FragmentManager getFragmentManager() {
+        throw new RuntimeException("Stub!");
+    }
+}
@@ -0,0 +1,33 @@
+package android.app;
+
+import android.content.Context;
+import android.os.Bundle;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public abstract class Application extends Context {
+
+    public void onCreate() {
+    }
+
+    public void registerActivityLifecycleCallbacks(ActivityLifecycleCallbacks callback) {
+        throw new RuntimeException("Stub!");
+    }
+
+    public interface ActivityLifecycleCallbacks {
+        void onActivityCreated(Activity activity, Bundle savedInstanceState);
+
+        void onActivityStarted(Activity activity);
+
+        void onActivityResumed(Activity activity);
+
+        void onActivityPaused(Activity activity);
+
+        void onActivityStopped(Activity activity);
+
+        void onActivitySaveInstanceState(Activity activity, Bundle outState);
+
+        void onActivityDestroyed(Activity activity);
+    }
+}
@@ -0,0 +1,11 @@
+package android.app;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public class Fragment {
+
+    public final Activity getActivity() {
+        throw new RuntimeException("Stub!");
+    }
+}
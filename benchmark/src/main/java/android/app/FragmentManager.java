@@ -0,0 +1,26 @@
+package android.app;
+
+import android.os.Bundle;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public abstract class FragmentManager {
+
+    public abstract void registerFragmentLifecycleCallbacks(FragmentLifecycleCallbacks callbacks, boolean recursive);
+
+    public abstract static class FragmentLifecycleCallbacks {
+
+        public void onFragmentCreated(FragmentManager fm, Fragment f, Bundle savedInstanceState) {
+        }
+
+        public void onFragmentStarted(FragmentManager fm, Fragment f) {
+        }
+
+        public void onFragmentStopped(FragmentManager fm, Fragment f) {
+        }
+
+        public void onFragmentDestroyed(FragmentManager fm, Fragment f) {
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package android.content;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public final class ComponentName {
+
+    private final String packageName;
+    private final String className;
+
+    public ComponentName(String packageName, String className) {
+        this.packageName = packageName;
+        this.className = className;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ComponentName)) {
+            return false;
+        }
+        ComponentName component = (ComponentName) other;
+        return packageName.equals(component.packageName) && className.equals(component.className);
+    }
+
+    @Override
+    public int hashCode() {
+        return packageName.hashCode() + className.hashCode();
+    }
+}
@@ -0,0 +1,25 @@
+package android.content;
+
+import android.content.pm.PackageManager;
+
+import java.io.File;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public abstract class Context {
+
+    public static final int BIND_AUTO_CREATE = 0x0001;
+
+    public abstract Context getApplicationContext();
+
+    public abstract PackageManager getPackageManager();
+
+    public File getCacheDir() {
+        throw new RuntimeException("Stub!");
+    }
+
+    public abstract boolean bindService(Intent service, ServiceConnection connection, int flags);
+
+    public abstract void unbindService(ServiceConnection connection);
+}
@@ -0,0 +1,40 @@
+package android.content;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public class Intent {
+
+    private String action;
+    private ComponentName component;
+
+    public Intent(String action) {
+        this.action = action;
+    }
+
+    public Intent(Intent other) {
+        this.action = other.action;
+        this.component = other.component;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public ComponentName getComponent() {
+        return component;
+    }
+
+    public Intent setComponent(ComponentName component) {
+        this.component = component;
+        return this;
+    }
+
+    public boolean filterEquals(Intent other) {
+        return other != null && equals(action, other.action) && equals(component, other.component);
+    }
+
+    private static boolean equals(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -0,0 +1,13 @@
+package android.content;
+
+import android.os.IBinder;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public interface ServiceConnection {
+
+    void onServiceConnected(ComponentName name, IBinder service);
+
+    void onServiceDisconnected(ComponentName name);
+}
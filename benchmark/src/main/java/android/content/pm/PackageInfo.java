@@ -0,0 +1,10 @@
+package android.content.pm;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public class PackageInfo {
+
+    public String packageName;
+    public int versionCode;
+}
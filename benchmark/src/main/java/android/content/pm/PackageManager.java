@@ -0,0 +1,20 @@
+package android.content.pm;
+
+import android.content.Intent;
+
+import java.util.List;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public abstract class PackageManager {
+
+    public abstract List<ResolveInfo> queryIntentServices(Intent intent, int flags);
+
+    public PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException {
+        throw new RuntimeException("Stub!");
+    }
+
+    public static class NameNotFoundException extends Exception {
+    }
+}
@@ -0,0 +1,9 @@
+package android.content.pm;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public class ResolveInfo {
+
+    public ServiceInfo serviceInfo;
+}
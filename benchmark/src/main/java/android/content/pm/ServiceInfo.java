@@ -0,0 +1,10 @@
+package android.content.pm;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public class ServiceInfo {
+
+    public String packageName;
+    public String name;
+}
@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public class Build {
+
+    public static class VERSION {
+        public static final int SDK_INT = 0;
+    }
+
+    public static class VERSION_CODES {
+        public static final int GINGERBREAD = 9;
+        public static final int ICE_CREAM_SANDWICH = 14;
+        public static final int JELLY_BEAN_MR2 = 18;
+        public static final int O = 26;
+        public static final int O_MR1 = 27;
+    }
+}
@@ -0,0 +1,7 @@
+package android.os;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public final class Bundle {
+}
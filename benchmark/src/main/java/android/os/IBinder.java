@@ -0,0 +1,22 @@
+package android.os;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public interface IBinder {
+
+    int FIRST_CALL_TRANSACTION = 0x00000001;
+    int LAST_CALL_TRANSACTION = 0x00ffffff;
+
+    interface DeathRecipient {
+        void binderDied();
+    }
+
+    void linkToDeath(DeathRecipient recipient, int flags) throws RemoteException;
+
+    boolean unlinkToDeath(DeathRecipient recipient, int flags);
+
+    IInterface queryLocalInterface(String descriptor);
+
+    boolean transact(int code, Parcel data, Parcel reply, int flags) throws RemoteException;
+}
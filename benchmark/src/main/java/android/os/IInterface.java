@@ -0,0 +1,9 @@
+package android.os;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public interface IInterface {
+
+    IBinder asBinder();
+}
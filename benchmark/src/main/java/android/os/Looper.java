@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM. No thread loops.
+ */
+public final class Looper {
+
+    private static final Looper MAIN_LOOPER = new Looper();
+
+    public static Looper getMainLooper() {
+        return MAIN_LOOPER;
+    }
+
+    public static Looper myLooper() {
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+package android.os;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public final class Parcel {
+
+    public int readInt() {
+        throw new RuntimeException("Stub!");
+    }
+
+    public void writeInt(int value) {
+        throw new RuntimeException("Stub!");
+    }
+
+    public long readLong() {
+        throw new RuntimeException("Stub!");
+    }
+
+    public void writeLong(long value) {
+        throw new RuntimeException("Stub!");
+    }
+
+    public int dataSize() {
+        throw new RuntimeException("Stub!");
+    }
+
+    public void setDataSize(int size) {
+        throw new RuntimeException("Stub!");
+    }
+
+    public int dataPosition() {
+        throw new RuntimeException("Stub!");
+    }
+
+    public void setDataPosition(int position) {
+        throw new RuntimeException("Stub!");
+    }
+
+    public static Parcel obtain() {
+        throw new RuntimeException("Stub!");
+    }
+
+    public void recycle() {
+        throw new RuntimeException("Stub!");
+    }
+
+    public void writeParcelable(Parcelable value, int flags) {
+        throw new RuntimeException("Stub!");
+    }
+
+    public <T extends Parcelable> T readParcelable(ClassLoader classLoader) {
+        throw new RuntimeException("Stub!");
+    }
+
+    public byte[] marshall() {
+        throw new RuntimeException("Stub!");
+    }
+
+    public void unmarshall(byte[] data, int offset, int length) {
+        throw new RuntimeException("Stub!");
+    }
+}
@@ -0,0 +1,38 @@
+package android.os;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public class ParcelFileDescriptor implements Closeable {
+
+    public static ParcelFileDescriptor[] createPipe() throws IOException {
+        throw new RuntimeException("Stub!");
+    }
+
+    public FileDescriptor getFileDescriptor() {
+        throw new RuntimeException("Stub!");
+    }
+
+    @Override
+    public void close() throws IOException {
+        throw new RuntimeException("Stub!");
+    }
+
+    public static class AutoCloseInputStream extends FileInputStream {
+        public AutoCloseInputStream(ParcelFileDescriptor pfd) {
+            super(pfd.getFileDescriptor());
+        }
+    }
+
+    public static class AutoCloseOutputStream extends FileOutputStream {
+        public AutoCloseOutputStream(ParcelFileDescriptor pfd) {
+            super(pfd.getFileDescriptor());
+        }
+    }
+}
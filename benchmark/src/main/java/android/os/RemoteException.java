@@ -0,0 +1,14 @@
+package android.os;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public class RemoteException extends Exception {
+
+    public RemoteException() {
+    }
+
+    public RemoteException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,45 @@
+package android.os;
+
+import android.system.ErrnoException;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public final class SharedMemory implements Parcelable, Closeable {
+
+    public static final Creator<SharedMemory> CREATOR = null;
+
+    public static SharedMemory create(String name, int size) throws ErrnoException {
+        throw new RuntimeException("Stub!");
+    }
+
+    public static void unmap(ByteBuffer buffer) {
+        throw new RuntimeException("Stub!");
+    }
+
+    public int getSize() {
+        throw new RuntimeException("Stub!");
+    }
+
+    public ByteBuffer mapReadWrite() throws ErrnoException {
+        throw new RuntimeException("Stub!");
+    }
+
+    @Override
+    public void close() {
+        throw new RuntimeException("Stub!");
+    }
+
+    @Override
+    public int describeContents() {
+        throw new RuntimeException("Stub!");
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        throw new RuntimeException("Stub!");
+    }
+}
@@ -0,0 +1,15 @@
+package android.os;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM
+ */
+public final class Trace {
+
+    public static void beginSection(String sectionName) {
+        throw new RuntimeException("Stub!");
+    }
+
+    public static void endSection() {
+        throw new RuntimeException("Stub!");
+    }
+}
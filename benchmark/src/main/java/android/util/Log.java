@@ -0,0 +1,23 @@
+package android.util;
+
+/**
+ * Stand-in for the framework class, enough to run the connector on the JVM. Drops all logs.
+ */
+public final class Log {
+
+    public static int v(String tag, String message) {
+        return 0;
+    }
+
+    public static int w(String tag, String message) {
+        return 0;
+    }
+
+    public static int w(String tag, Throwable throwable) {
+        return 0;
+    }
+
+    public static int w(String tag, String message, Throwable throwable) {
+        return 0;
+    }
+}
@@ -0,0 +1,124 @@
+package util.serviceconnector.sampleclient.benchmark;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.TextView;
+
+import util.serviceconnector.sampleclient.R;
+
+/**
+ * Binds to the benchmark service, times the connection, runs the configured calls,
+ * then kills the service and times the reconnection.
+ * <p>
+ * Configured with intent extras, see {@link BenchmarkConfig}. For example
+ * <pre><code>
+ * adb shell am start -n util.serviceconnector.sampleclient/.benchmark.ServiceConnectorBenchmarkActivity \
+ *     -e interface remoter -e call echo --ei payloadSize 4096 --ei concurrency 4 --ei calls 20000
+ * </code></pre>
+ * The report is shown and logged with the tag "Benchmark".
+ */
+public abstract class BenchmarkActivity extends Activity {
+
+    private static final String TAG = "Benchmark";
+
+    protected BenchmarkConfig config;
+    private TextView reportView;
+    private long bindTime;
+    private long killTime;
+    private boolean started;
+    private BenchmarkResult result;
+
+    /**
+     * Binds to the service to benchmark
+     */
+    protected abstract void bindBenchmarkService();
+
+    /**
+     * Unbinds from the service
+     */
+    protected abstract void unbindBenchmarkService();
+
+    /**
+     * Returns the call to make on the connected service
+     */
+    protected abstract BenchmarkCall createCall();
+
+    /**
+     * Kills the service process
+     */
+    protected abstract void killService() throws Exception;
+
+    /**
+     * Creates the payload to send with each call
+     */
+    protected byte[] createPayload() {
+        return new byte[config.payloadSize];
+    }
+
+    /**
+     * To be called when the benchmarked service connects
+     */
+    protected final synchronized void onBenchmarkServiceConnected() {
+        long now = System.nanoTime();
+        if (!started) {
+            started = true;
+            final long timeToConnect = now - bindTime;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runBenchmark(timeToConnect);
+                }
+            }, "Benchmark").start();
+        } else if (killTime != 0) {
+            result.setReconnectTime(now - killTime);
+            killTime = 0;
+            report(result.toString());
+        }
+    }
+
+    private void runBenchmark(long timeToConnect) {
+        try {
+            report("Running " + config);
+            BenchmarkResult result = new BenchmarkRunner(config, createCall()).run();
+            result.setTimeToConnect(timeToConnect);
+            report(result.toString());
+            if (config.kill) {
+                synchronized (this) {
+                    this.result = result;
+                    killTime = System.nanoTime();
+                }
+                killService();
+            }
+        } catch (Exception ex) {
+            Log.w(TAG, "Benchmark failed", ex);
+            report("Benchmark failed " + ex);
+        }
+    }
+
+    private void report(final String report) {
+        Log.i(TAG, report);
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                reportView.setText(report);
+            }
+        });
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_benchmark);
+        reportView = (TextView) findViewById(R.id.benchmark_report);
+        config = BenchmarkConfig.fromIntent(getIntent());
+        bindTime = System.nanoTime();
+        bindBenchmarkService();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        unbindBenchmarkService();
+    }
+}
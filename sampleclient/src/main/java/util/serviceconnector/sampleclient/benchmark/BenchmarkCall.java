@@ -0,0 +1,9 @@
+package util.serviceconnector.sampleclient.benchmark;
+
+/**
+ * A single call to the service, timed by the {@link BenchmarkRunner}
+ */
+interface BenchmarkCall {
+
+    void call() throws Exception;
+}
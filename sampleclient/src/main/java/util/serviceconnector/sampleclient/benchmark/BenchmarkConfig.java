@@ -0,0 +1,62 @@
+package util.serviceconnector.sampleclient.benchmark;
+
+import android.content.Intent;
+
+/**
+ * What to benchmark, read from the extras of the intent that started the benchmark activity
+ */
+class BenchmarkConfig {
+
+    static final String EXTRA_INTERFACE = "interface";
+    static final String EXTRA_CALL = "call";
+    static final String EXTRA_PAYLOAD_SIZE = "payloadSize";
+    static final String EXTRA_CONCURRENCY = "concurrency";
+    static final String EXTRA_CALLS = "calls";
+    static final String EXTRA_WARMUP_CALLS = "warmupCalls";
+    static final String EXTRA_KILL = "kill";
+
+    static final String INTERFACE_AIDL = "aidl";
+    static final String INTERFACE_REMOTER = "remoter";
+    static final String CALL_PING = "ping";
+    static final String CALL_ECHO = "echo";
+    static final String CALL_FETCH = "fetch";
+
+    final String serviceInterface;
+    final String call;
+    final int payloadSize;
+    final int concurrency;
+    final int calls;
+    final int warmupCalls;
+    final boolean kill;
+
+    private BenchmarkConfig(Intent intent) {
+        serviceInterface = getString(intent, EXTRA_INTERFACE, INTERFACE_AIDL);
+        call = getString(intent, EXTRA_CALL, CALL_PING);
+        payloadSize = intent.getIntExtra(EXTRA_PAYLOAD_SIZE, 1024);
+        concurrency = intent.getIntExtra(EXTRA_CONCURRENCY, 1);
+        calls = intent.getIntExtra(EXTRA_CALLS, 10000);
+        warmupCalls = intent.getIntExtra(EXTRA_WARMUP_CALLS, 1000);
+        kill = intent.getBooleanExtra(EXTRA_KILL, true);
+        if (concurrency < 1 || calls < 1 || warmupCalls < 0 || payloadSize < 0) {
+            throw new IllegalArgumentException("Invalid benchmark config " + this);
+        }
+    }
+
+    /**
+     * Reads the config from the given intent, using the defaults for the missing extras
+     */
+    static BenchmarkConfig fromIntent(Intent intent) {
+        return new BenchmarkConfig(intent);
+    }
+
+    private static String getString(Intent intent, String name, String defaultValue) {
+        String value = intent.getStringExtra(name);
+        return value != null ? value : defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return serviceInterface + " " + call + " payload=" + payloadSize + " concurrency=" + concurrency
+                + " calls=" + calls + " warmup=" + warmupCalls;
+    }
+}
@@ -0,0 +1,70 @@
+package util.serviceconnector.sampleclient.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Throughput and latencies of a benchmark run, along with the connection times
+ */
+class BenchmarkResult {
+
+    private final BenchmarkConfig config;
+    private final long[] latencies;
+    private final long elapsedTime;
+    private final int failedCalls;
+    private long timeToConnect = -1;
+    private long reconnectTime = -1;
+
+    /**
+     * @param latencies   Latency of each successful call in ns
+     * @param elapsedTime Wall time of the run in ns
+     * @param failedCalls Number of calls that threw
+     */
+    BenchmarkResult(BenchmarkConfig config, long[] latencies, long elapsedTime, int failedCalls) {
+        this.config = config;
+        this.latencies = latencies;
+        this.elapsedTime = elapsedTime;
+        this.failedCalls = failedCalls;
+        Arrays.sort(this.latencies);
+    }
+
+    /**
+     * Sets the time from binding to the service being ready to call, in ns
+     */
+    void setTimeToConnect(long timeToConnect) {
+        this.timeToConnect = timeToConnect;
+    }
+
+    /**
+     * Sets the time from killing the service to it being ready to call again, in ns
+     */
+    void setReconnectTime(long reconnectTime) {
+        this.reconnectTime = reconnectTime;
+    }
+
+    double getCallsPerSecond() {
+        return elapsedTime > 0 ? latencies.length * 1e9 / elapsedTime : 0;
+    }
+
+    /**
+     * Returns the latency in ns at the given percentile, 0-100
+     */
+    long getLatency(double percentile) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+        return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s%n"
+                        + "calls/s %.0f, failed %d%n"
+                        + "latency us p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n"
+                        + "connect ms %.1f, reconnect after kill ms %s",
+                config, getCallsPerSecond(), failedCalls,
+                getLatency(50) / 1e3, getLatency(90) / 1e3, getLatency(99) / 1e3, getLatency(100) / 1e3,
+                timeToConnect / 1e6, reconnectTime >= 0 ? String.format(Locale.US, "%.1f", reconnectTime / 1e6) : "-");
+    }
+}
@@ -0,0 +1,72 @@
+package util.serviceconnector.sampleclient.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes the configured number of calls from the configured number of threads, timing each of them
+ */
+class BenchmarkRunner {
+
+    private final BenchmarkConfig config;
+    private final BenchmarkCall call;
+
+    BenchmarkRunner(BenchmarkConfig config, BenchmarkCall call) {
+        this.config = config;
+        this.call = call;
+    }
+
+    /**
+     * Runs the warmup calls and then the timed calls, blocking until done
+     */
+    BenchmarkResult run() throws InterruptedException {
+        runCalls(config.warmupCalls, null);
+        long[] latencies = new long[config.calls];
+        long startTime = System.nanoTime();
+        int failedCalls = runCalls(config.calls, latencies);
+        long elapsedTime = System.nanoTime() - startTime;
+        long[] successfulLatencies = new long[config.calls - failedCalls];
+        int index = 0;
+        for (long latency : latencies) {
+            if (latency >= 0) {
+                successfulLatencies[index++] = latency;
+            }
+        }
+        return new BenchmarkResult(config, successfulLatencies, elapsedTime, failedCalls);
+    }
+
+    /**
+     * Makes the given number of calls spread over the threads, recording each latency
+     * if given an array to record them in, -1 for the failed ones
+     */
+    private int runCalls(final int calls, final long[] latencies) throws InterruptedException {
+        final AtomicInteger nextCall = new AtomicInteger();
+        final AtomicInteger failedCalls = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(config.concurrency);
+        for (int i = 0; i < config.concurrency; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int callIndex;
+                    while ((callIndex = nextCall.getAndIncrement()) < calls) {
+                        long startTime = System.nanoTime();
+                        long latency;
+                        try {
+                            call.call();
+                            latency = System.nanoTime() - startTime;
+                        } catch (Exception ex) {
+                            failedCalls.incrementAndGet();
+                            latency = -1;
+                        }
+                        if (latencies != null) {
+                            latencies[callIndex] = latency;
+                        }
+                    }
+                    done.countDown();
+                }
+            }, "Benchmark-" + i).start();
+        }
+        done.await();
+        return failedCalls.get();
+    }
+}
@@ -0,0 +1,80 @@
+package util.serviceconnector.sampleclient.benchmark;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
+
+import util.serviceconnector.sampleclient.ActivityWithoutServiceConnector;
+import util.serviceconnector.service.IBenchmarkService;
+
+/**
+ * Benchmarks calls made through a service bound with bindService directly, like {@link ActivityWithoutServiceConnector},
+ * as the reference to compare {@link ServiceConnectorBenchmarkActivity} against. Only supports the AIDL interface.
+ */
+public class RawBenchmarkActivity extends BenchmarkActivity {
+
+    private volatile IBenchmarkService mBenchmarkService;
+
+    /**
+     * Service connection that gets call back when service is connected
+     */
+    private ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName componentName, IBinder service) {
+            mBenchmarkService = IBenchmarkService.Stub.asInterface(service);
+            onBenchmarkServiceConnected();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName componentName) {
+            mBenchmarkService = null;
+        }
+    };
+
+    @Override
+    protected void bindBenchmarkService() {
+        Intent serviceIntent = new Intent("util.serviceconnector.BENCHMARK_SERVICE");
+        serviceIntent.setComponent(new ComponentName("util.serviceconnector.service", "util.serviceconnector.service.BenchmarkService"));
+        bindService(serviceIntent, serviceConnection, Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void unbindBenchmarkService() {
+        unbindService(serviceConnection);
+    }
+
+    @Override
+    protected BenchmarkCall createCall() {
+        final byte[] payload = createPayload();
+        switch (config.call) {
+            case BenchmarkConfig.CALL_ECHO:
+                return new BenchmarkCall() {
+                    @Override
+                    public void call() throws Exception {
+                        mBenchmarkService.echo(payload);
+                    }
+                };
+            case BenchmarkConfig.CALL_FETCH:
+                return new BenchmarkCall() {
+                    @Override
+                    public void call() throws Exception {
+                        mBenchmarkService.fetch(config.payloadSize);
+                    }
+                };
+            default:
+                return new BenchmarkCall() {
+                    @Override
+                    public void call() throws Exception {
+                        mBenchmarkService.ping(1);
+                    }
+                };
+        }
+    }
+
+    @Override
+    protected void killService() throws Exception {
+        mBenchmarkService.kill();
+    }
+}
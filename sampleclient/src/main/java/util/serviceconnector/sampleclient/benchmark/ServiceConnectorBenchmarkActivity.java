@@ -0,0 +1,89 @@
+package util.serviceconnector.sampleclient.benchmark;
+
+import util.service.ServiceConnector;
+import util.service.annotation.ServiceConnectionCallback;
+import util.service.annotation.ServiceInfo;
+import util.serviceconnector.service.IBenchmarkService;
+import util.serviceconnector.service.IRemoterBenchmarkService;
+
+/**
+ * Benchmarks calls made through the fields injected by {@link ServiceConnector}
+ */
+public class ServiceConnectorBenchmarkActivity extends BenchmarkActivity {
+
+    private static final String INTENT_BENCHMARK_SERVICE = "util.serviceconnector.BENCHMARK_SERVICE";
+    private static final String INTENT_REMOTER_BENCHMARK_SERVICE = "util.serviceconnector.REMOTER_BENCHMARK_SERVICE";
+
+    //AIDL service
+    @ServiceInfo(serviceIntent = INTENT_BENCHMARK_SERVICE)
+    private IBenchmarkService mBenchmarkService;
+
+    //service of type @Remoter
+    @ServiceInfo(serviceIntent = INTENT_REMOTER_BENCHMARK_SERVICE)
+    private IRemoterBenchmarkService mRemoterBenchmarkService;
+
+    @ServiceConnectionCallback
+    public void onServiceConnectionChanged(String serviceIntent, boolean connected) {
+        boolean remoter = BenchmarkConfig.INTERFACE_REMOTER.equals(config.serviceInterface);
+        if (connected && serviceIntent.equals(remoter ? INTENT_REMOTER_BENCHMARK_SERVICE : INTENT_BENCHMARK_SERVICE)) {
+            onBenchmarkServiceConnected();
+        }
+    }
+
+    @Override
+    protected void bindBenchmarkService() {
+        ServiceConnector.bind(this, this);
+    }
+
+    @Override
+    protected void unbindBenchmarkService() {
+        ServiceConnector.unbind(this);
+    }
+
+    @Override
+    protected BenchmarkCall createCall() {
+        final byte[] payload = createPayload();
+        final boolean remoter = BenchmarkConfig.INTERFACE_REMOTER.equals(config.serviceInterface);
+        switch (config.call) {
+            case BenchmarkConfig.CALL_ECHO:
+                return new BenchmarkCall() {
+                    @Override
+                    public void call() throws Exception {
+                        if (remoter) {
+                            mRemoterBenchmarkService.echo(payload);
+                        } else {
+                            mBenchmarkService.echo(payload);
+                        }
+                    }
+                };
+            case BenchmarkConfig.CALL_FETCH:
+                return new BenchmarkCall() {
+                    @Override
+                    public void call() throws Exception {
+                        if (remoter) {
+                            mRemoterBenchmarkService.fetch(config.payloadSize);
+                        } else {
+                            mBenchmarkService.fetch(config.payloadSize);
+                        }
+                    }
+                };
+            default:
+                return new BenchmarkCall() {
+                    @Override
+                    public void call() throws Exception {
+                        if (remoter) {
+                            mRemoterBenchmarkService.ping(1);
+                        } else {
+                            mBenchmarkService.ping(1);
+                        }
+                    }
+                };
+        }
+    }
+
+    @Override
+    protected void killService() throws Exception {
+        //the remoter interface goes through the same service process
+        mBenchmarkService.kill();
+    }
+}
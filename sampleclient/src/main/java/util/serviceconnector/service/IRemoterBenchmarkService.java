@@ -0,0 +1,26 @@
+package util.serviceconnector.service;
+
+import remoter.annotations.ParamIn;
+import remoter.annotations.Remoter;
+
+/**
+ * Remoter interface of the benchmark service
+ */
+@Remoter
+public interface IRemoterBenchmarkService {
+
+    /**
+     * Returns the given value, the smallest call possible
+     */
+    int ping(int value);
+
+    /**
+     * Returns the given payload, to measure calls carrying data both ways
+     */
+    byte[] echo(@ParamIn byte[] payload);
+
+    /**
+     * Returns a payload of the given size, to measure calls returning data
+     */
+    byte[] fetch(int size);
+}
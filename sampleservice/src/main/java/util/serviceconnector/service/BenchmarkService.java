@@ -0,0 +1,71 @@
+package util.serviceconnector.service;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.IBinder;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Service driven by the client benchmark. Binds to an AIDL or a Remoter binder depending on the intent.
+ */
+public class BenchmarkService extends Service {
+
+    private static final String TAG = BenchmarkService.class.getSimpleName();
+    private static final String INTENT_REMOTER_BENCHMARK_SERVICE = "util.serviceconnector.REMOTER_BENCHMARK_SERVICE";
+
+    private IBinder benchmarkServiceImpl = new IBenchmarkService.Stub() {
+
+        @Override
+        public int ping(int value) {
+            return value;
+        }
+
+        @Override
+        public byte[] echo(byte[] payload) {
+            return payload;
+        }
+
+        @Override
+        public byte[] fetch(int size) {
+            return new byte[size];
+        }
+
+        @Override
+        public void kill() {
+            Log.v(TAG, "Killing the service process");
+            Process.killProcess(Process.myPid());
+        }
+    };
+
+    private IBinder remoterBenchmarkServiceImpl = new IRemoterBenchmarkService.Stub() {
+
+        @Override
+        public int ping(int value) {
+            return value;
+        }
+
+        @Override
+        public byte[] echo(byte[] payload) {
+            return payload;
+        }
+
+        @Override
+        public byte[] fetch(int size) {
+            return new byte[size];
+        }
+    };
+
+    public BenchmarkService() {
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return INTENT_REMOTER_BENCHMARK_SERVICE.equals(intent.getAction()) ? remoterBenchmarkServiceImpl : benchmarkServiceImpl;
+    }
+}
@@ -0,0 +1,123 @@
+package util.service;
+
+import android.os.DeadObjectException;
+import android.os.RemoteException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import util.service.trace.TraceContext;
+
+/**
+ * Implements an async variant of a service interface, whose methods return {@link Future}s of the results of
+ * the service methods of the same name and parameters. The calls are made on the given pool of threads of the service,
+ * through the object injected for the service, so that they go through its interceptors too.
+ * The {@link TraceContext} of the caller is current on the pool thread for the call.
+ *
+ * @see ServiceConnector#getAsync(String, Class, Class)
+ */
+class AsyncService implements InvocationHandler {
+
+    private final ServiceConnector serviceConnector;
+    private final String serviceIntent;
+    private final ExecutorService executor;
+    private final Map<Method, Method> serviceMethods;
+
+    /**
+     * Creates the async variant of the given service interface
+     *
+     * @throws IllegalArgumentException If the async interface has a method that does not return a {@link Future},
+     *                                  or has no service method of the same name and parameters
+     */
+    static <A> A create(ServiceConnector serviceConnector, String serviceIntent, Class<?> serviceClass, Class<A> asyncClass,
+                        ExecutorService executor) throws IllegalArgumentException {
+        if (!asyncClass.isInterface()) {
+            throw new IllegalArgumentException(asyncClass.getName() + " is not an interface");
+        }
+        Map<Method, Method> serviceMethods = new HashMap<>();
+        for (Method method : asyncClass.getMethods()) {
+            if (method.getReturnType() != Future.class) {
+                throw new IllegalArgumentException(method.getName() + " should return a Future");
+            }
+            try {
+                serviceMethods.put(method, serviceClass.getMethod(method.getName(), method.getParameterTypes()));
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalArgumentException(method.getName() + " not found in " + serviceClass.getName());
+            }
+        }
+        AsyncService asyncService = new AsyncService(serviceConnector, serviceIntent, executor, serviceMethods);
+        return asyncClass.cast(Proxy.newProxyInstance(asyncClass.getClassLoader(), new Class[]{asyncClass}, asyncService));
+    }
+
+    private AsyncService(ServiceConnector serviceConnector, String serviceIntent, ExecutorService executor,
+                         Map<Method, Method> serviceMethods) {
+        this.serviceConnector = serviceConnector;
+        this.serviceIntent = serviceIntent;
+        this.executor = executor;
+        this.serviceMethods = serviceMethods;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, final Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return "AsyncService[" + serviceIntent + "]";
+        }
+        final Method serviceMethod = serviceMethods.get(method);
+        final TraceContext traceContext = TraceContext.current();
+        return executor.submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                TraceContext previous = TraceContext.attach(traceContext);
+                try {
+                    return invokeService(serviceMethod, args);
+                } finally {
+                    TraceContext.attach(previous);
+                }
+            }
+        });
+    }
+
+    /**
+     * Calls the given method on the object injected for the service
+     */
+    private Object invokeService(Method serviceMethod, Object[] args) throws Exception {
+        Object service = serviceConnector.getServiceObject(serviceIntent);
+        if (service == null) {
+            throw notConnected(serviceMethod);
+        }
+        try {
+            return serviceMethod.invoke(service, args);
+        } catch (InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (Exception) cause;
+        }
+    }
+
+    /**
+     * Returns the exception to fail a call with while not connected, as the service object would
+     */
+    private Exception notConnected(Method serviceMethod) {
+        for (Class<?> exceptionType : serviceMethod.getExceptionTypes()) {
+            if (exceptionType.isAssignableFrom(RemoteException.class)) {
+                return new DeadObjectException("Service not connected " + serviceIntent);
+            }
+        }
+        return new IllegalStateException("Service not connected " + serviceIntent);
+    }
+}
@@ -0,0 +1,254 @@
+package util.service;
+
+import android.os.DeadObjectException;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import util.service.proxy.CallLog;
+
+/**
+ * Replays the calls of a {@link CallLog} to a bound service, as recorded or faster, to load test the service.
+ * <p>
+ * The calls are made straight to the service object, past the interceptors of its proxy, from a pool
+ * of the given number of threads. A call is made when it is due, or as soon as a thread is free if all are busy.
+ * When replayed at a speed, the latency of a call counts from when it was due, so that the time it waited for
+ * a thread held up by slow calls is not left out.
+ * The calls whose arguments were not logged, or whose methods the service interface no longer has, are skipped.
+ * <p>
+ * The log has the calls in the order they completed, so it is read in full and the calls are replayed in the order
+ * they were made.
+ *
+ * @see ServiceConnector#replayCalls(String, File, double, int)
+ */
+public final class CallReplayer {
+
+    private final ServiceConnector serviceConnector;
+    private final String serviceIntent;
+    private final double speed;
+    private final int concurrency;
+
+    /**
+     * Initialize the replayer
+     *
+     * @param serviceIntent The intent of the service to call, bound by the given connector
+     * @param speed         How many times faster than recorded to make the calls, 0 to make them as fast as possible
+     * @param concurrency   Maximum number of calls made at the same time
+     */
+    CallReplayer(ServiceConnector serviceConnector, String serviceIntent, double speed, int concurrency) {
+        if (!(speed >= 0)) {
+            throw new IllegalArgumentException("speed should not be negative");
+        }
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency should be greater than 0");
+        }
+        this.serviceConnector = serviceConnector;
+        this.serviceIntent = serviceIntent;
+        this.speed = speed;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Replays the calls of the given log, returning once they all completed
+     *
+     * @throws IOException If the log cannot be read, or its service interface is not found
+     */
+    Report replay(File log) throws IOException, InterruptedException {
+        CallLog.Reader reader = new CallLog.Reader(log);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ServiceConnector-replay");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            ClassLoader classLoader = CallReplayer.class.getClassLoader();
+            Class<?> serviceClass;
+            try {
+                serviceClass = Class.forName(reader.getServiceClassName(), false, classLoader);
+            } catch (ClassNotFoundException ex) {
+                throw new IOException("Unknown service interface " + reader.getServiceClassName());
+            }
+            final Semaphore threads = new Semaphore(concurrency);
+            final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+            final AtomicInteger failedCalls = new AtomicInteger();
+            int skippedCalls = 0;
+            List<CallLog.Record> records = readRecords(reader);
+            long start = System.nanoTime();
+            for (CallLog.Record record : records) {
+                final Method method;
+                final Object[] arguments;
+                try {
+                    method = record.getMethod(serviceClass);
+                    arguments = record.getArguments(classLoader);
+                } catch (NoSuchMethodException | IOException ex) {
+                    skippedCalls++;
+                    continue;
+                }
+                final long due;
+                if (speed > 0) {
+                    due = start + (long) (TimeUnit.MICROSECONDS.toNanos(record.getTime()) / speed);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                } else {
+                    due = 0;
+                }
+                threads.acquire();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        long callStart = speed > 0 ? due : System.nanoTime();
+                        try {
+                            call(method, arguments);
+                        } catch (Exception ex) {
+                            failedCalls.incrementAndGet();
+                        } finally {
+                            latencies.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - callStart));
+                            threads.release();
+                        }
+                    }
+                });
+            }
+            //wait for the calls still being made
+            threads.acquire(concurrency);
+            long duration = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            return new Report(new ArrayList<>(latencies), failedCalls.get(), skippedCalls, duration);
+        } finally {
+            executor.shutdown();
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the calls of the given log, sorted by when they were made
+     */
+    private static List<CallLog.Record> readRecords(CallLog.Reader reader) throws IOException {
+        List<CallLog.Record> records = new ArrayList<>();
+        CallLog.Record record;
+        while ((record = reader.next()) != null) {
+            records.add(record);
+        }
+        //stable, so that the calls made at the same time keep their order
+        Collections.sort(records, new Comparator<CallLog.Record>() {
+            @Override
+            public int compare(CallLog.Record record1, CallLog.Record record2) {
+                return record1.getTime() < record2.getTime() ? -1 : (record1.getTime() == record2.getTime() ? 0 : 1);
+            }
+        });
+        return records;
+    }
+
+    /**
+     * Calls the given method on the current service object
+     */
+    private void call(Method method, Object[] arguments) throws Exception {
+        Object service = serviceConnector.getService(serviceIntent);
+        if (service == null) {
+            throw new DeadObjectException("Service not connected " + serviceIntent);
+        }
+        try {
+            method.invoke(service, arguments);
+        } catch (InvocationTargetException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (Exception) cause;
+        }
+    }
+
+    /**
+     * Throughput and latency of a replay
+     */
+    public static final class Report {
+
+        private final long[] latencies;
+        private final int failedCalls;
+        private final int skippedCalls;
+        private final long duration;
+
+        Report(List<Long> latencies, int failedCalls, int skippedCalls, long duration) {
+            this.latencies = new long[latencies.size()];
+            for (int i = 0; i < this.latencies.length; i++) {
+                this.latencies[i] = latencies.get(i);
+            }
+            Arrays.sort(this.latencies);
+            this.failedCalls = failedCalls;
+            this.skippedCalls = skippedCalls;
+            this.duration = duration;
+        }
+
+        /**
+         * Returns the number of calls made, including the failed ones
+         */
+        public int getCalls() {
+            return latencies.length;
+        }
+
+        /**
+         * Returns the number of calls that threw
+         */
+        public int getFailedCalls() {
+            return failedCalls;
+        }
+
+        /**
+         * Returns the number of calls of the log that could not be replayed
+         */
+        public int getSkippedCalls() {
+            return skippedCalls;
+        }
+
+        /**
+         * Returns how long the replay took, in us
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * Returns the number of calls made per second
+         */
+        public double getThroughput() {
+            return duration > 0 ? latencies.length * (double) TimeUnit.SECONDS.toMicros(1) / duration : 0;
+        }
+
+        /**
+         * Returns the latency under which the given percentage of the calls completed, in us.
+         * At a speed, the latency counts from when the call was due.
+         *
+         * @param percentile From 0 to 100, like 50 for the median or 99
+         */
+        public long getLatency(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.min(latencies.length - 1, Math.max(0, index))];
+        }
+
+        @Override
+        public String toString() {
+            return getCalls() + " calls (" + failedCalls + " failed, " + skippedCalls + " skipped) in " + duration / 1000 + "ms, "
+                    + Math.round(getThroughput()) + " calls/s, latency p50 " + getLatency(50) + "us p90 " + getLatency(90)
+                    + "us p99 " + getLatency(99) + "us max " + getLatency(100) + "us";
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package util.service;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.app.Fragment;
+import android.app.FragmentManager;
+import android.os.Build;
+import android.os.Bundle;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import util.service.annotation.ServiceInfo;
+
+/**
+ * Binds the activities, and the fragments of those, that have fields annotated with {@link ServiceInfo}
+ * when they are created, and unbinds them when they are destroyed.
+ * Optionally holds back their connection callbacks while they are stopped.
+ * Components bound by themselves before they are created are left to themselves.
+ *
+ * @see ServiceConnector#bindLifecycle(Application, boolean)
+ */
+@TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+class LifecycleBinder implements Application.ActivityLifecycleCallbacks {
+
+    //whether a class has any service fields, so that each class is scanned once
+    private static final Map<Class<?>, Boolean> SERVICE_TARGETS = new ConcurrentHashMap<>();
+    private ServiceConnector serviceConnector;
+    private boolean pauseWhenStopped;
+    private Object fragmentCallbacks;
+    //the components bound by this, only touched on the main thread
+    private final Set<Object> boundTargets = Collections.newSetFromMap(new WeakHashMap<Object, Boolean>());
+
+    /**
+     * Initialize a {@link LifecycleBinder} binding the components with the given connector
+     */
+    LifecycleBinder(ServiceConnector serviceConnector, boolean pauseWhenStopped) {
+        this.serviceConnector = serviceConnector;
+        this.pauseWhenStopped = pauseWhenStopped;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            fragmentCallbacks = new FragmentCallbacks();
+        }
+    }
+
+    /**
+     * Returns whether lifecycle binding is supported on this device
+     */
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH;
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        if (fragmentCallbacks != null) {
+            activity.getFragmentManager().registerFragmentLifecycleCallbacks((FragmentCallbacks) fragmentCallbacks, true);
+        }
+        onCreated(activity, activity);
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        onStarted(activity);
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        onStopped(activity);
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+        onDestroyed(activity);
+    }
+
+    private void onCreated(Object target, Activity activity) {
+        //created, but not yet started, and left alone if it bound itself already
+        if (isServiceTarget(target.getClass())
+                && serviceConnector.bindLifecycleTarget(target, activity, pauseWhenStopped)) {
+            boundTargets.add(target);
+        }
+    }
+
+    private void onStarted(Object target) {
+        if (pauseWhenStopped && boundTargets.contains(target)) {
+            serviceConnector.resumeTargetCallbacks(target);
+        }
+    }
+
+    private void onStopped(Object target) {
+        if (pauseWhenStopped && boundTargets.contains(target)) {
+            serviceConnector.pauseTargetCallbacks(target);
+        }
+    }
+
+    private void onDestroyed(Object target) {
+        if (boundTargets.remove(target)) {
+            serviceConnector.unbindTarget(target);
+        }
+    }
+
+    /**
+     * Returns whether the given class, or any of its super classes, has fields annotated with {@link ServiceInfo}
+     */
+    private static boolean isServiceTarget(Class<?> targetClass) {
+        Boolean serviceTarget = SERVICE_TARGETS.get(targetClass);
+        if (serviceTarget == null) {
+            serviceTarget = false;
+            for (Class<?> type = targetClass; type != null && type != Object.class && !serviceTarget; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (field.isAnnotationPresent(ServiceInfo.class)) {
+                        serviceTarget = true;
+                        break;
+                    }
+                }
+            }
+            SERVICE_TARGETS.put(targetClass, serviceTarget);
+        }
+        return serviceTarget;
+    }
+
+    /**
+     * Follows the lifecycle of the fragments of the activities
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private class FragmentCallbacks extends FragmentManager.FragmentLifecycleCallbacks {
+
+        @Override
+        public void onFragmentCreated(FragmentManager fragmentManager, Fragment fragment, Bundle savedInstanceState) {
+            onCreated(fragment, fragment.getActivity());
+        }
+
+        @Override
+        public void onFragmentStarted(FragmentManager fragmentManager, Fragment fragment) {
+            onStarted(fragment);
+        }
+
+        @Override
+        public void onFragmentStopped(FragmentManager fragmentManager, Fragment fragment) {
+            onStopped(fragment);
+        }
+
+        @Override
+        public void onFragmentDestroyed(FragmentManager fragmentManager, Fragment fragment) {
+            onDestroyed(fragment);
+        }
+    }
+}
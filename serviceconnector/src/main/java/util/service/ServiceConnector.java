@@ -1,28 +1,66 @@
 package util.service;
 
 
+import android.annotation.TargetApi;
+import android.app.Application;
+import android.content.ComponentName;
 import android.content.Context;
+import android.os.Build;
 import android.os.IInterface;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import util.service.annotation.Batched;
+import util.service.annotation.CacheResult;
+import util.service.annotation.CallPriority;
+import util.service.annotation.Idempotent;
+import util.service.annotation.RateLimited;
 import util.service.annotation.ServiceConnectionCallback;
 import util.service.annotation.ServiceConnectionFailureCallback;
 import util.service.annotation.ServiceInfo;
+import util.service.annotation.SingleFlight;
 import util.service.handler.AbstractServiceHandler;
 import util.service.handler.AidlServiceHandler;
 import util.service.handler.RemoterServiceHandler;
+import util.service.handler.ResolutionCache;
 import util.service.handler.ServiceListener;
+import util.service.proxy.CallBatcher;
+import util.service.proxy.CallBulkhead;
+import util.service.proxy.CallCollapser;
+import util.service.proxy.CallInterceptor;
+import util.service.proxy.CallMonitor;
+import util.service.proxy.CallQueue;
+import util.service.proxy.CallRateLimiter;
+import util.service.proxy.CallRecorder;
+import util.service.proxy.CallReportLog;
+import util.service.proxy.CallRetrier;
+import util.service.proxy.MethodPolicies;
+import util.service.proxy.ResultCache;
+import util.service.proxy.ServiceProxy;
+import util.service.trace.ServiceTrace;
+import util.service.transfer.ServiceInputStream;
+import util.service.transfer.SharedBuffer;
 
 
 /**
@@ -62,24 +100,54 @@ import util.service.handler.ServiceListener;
 public final class ServiceConnector implements ServiceListener {
 
     private static final String TAG = "ServiceConnector";
+    private static final int STREAM_CHUNK_SIZE = 16 * 1024;
+    private static final int STREAM_READ_AHEAD_CHUNKS = 4;
+    private static final int ASYNC_POOL_SIZE = 4;
+    private static final int ASYNC_QUEUE_SIZE = 128;
+    private static final long ASYNC_KEEP_ALIVE = 30;
     private static boolean ENABLE_DEBUG = false;
     //singleton instance
     private static ServiceConnector serviceConnector;
+    //handlers shared by the scopes sharing connections
+    private static ServiceHandlerPool sharedServiceHandlerPool;
+    //policies of the service interface methods
+    private static final MethodPolicies METHOD_POLICIES = new MethodPolicies();
+    //bind flags set for the service intents, in addition to those of their @ServiceInfo
+    private static final Map<String, Integer> BIND_FLAGS = new ConcurrentHashMap<>();
+    //policies of the services whose calls are queued while disconnected
+    private static final Map<String, CallQueue.Policy> CALL_QUEUE_POLICIES = new ConcurrentHashMap<>();
+    //concurrency limits of the service intents
+    private static final Map<String, CallBulkhead.Policy> BULKHEAD_POLICIES = new ConcurrentHashMap<>();
+    //rate limits of the service intents
+    private static final Map<String, CallRateLimiter.Policy> RATE_LIMIT_POLICIES = new ConcurrentHashMap<>();
+    //recordings of the calls to the service intents
+    private static final Map<String, CallRecorder.Recording> RECORDINGS = new ConcurrentHashMap<>();
+    //what calls to report, null if not monitored
+    private static volatile CallMonitor.Policy callMonitorPolicy;
+    //calls reported by the monitors
+    private static final CallReportLog CALL_REPORTS = new CallReportLog(64);
     private ExecutorService executor;
+    //map of service intent-pool of the async calls to the service
+    private final ConcurrentMap<String, ExecutorService> asyncExecutors = new ConcurrentHashMap<>();
+    //pool the handlers come from, null if this does not share connections
+    private ServiceHandlerPool serviceHandlerPool;
     //map of service intent-servicehandler
     private Map<String, AbstractServiceHandler> serviceHandlerMap;
-    //map of serviceintent-servicefieldinfo
-    private Map<String, List<ServiceFieldInfo>> serviceInfoMap;
+    //map of serviceintent-servicefieldinfo, each list also guards the handler of its service
+    private ConcurrentMap<String, List<ServiceFieldInfo>> serviceInfoMap;
     private List<ServiceListenerInfo> serviceCallbacks;
     private List<ServiceListenerInfo> serviceFailtureCallbacks;
+    //targets bound with this scope, true if bound by the application rather than its lifecycle
+    private final Map<Object, Boolean> boundTargets = new WeakHashMap<>();
 
 
     //*************************************************************
 
     /**
-     * Initialize the singleton instance of ServiceConnector
+     * Initialize a ServiceConnector, taking its handlers from the given pool if not null
      */
-    private ServiceConnector() {
+    private ServiceConnector(ServiceHandlerPool serviceHandlerPool) {
+        this.serviceHandlerPool = serviceHandlerPool;
         executor = Executors.newCachedThreadPool();
         serviceInfoMap = new ConcurrentHashMap<>();
         serviceHandlerMap = new ConcurrentHashMap<>();
@@ -90,13 +158,43 @@ public final class ServiceConnector implements ServiceListener {
     /**
      * Userd to internally access the singleton instance, creating it if needed
      */
-    private static synchronized ServiceConnector getInstance() {
+    static synchronized ServiceConnector getInstance() {
         if (serviceConnector == null) {
-            serviceConnector = new ServiceConnector();
+            serviceConnector = new ServiceConnector(getSharedServiceHandlerPool());
         }
         return serviceConnector;
     }
 
+    /**
+     * Returns the pool of handlers shared by the default connector and the scopes sharing connections,
+     * creating it if needed
+     */
+    private static synchronized ServiceHandlerPool getSharedServiceHandlerPool() {
+        if (sharedServiceHandlerPool == null) {
+            sharedServiceHandlerPool = new ServiceHandlerPool();
+        }
+        return sharedServiceHandlerPool;
+    }
+
+    /**
+     * Creates a new ServiceConnector, with its own services, callbacks and threads, independent of the
+     * one used by the static methods. Use this to keep the bindings of unrelated parts of the app apart,
+     * so that they do not contend with each other.
+     * <p>
+     * Bind and unbind targets with the instance methods of the returned scope, like {@link #bindTarget(Object, Context)},
+     * and {@linkplain #close() close} it once done.
+     *
+     * @param shareConnections Whether to share the service connections with the default connector and the other
+     *                         scopes created with shared connections, binding to a service once for all of them.
+     *                         The connection is released when the last of them unbinds from the service.
+     *                         A shared connection keeps the {@link ServiceInfo} of the first target bound to
+     *                         the service, and the interceptor policies registered by then; a later target with a
+     *                         different {@link ServiceInfo} gets the same connection, and the difference is logged.
+     */
+    public static ServiceConnector newScope(boolean shareConnections) {
+        return new ServiceConnector(shareConnections ? getSharedServiceHandlerPool() : null);
+    }
+
     /**
      * Call this to process the given target object to look for any
      * {@link IInterface} fields annotated with {@link ServiceInfo},
@@ -104,6 +202,8 @@ public final class ServiceConnector implements ServiceListener {
      * Those fields will get initialized with the remote
      * {@link IInterface} service objects when the service is
      * successfully connected.
+     * A target already bound with its lifecycle, see {@link #bindLifecycle(Application, boolean)},
+     * is not bound a second time.
      *
      * @param target  The object to analyze
      * @param context Context used to connect to service
@@ -161,6 +261,359 @@ public final class ServiceConnector implements ServiceListener {
         getInstance().waitForAllServiceConnected(timeout);
     }
 
+    /**
+     * Returns a {@link SharedBuffer} of at least the given size to pass a large payload to the service
+     * of the given intent. The buffer comes from a pool kept for the service, and should be
+     * {@linkplain SharedBuffer#recycle() recycled} once the call using it returns, or closed if the call is oneway.
+     * <p>
+     * Needs API level 27.
+     *
+     * @param serviceIntent The intent of a bound service
+     * @param size          Size of the payload
+     * @throws IllegalStateException         If the service is not bound
+     * @throws UnsupportedOperationException If shared buffers are not supported on this device
+     * @throws IOException                   If the shared memory could not be created
+     */
+    public static SharedBuffer obtainSharedBuffer(String serviceIntent, int size) throws IOException {
+        return getInstance().obtainServiceSharedBuffer(serviceIntent, size);
+    }
+
+    /**
+     * Opens a stream to read the results the service of the given intent writes to the given pipe,
+     * like the one returned by {@link util.service.transfer.ServiceStreams#openStream}.
+     * The stream is closed if the service disconnects.
+     *
+     * @param serviceIntent The intent of a bound service
+     * @param pipe          The read end of the pipe returned by the service
+     * @throws IllegalStateException If the service is not bound
+     */
+    public static ServiceInputStream openStream(String serviceIntent, ParcelFileDescriptor pipe) {
+        return openStream(serviceIntent, pipe, STREAM_CHUNK_SIZE, STREAM_READ_AHEAD_CHUNKS);
+    }
+
+    /**
+     * Opens a stream to read the results the service of the given intent writes to the given pipe,
+     * reading ahead up to the given number of chunks.
+     * The stream is closed if the service disconnects.
+     *
+     * @param serviceIntent   The intent of a bound service
+     * @param pipe            The read end of the pipe returned by the service
+     * @param chunkSize       Size of the chunks read from the pipe
+     * @param readAheadChunks Maximum number of chunks read ahead
+     * @throws IllegalStateException If the service is not bound
+     */
+    public static ServiceInputStream openStream(String serviceIntent, ParcelFileDescriptor pipe, int chunkSize, int readAheadChunks) {
+        return getInstance().openServiceStream(serviceIntent, pipe, chunkSize, readAheadChunks);
+    }
+
+    /**
+     * Marks the methods of the given name in the service interface as cacheable,
+     * same as annotating them with {@link CacheResult}.
+     * Use this for interfaces that cannot be annotated, like the ones generated from AIDL.
+     * <p>
+     * This should be called before binding to a service of this interface.
+     *
+     * @param serviceClass The service interface
+     * @param methodName   Name of the method to cache results of
+     * @param ttl          Time in ms a cached result stays valid. 0 keeps it until the service reconnects
+     * @param maxSize      Maximum number of results to cache for the method
+     */
+    public static void cacheResults(Class<?> serviceClass, String methodName, long ttl, int maxSize) {
+        METHOD_POLICIES.put(serviceClass, methodName, new ResultCache.Policy(ttl, maxSize));
+    }
+
+    /**
+     * Collapses concurrent identical calls to the methods of the given name in the service interface
+     * into a single call, same as annotating them with {@link SingleFlight}.
+     * Use this for interfaces that cannot be annotated, like the ones generated from AIDL.
+     * <p>
+     * This should be called before binding to a service of this interface.
+     *
+     * @param serviceClass The service interface
+     * @param methodName   Name of the method whose calls to collapse
+     */
+    public static void collapseCalls(Class<?> serviceClass, String methodName) {
+        METHOD_POLICIES.put(serviceClass, methodName, new CallCollapser.Policy());
+    }
+
+    /**
+     * Buffers the calls to the void methods of the given name in the service interface and
+     * delivers them in batches, same as annotating them with {@link Batched}.
+     * Use this for interfaces that cannot be annotated, like the ones generated from AIDL.
+     * <p>
+     * This should be called before binding to a service of this interface.
+     *
+     * @param serviceClass The service interface
+     * @param methodName   Name of the method whose calls to batch
+     * @param policy       How to batch the calls
+     */
+    public static void batchCalls(Class<?> serviceClass, String methodName, CallBatcher.Policy policy) {
+        METHOD_POLICIES.put(serviceClass, methodName, policy);
+    }
+
+    /**
+     * Sets the flags to bind to the service of the given intent with, in addition to
+     * <b>Context.BIND_AUTO_CREATE</b> and to the {@link ServiceInfo#bindFlags()} of its fields.
+     * Use flags like <b>Context.BIND_IMPORTANT</b> or <b>Context.BIND_ABOVE_CLIENT</b> for latency critical services,
+     * and <b>Context.BIND_WAIVE_PRIORITY</b> or <b>Context.BIND_NOT_FOREGROUND</b> for background ones.
+     * <p>
+     * Applies to the connections made after this, so call this before binding.
+     *
+     * @param serviceIntent The service intent
+     * @param bindFlags     Flags to bind with, 0 to bind with just those of the fields
+     */
+    public static void setBindFlags(String serviceIntent, int bindFlags) {
+        if (bindFlags == 0) {
+            BIND_FLAGS.remove(serviceIntent);
+        } else {
+            BIND_FLAGS.put(serviceIntent, bindFlags);
+        }
+    }
+
+    /**
+     * Keeps the service resolved for each service intent in a small file, so that the first binds after a process start
+     * need not resolve the intents through the PackageManager. The file is loaded in the background, and the services
+     * of the packages updated since are resolved again.
+     * Call this early, typically from {@link Application#onCreate()}.
+     *
+     * @param context Context whose cache directory to keep the file in
+     */
+    public static void persistResolutions(Context context) {
+        ResolutionCache.getDefault().enablePersistence(context);
+    }
+
+    /**
+     * Retries a call to the methods of the given name in the service interface once, if it fails because the service
+     * died or is disconnected, as soon as the service reconnects, same as annotating them with {@link Idempotent}.
+     * Use this for interfaces that cannot be annotated, like the ones generated from AIDL.
+     * <p>
+     * This should be called before binding to a service of this interface.
+     *
+     * @param serviceClass The service interface
+     * @param methodName   Name of the method whose calls are safe to retry
+     * @param timeout      Maximum time in ms to wait for the service to reconnect before retrying,
+     *                     not waited on the main thread
+     */
+    public static void retryCalls(Class<?> serviceClass, String methodName, long timeout) {
+        METHOD_POLICIES.put(serviceClass, methodName, new CallRetrier.Policy(timeout));
+    }
+
+    /**
+     * Queues the calls to the void methods of the service of the given intent while it is disconnected,
+     * and sends them in order once it reconnects, instead of failing them.
+     * <p>
+     * This should be called before binding to the service.
+     *
+     * @param serviceIntent The service intent
+     * @param policy        Size of the queue and what to do when full, null to stop queueing
+     * @see CallQueue
+     */
+    public static void queueCalls(String serviceIntent, CallQueue.Policy policy) {
+        if (policy == null) {
+            CALL_QUEUE_POLICIES.remove(serviceIntent);
+        } else {
+            CALL_QUEUE_POLICIES.put(serviceIntent, policy);
+        }
+    }
+
+    /**
+     * Limits the number of calls made at the same time to the service of the given intent, so that a saturated service
+     * does not hold up all the threads calling it. Calls beyond the limit wait their turn, by {@link CallPriority}.
+     * <p>
+     * This should be called before binding to the service.
+     *
+     * @param serviceIntent The service intent
+     * @param policy        Number of concurrent and waiting calls, null to remove the limit
+     * @see CallBulkhead
+     */
+    public static void limitConcurrentCalls(String serviceIntent, CallBulkhead.Policy policy) {
+        if (policy == null) {
+            BULKHEAD_POLICIES.remove(serviceIntent);
+        } else {
+            BULKHEAD_POLICIES.put(serviceIntent, policy);
+        }
+    }
+
+    /**
+     * Sets the priority of the calls to the methods of the given name in the service interface, for services whose
+     * concurrent calls are limited, same as annotating them with {@link CallPriority}.
+     * Use this for interfaces that cannot be annotated, like the ones generated from AIDL.
+     * <p>
+     * This should be called before binding to a service of this interface.
+     *
+     * @param serviceClass The service interface
+     * @param methodName   Name of the method
+     * @param priority     Priority of the calls, higher goes first
+     * @see #limitConcurrentCalls(String, CallBulkhead.Policy)
+     */
+    public static void prioritizeCalls(Class<?> serviceClass, String methodName, int priority) {
+        METHOD_POLICIES.put(serviceClass, methodName, new CallBulkhead.Priority(priority));
+    }
+
+    /**
+     * Limits the rate of the calls made to the service of the given intent, so that this process does not flood
+     * a service shared with others.
+     * <p>
+     * This should be called before binding to the service.
+     *
+     * @param serviceIntent The service intent
+     * @param policy        Rate, burst and what to do with the calls beyond the limit, null to remove the limit
+     * @see CallRateLimiter
+     */
+    public static void limitCallRate(String serviceIntent, CallRateLimiter.Policy policy) {
+        if (policy == null) {
+            RATE_LIMIT_POLICIES.remove(serviceIntent);
+        } else {
+            RATE_LIMIT_POLICIES.put(serviceIntent, policy);
+        }
+    }
+
+    /**
+     * Limits the rate of the calls to the methods of the given name in the service interface,
+     * same as annotating them with {@link RateLimited}.
+     * Use this for interfaces that cannot be annotated, like the ones generated from AIDL.
+     * <p>
+     * This should be called before binding to a service of this interface.
+     *
+     * @param serviceClass The service interface
+     * @param methodName   Name of the method to limit
+     * @param policy       Rate, burst and what to do with the calls beyond the limit
+     */
+    public static void limitCallRate(Class<?> serviceClass, String methodName, CallRateLimiter.Policy policy) {
+        METHOD_POLICIES.put(serviceClass, methodName, policy);
+    }
+
+    /**
+     * Returns an async variant of the service interface of the given intent. Each method of the given async interface
+     * returns a {@link java.util.concurrent.Future} of the result of the service method of the same name and parameters,
+     * for example {@code Future<Integer> echo(int value)} for {@code int echo(int value)}.
+     * <p>
+     * The calls are made on a small pool of threads of the service, through the object injected for it,
+     * so that its interceptors apply. A call made while the service is not connected fails its future.
+     * When too many calls are pending, the call is rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+     *
+     * @param serviceIntent The service intent, bound with {@link #bind(Object, Context)}
+     * @param serviceClass  The service interface
+     * @param asyncClass    The async variant of the service interface
+     * @throws IllegalArgumentException If a method of the async interface does not match a service method
+     */
+    public static <A> A getAsync(String serviceIntent, Class<?> serviceClass, Class<A> asyncClass) {
+        return getInstance().getAsyncService(serviceIntent, serviceClass, asyncClass);
+    }
+
+    /**
+     * Records the calls made to the service of the given intent to the given file, with their arguments
+     * and timing, so that they can be replayed with {@link #replayCalls(String, File, double, int)} to load test the service.
+     * The file is replaced, and keeps the calls of the successive connections to the service till the recording
+     * is stopped or moved to another file. It is written out each time the service is unbound.
+     * <p>
+     * This should be called before binding to the service.
+     *
+     * @param serviceIntent The service intent
+     * @param file          The file to record to, null to stop recording
+     * @see CallRecorder
+     */
+    public static void recordCalls(String serviceIntent, File file) {
+        CallRecorder.Recording previousRecording = file != null
+                ? RECORDINGS.put(serviceIntent, new CallRecorder.Recording(file))
+                : RECORDINGS.remove(serviceIntent);
+        if (previousRecording != null) {
+            previousRecording.close();
+        }
+    }
+
+    /**
+     * Replays the calls recorded by {@link #recordCalls(String, File)} to the bound service of the given intent,
+     * straight to the service object, and returns once they all completed.
+     *
+     * @param serviceIntent The service intent, bound with {@link #bind(Object, Context)}
+     * @param log           The file the calls were recorded to
+     * @param speed         How many times faster than recorded to make the calls, 0 to make them as fast as possible
+     * @param concurrency   Maximum number of calls made at the same time
+     * @return The throughput and latency of the calls
+     * @throws IOException If the file cannot be read
+     * @see CallReplayer
+     */
+    public static CallReplayer.Report replayCalls(String serviceIntent, File log, double speed, int concurrency)
+            throws IOException, InterruptedException {
+        return getInstance().replayServiceCalls(serviceIntent, log, speed, concurrency);
+    }
+
+    /**
+     * Returns the metrics kept for the calls made to the service of the given intent,
+     * like the number of calls collapsed by {@link SingleFlight}.
+     *
+     * @param serviceIntent The service intent
+     * @return Map of metric name to value, empty if the calls to the service are not intercepted
+     * @see CallCollapser#METRIC_COLLAPSED_CALLS
+     * @see CallRetrier#METRIC_RETRIED_CALLS
+     * @see CallBulkhead#METRIC_QUEUE_WAIT_TIME
+     * @see CallRateLimiter#METRIC_THROTTLED_CALLS
+     * @see CallRecorder#METRIC_RECORDED_CALLS
+     */
+    public static Map<String, Long> getCallMetrics(String serviceIntent) {
+        return getInstance().getServiceCallMetrics(serviceIntent);
+    }
+
+    /**
+     * Reports the calls made to the services on the main thread, or slower than a threshold, to {@link #getCallReports()},
+     * with where they were made from. Use a low sample rate to keep the cost down in production.
+     * <p>
+     * This should be called before binding to the services to monitor.
+     *
+     * @param policy What calls to report, null to stop monitoring
+     * @see CallMonitor
+     */
+    public static void monitorCalls(CallMonitor.Policy policy) {
+        callMonitorPolicy = policy;
+    }
+
+    /**
+     * Returns the log of the latest calls reported by {@link #monitorCalls(CallMonitor.Policy)},
+     * to dump or to listen to
+     */
+    public static CallReportLog getCallReports() {
+        return CALL_REPORTS;
+    }
+
+    /**
+     * Binds the activities, and their fragments, that have fields annotated with {@link ServiceInfo}
+     * when they are created, and unbinds them when they are destroyed, so that they need not call
+     * {@link #bind(Object, Context)} and {@link #unbind(Object)} themselves.
+     * Call this once, typically from {@link Application#onCreate()}.
+     * <p>
+     * Fragments are followed from API level 26 (framework fragments only).
+     *
+     * @param application      The application whose activities are to be bound
+     * @param pauseWhenStopped Whether to hold back the connection callbacks of the activities and fragments
+     *                         while they are stopped, delivering the latest state of each service once they are started
+     * @throws UnsupportedOperationException If lifecycle binding is not supported on this device
+     * @see #pauseCallbacks(Object)
+     */
+    public static void bindLifecycle(Application application, boolean pauseWhenStopped) {
+        getInstance().bindLifecycleTargets(application, pauseWhenStopped);
+    }
+
+    /**
+     * Holds back the connection callbacks of the given bound target till {@link #resumeCallbacks(Object)}.
+     * The service fields are still updated.
+     *
+     * @param target The target used to bind
+     */
+    public static void pauseCallbacks(Object target) {
+        getInstance().pauseTargetCallbacks(target);
+    }
+
+    /**
+     * Delivers the latest connection state of each service held back since {@link #pauseCallbacks(Object)},
+     * and delivers the callbacks of the given target as they come again.
+     *
+     * @param target The target used to bind
+     */
+    public static void resumeCallbacks(Object target) {
+        getInstance().resumeTargetCallbacks(target);
+    }
+
     /**
      * Call to enable or disable debug logs
      *
@@ -170,11 +623,28 @@ public final class ServiceConnector implements ServiceListener {
         ENABLE_DEBUG = enableDebug;
     }
 
+    /**
+     * Call to enable or disable the trace sections of binding, resolving and connecting to services,
+     * and of the calls made to them, as seen in systrace and Perfetto traces.
+     * <p>
+     * Enable this before binding, so that the calls to the services bound are traced too.
+     *
+     * @param enableTracing Enable or disable
+     * @see ServiceTrace
+     */
+    public static void setEnableTracing(boolean enableTracing) {
+        ServiceTrace.setEnabled(enableTracing);
+    }
+
 
     /**
-     * Blocks for given timeout until connected with the given service
+     * Blocks for up to the given timeout for the connection to the given service of this scope.
+     *
+     * @param timeout       Maximum timeout in ms to wait for. 0 Waits until service is connected
+     * @param serviceIntent The service intent
+     * @see #waitForConnected(long, String)
      */
-    private void waitForServiceConnected(long timeout, String serviceIntent) throws InterruptedException {
+    public void waitForServiceConnected(long timeout, String serviceIntent) throws InterruptedException {
         AbstractServiceHandler serviceHandler = serviceHandlerMap.get(serviceIntent);
         if (serviceHandler != null) {
             synchronized (serviceHandler) {
@@ -186,18 +656,135 @@ public final class ServiceConnector implements ServiceListener {
     }
 
     /**
-     * Blocks for given timeout until connected with all services
+     * Blocks for up to the given timeout for the connection with all the services of this scope.
+     *
+     * @param timeout Maximum timeout in ms to wait for. 0 Waits until service is connected
+     * @see #waitForAllConnected(long)
      */
-    private synchronized void waitForAllServiceConnected(long timeout) throws InterruptedException {
+    public synchronized void waitForAllServiceConnected(long timeout) throws InterruptedException {
         if (!isAllServicesConnected()) {
             wait(timeout);
         }
     }
 
     /**
-     * Returns true if connected with all services
+     * Returns a shared buffer from the pool of the given service of this scope.
+     *
+     * @see #obtainSharedBuffer(String, int)
+     */
+    public SharedBuffer obtainServiceSharedBuffer(String serviceIntent, int size) throws IOException {
+        AbstractServiceHandler serviceHandler = serviceHandlerMap.get(serviceIntent);
+        if (serviceHandler == null) {
+            throw new IllegalStateException("Not bound to " + serviceIntent);
+        }
+        return serviceHandler.getSharedBufferPool().obtain(size);
+    }
+
+    /**
+     * Opens a stream tied to the connection with the given service of this scope.
+     *
+     * @see #openStream(String, ParcelFileDescriptor, int, int)
+     */
+    public ServiceInputStream openServiceStream(String serviceIntent, ParcelFileDescriptor pipe, int chunkSize, int readAheadChunks) {
+        AbstractServiceHandler serviceHandler = serviceHandlerMap.get(serviceIntent);
+        if (serviceHandler == null) {
+            throw new IllegalStateException("Not bound to " + serviceIntent);
+        }
+        ServiceInputStream stream = new ServiceInputStream(pipe, chunkSize, readAheadChunks, executor);
+        serviceHandler.addStream(stream);
+        return stream;
+    }
+
+    /**
+     * Returns the metrics of the calls made to the given service of this scope.
+     *
+     * @see #getCallMetrics(String)
      */
-    private boolean isAllServicesConnected() {
+    public Map<String, Long> getServiceCallMetrics(String serviceIntent) {
+        AbstractServiceHandler serviceHandler = serviceHandlerMap.get(serviceIntent);
+        if (serviceHandler != null && serviceHandler.getServiceProxy() != null) {
+            return serviceHandler.getServiceProxy().getMetrics().snapshot();
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Returns an async variant of the given service of this scope.
+     *
+     * @see #getAsync(String, Class, Class)
+     */
+    public <A> A getAsyncService(String serviceIntent, Class<?> serviceClass, Class<A> asyncClass) {
+        return AsyncService.create(this, serviceIntent, serviceClass, asyncClass, getAsyncExecutor(serviceIntent));
+    }
+
+    /**
+     * Replays the recorded calls to the given service of this scope.
+     *
+     * @see #replayCalls(String, File, double, int)
+     */
+    public CallReplayer.Report replayServiceCalls(String serviceIntent, File log, double speed, int concurrency)
+            throws IOException, InterruptedException {
+        if (!serviceHandlerMap.containsKey(serviceIntent)) {
+            throw new IllegalStateException("Not bound to " + serviceIntent);
+        }
+        return new CallReplayer(this, serviceIntent, speed, concurrency).replay(log);
+    }
+
+    /**
+     * Binds the activities and fragments of the given application with this scope as they are created.
+     *
+     * @throws UnsupportedOperationException If lifecycle binding is not supported on this device
+     * @see #bindLifecycle(Application, boolean)
+     */
+    public void bindLifecycleTargets(Application application, boolean pauseWhenStopped) {
+        if (!LifecycleBinder.isSupported()) {
+            throw new UnsupportedOperationException("Lifecycle binding needs API level " + Build.VERSION_CODES.ICE_CREAM_SANDWICH);
+        }
+        application.registerActivityLifecycleCallbacks(new LifecycleBinder(this, pauseWhenStopped));
+    }
+
+    /**
+     * Holds back the connection callbacks of the given target of this scope.
+     *
+     * @see #pauseCallbacks(Object)
+     */
+    public void pauseTargetCallbacks(Object target) {
+        for (ServiceListenerInfo serviceListenerInfo : serviceCallbacks) {
+            if (serviceListenerInfo.isSameTarget(target)) {
+                serviceListenerInfo.pause();
+            }
+        }
+        for (ServiceListenerInfo serviceListenerInfo : serviceFailtureCallbacks) {
+            if (serviceListenerInfo.isSameTarget(target)) {
+                serviceListenerInfo.pause();
+            }
+        }
+    }
+
+    /**
+     * Resumes the connection callbacks of the given target of this scope.
+     *
+     * @see #resumeCallbacks(Object)
+     */
+    public void resumeTargetCallbacks(Object target) {
+        for (ServiceListenerInfo serviceListenerInfo : serviceCallbacks) {
+            if (serviceListenerInfo.isSameTarget(target)) {
+                serviceListenerInfo.resume();
+            }
+        }
+        for (ServiceListenerInfo serviceListenerInfo : serviceFailtureCallbacks) {
+            if (serviceListenerInfo.isSameTarget(target)) {
+                serviceListenerInfo.resume();
+            }
+        }
+    }
+
+    /**
+     * Returns true if all the services of this scope are connected.
+     *
+     * @see #isAllConnected()
+     */
+    public boolean isAllServicesConnected() {
         for (AbstractServiceHandler serviceHandler : serviceHandlerMap.values()) {
             if (!serviceHandler.isConnected()) {
                 return false;
@@ -207,13 +794,38 @@ public final class ServiceConnector implements ServiceListener {
     }
 
     /**
-     * Returns true if connected with the given service
+     * Returns true if this scope is connected with a service of the given intent.
+     *
+     * @see #isConnected(String)
      */
-    private boolean isServiceConnected(String serviceIntent) {
+    public boolean isServiceConnected(String serviceIntent) {
         return serviceHandlerMap.containsKey(serviceIntent) && serviceHandlerMap.get(serviceIntent)
                 .isConnected();
     }
 
+    /**
+     * Returns the handler of the given service intent, or null if none.
+     * Package private for the benchmarks, which drive the handlers directly.
+     */
+    AbstractServiceHandler getServiceHandler(String serviceIntent) {
+        return serviceHandlerMap.get(serviceIntent);
+    }
+
+    /**
+     * Adds a handler created outside of any bind, without binding it.
+     * Package private for the benchmarks, which connect many services without as many annotated fields.
+     */
+    void putServiceHandler(String serviceIntent, AbstractServiceHandler serviceHandler) {
+        serviceHandlerMap.put(serviceIntent, serviceHandler);
+    }
+
+    /**
+     * Removes the handler added with {@link #putServiceHandler(String, AbstractServiceHandler)}, without destroying it
+     */
+    AbstractServiceHandler removeServiceHandler(String serviceIntent) {
+        return serviceHandlerMap.remove(serviceIntent);
+    }
+
     /**
      * Initialize the call back listeners
      */
@@ -277,12 +889,9 @@ public final class ServiceConnector implements ServiceListener {
             ServiceInfo serviceInfo = field.getAnnotation(ServiceInfo.class);
             if (serviceInfo != null) {
                 if (IInterface.class.isAssignableFrom(field.getType())) {
-                    addServiceHandler(serviceInfo, (Class<? extends IInterface>) field.getType(), context);
-                    addFieldInfo(serviceInfo, field, target);
+                    addFieldInfo(serviceInfo, field, target, context, false);
                 } else if (isRemoter(field.getType())) {
-                    addRemoterServiceHandler(serviceInfo, field.getType(), context);
-                    addFieldInfo(serviceInfo, field, target);
-
+                    addFieldInfo(serviceInfo, field, target, context, true);
                 } else {
                     throw new IllegalArgumentException(field.getName() + " is not a field of type IInterface or Remoter");
                 }
@@ -304,53 +913,296 @@ public final class ServiceConnector implements ServiceListener {
     }
 
     /**
-     * Create {@link AidlServiceHandler} if neccessary to connect to servie specified by given {@link ServiceInfo}
+     * Create {@link AidlServiceHandler} if neccessary to connect to servie specified by given {@link ServiceInfo}.
+     * Called holding the field list of the service.
+     */
+    private void addServiceHandler(final ServiceInfo serviceInfo, final Class<? extends IInterface> serviceClass, final Context context) {
+        final String serviceIntent = serviceInfo.serviceIntent();
+        addServiceHandler(serviceIntent, getHandlerConfiguration(serviceInfo, serviceClass), new ServiceHandlerPool.HandlerFactory() {
+            @Override
+            public AbstractServiceHandler create(ExecutorService executor, ServiceListener serviceListener) {
+                AbstractServiceHandler serviceHandler = new AidlServiceHandler<>(getBindContext(context), serviceIntent, serviceClass, executor, serviceListener, false);
+                initServiceHandler(serviceHandler, serviceInfo, serviceClass);
+                return serviceHandler;
+            }
+        });
+    }
+
+    /**
+     * Create {@link RemoterServiceHandler} if neccessary to connect to servie specified by given {@link ServiceInfo}.
+     * Called holding the field list of the service.
+     */
+    private void addRemoterServiceHandler(final ServiceInfo serviceInfo, final Class serviceClass, final Context context) {
+        final String serviceIntent = serviceInfo.serviceIntent();
+        addServiceHandler(serviceIntent, getHandlerConfiguration(serviceInfo, serviceClass), new ServiceHandlerPool.HandlerFactory() {
+            @Override
+            public AbstractServiceHandler create(ExecutorService executor, ServiceListener serviceListener) {
+                AbstractServiceHandler serviceHandler = new RemoterServiceHandler<>(getBindContext(context), serviceIntent, serviceClass, executor, serviceListener, false);
+                initServiceHandler(serviceHandler, serviceInfo, serviceClass);
+                return serviceHandler;
+            }
+        });
+    }
+
+    /**
+     * Sets up a new handler with how to bind to the service of the given {@link ServiceInfo}
+     */
+    private static void initServiceHandler(AbstractServiceHandler serviceHandler, ServiceInfo serviceInfo, Class serviceClass) {
+        serviceHandler.setBindFlags(getBindFlags(serviceInfo));
+        serviceHandler.setServiceComponent(getServiceComponent(serviceInfo));
+        serviceHandler.setFallbackIntents(serviceInfo.fallbackIntents());
+        serviceHandler.setPropagateTraceContext(serviceInfo.propagateTraceContext());
+        serviceHandler.setServiceProxy(createServiceProxy(serviceInfo.serviceIntent(), serviceClass, serviceInfo.stableProxy()));
+    }
+
+    /**
+     * Describes how {@link #initServiceHandler(AbstractServiceHandler, ServiceInfo, Class)} sets up the handler
+     * of the given {@link ServiceInfo}, so that targets sharing the handler can be compared
      */
-    private void addServiceHandler(ServiceInfo serviceInfo, Class<? extends IInterface> serviceClass, Context context) {
-        if (!serviceHandlerMap.containsKey(serviceInfo.serviceIntent())) {
-            serviceHandlerMap.put(serviceInfo.serviceIntent(),
-                    new AidlServiceHandler<>(context, serviceInfo.serviceIntent(), serviceClass, executor, this, false));
+    private static String getHandlerConfiguration(ServiceInfo serviceInfo, Class serviceClass) {
+        return serviceClass.getName()
+                + "{bindFlags=" + getBindFlags(serviceInfo)
+                + ", servicePackage=" + serviceInfo.servicePackage()
+                + ", serviceClassName=" + serviceInfo.serviceClassName()
+                + ", fallbackIntents=" + Arrays.toString(serviceInfo.fallbackIntents())
+                + ", stableProxy=" + serviceInfo.stableProxy()
+                + ", propagateTraceContext=" + serviceInfo.propagateTraceContext() + "}";
+    }
+
+    /**
+     * Returns the explicit service of the given {@link ServiceInfo}, or null if the intent is to be resolved
+     */
+    private static ComponentName getServiceComponent(ServiceInfo serviceInfo) throws IllegalArgumentException {
+        String packageName = serviceInfo.servicePackage();
+        String className = serviceInfo.serviceClassName();
+        if (packageName.length() == 0 && className.length() == 0) {
+            return null;
+        }
+        if (packageName.length() == 0 || className.length() == 0) {
+            throw new IllegalArgumentException("Both servicePackage and serviceClassName are needed to bind to " + serviceInfo.serviceIntent());
         }
+        return new ComponentName(packageName, className.startsWith(".") ? packageName + className : className);
+    }
+
+    /**
+     * Returns the flags to bind to the service of the given {@link ServiceInfo} with
+     */
+    private static int getBindFlags(ServiceInfo serviceInfo) {
+        Integer bindFlags = BIND_FLAGS.get(serviceInfo.serviceIntent());
+        return serviceInfo.bindFlags() | (bindFlags != null ? bindFlags : 0);
+    }
+
+    /**
+     * Returns the context to bind with. The connection may outlive the component that first bound to
+     * the service, so it binds with the application context rather than holding on to the component.
+     */
+    private static Context getBindContext(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        return applicationContext != null ? applicationContext : context;
     }
 
     /**
-     * Create {@link AidlServiceHandler} if neccessary to connect to servie specified by given {@link ServiceInfo}
+     * Adds the handler of the given service if not added yet, taking it from the shared pool if sharing connections
      */
-    private void addRemoterServiceHandler(ServiceInfo serviceInfo, Class serviceClass, Context context) {
-        if (!serviceHandlerMap.containsKey(serviceInfo.serviceIntent())) {
-            serviceHandlerMap.put(serviceInfo.serviceIntent(),
-                    new RemoterServiceHandler<>(context, serviceInfo.serviceIntent(), serviceClass, executor, this, false));
+    private void addServiceHandler(String serviceIntent, String configuration, ServiceHandlerPool.HandlerFactory handlerFactory) {
+        if (!serviceHandlerMap.containsKey(serviceIntent)) {
+            AbstractServiceHandler serviceHandler = serviceHandlerPool != null
+                    ? serviceHandlerPool.acquire(serviceIntent, configuration, this, handlerFactory)
+                    : handlerFactory.create(executor, this);
+            serviceHandlerMap.put(serviceIntent, serviceHandler);
         }
     }
 
     /**
-     * Keep track of the fields to initialize
+     * Releases the handler removed from this, destroying it unless other scopes still use it
      */
-    private void addFieldInfo(ServiceInfo serviceInfo, Field serviceField, Object target) {
-        List<ServiceFieldInfo> serviceConnectors;
-        if (serviceInfoMap.containsKey(serviceInfo.serviceIntent())) {
-            serviceConnectors = serviceInfoMap.get(serviceInfo.serviceIntent());
+    private void releaseServiceHandler(String serviceIntent, AbstractServiceHandler serviceHandler) {
+        if (serviceHandlerPool != null) {
+            serviceHandlerPool.release(serviceIntent, this);
         } else {
-            serviceConnectors = new ArrayList<>();
-            serviceInfoMap.put(serviceInfo.serviceIntent(), serviceConnectors);
+            serviceHandler.destroy();
+        }
+    }
+
+    /**
+     * Creates the {@link ServiceProxy} to inject in place of the service object,
+     * or null if the calls to the service need not be intercepted and the proxy need not be stable
+     */
+    private static ServiceProxy createServiceProxy(String serviceIntent, Class serviceClass, boolean stable) {
+        List<CallInterceptor> interceptors = new ArrayList<>();
+        ResultCache resultCache = ResultCache.create(serviceClass, METHOD_POLICIES);
+        if (resultCache != null) {
+            interceptors.add(resultCache);
+        }
+        CallCollapser callCollapser = CallCollapser.create(serviceClass, METHOD_POLICIES);
+        if (callCollapser != null) {
+            interceptors.add(callCollapser);
+        }
+        CallBatcher callBatcher = CallBatcher.create(serviceClass, METHOD_POLICIES);
+        if (callBatcher != null) {
+            interceptors.add(callBatcher);
+        }
+        CallRateLimiter callRateLimiter = CallRateLimiter.create(serviceClass, METHOD_POLICIES, RATE_LIMIT_POLICIES.get(serviceIntent));
+        if (callRateLimiter != null) {
+            interceptors.add(callRateLimiter);
+        }
+        CallQueue callQueue = CallQueue.create(serviceClass, CALL_QUEUE_POLICIES.get(serviceIntent));
+        if (callQueue != null) {
+            interceptors.add(callQueue);
+        }
+        //after the others, so that a retried call is not seen twice by them
+        CallRetrier callRetrier = CallRetrier.create(serviceClass, METHOD_POLICIES);
+        if (callRetrier != null) {
+            interceptors.add(callRetrier);
+        }
+        //holds a slot only while the service is actually called
+        CallBulkhead callBulkhead = CallBulkhead.create(serviceClass, METHOD_POLICIES, BULKHEAD_POLICIES.get(serviceIntent));
+        if (callBulkhead != null) {
+            interceptors.add(callBulkhead);
         }
+        //records the calls as they reach the service
+        CallRecorder callRecorder = CallRecorder.create(serviceClass, RECORDINGS.get(serviceIntent));
+        if (callRecorder != null) {
+            interceptors.add(callRecorder);
+        }
+        //innermost, so that it times the service call alone, and only the calls reaching the service
+        CallMonitor callMonitor = CallMonitor.create(callMonitorPolicy, CALL_REPORTS);
+        if (callMonitor != null) {
+            interceptors.add(callMonitor);
+        }
+        //the calls are traced by the proxy
+        boolean traced = ServiceTrace.isEnabled();
+        return interceptors.isEmpty() && !stable && !traced ? null : new ServiceProxy(serviceIntent, serviceClass, interceptors, stable);
+    }
+
+    /**
+     * Returns the object to inject for the service of the given handler,
+     * its {@link ServiceProxy} if it has one, or the service object itself
+     */
+    private Object getServiceObject(AbstractServiceHandler serviceHandler) {
+        ServiceProxy serviceProxy = serviceHandler.getServiceProxy();
+        return serviceProxy != null ? serviceProxy.getProxy() : serviceHandler.getService();
+    }
+
+    /**
+     * Returns the object injected for the service of the given intent, or null if the service is not connected
+     * and has no proxy to handle the call meanwhile
+     */
+    Object getServiceObject(String serviceIntent) {
+        AbstractServiceHandler serviceHandler = serviceHandlerMap.get(serviceIntent);
+        return serviceHandler != null ? getServiceObject(serviceHandler) : null;
+    }
+
+    /**
+     * Returns the service object of the given intent itself, past its {@link ServiceProxy},
+     * or null if the service is not connected
+     */
+    Object getService(String serviceIntent) {
+        AbstractServiceHandler serviceHandler = serviceHandlerMap.get(serviceIntent);
+        return serviceHandler != null ? serviceHandler.getService() : null;
+    }
+
+    /**
+     * Returns the bounded pool of threads making the async calls to the service of the given intent
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD)
+    private ExecutorService getAsyncExecutor(final String serviceIntent) {
+        ExecutorService asyncExecutor = asyncExecutors.get(serviceIntent);
+        if (asyncExecutor == null) {
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(ASYNC_POOL_SIZE, ASYNC_POOL_SIZE,
+                    ASYNC_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(ASYNC_QUEUE_SIZE), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ServiceConnector-async-" + serviceIntent);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+                threadPoolExecutor.allowCoreThreadTimeOut(true);
+            }
+            asyncExecutor = asyncExecutors.putIfAbsent(serviceIntent, threadPoolExecutor);
+            if (asyncExecutor == null) {
+                asyncExecutor = threadPoolExecutor;
+            } else {
+                threadPoolExecutor.shutdown();
+            }
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Returns whether the given handler has a stable proxy, injected once for good
+     */
+    private static boolean isStableProxy(AbstractServiceHandler serviceHandler) {
+        ServiceProxy serviceProxy = serviceHandler.getServiceProxy();
+        return serviceProxy != null && serviceProxy.isStable();
+    }
+
+    /**
+     * Keep track of the fields to initialize, creating the handler of its service if neccessary.
+     * <p>
+     * The field list of a service is locked while adding to it, so that the last unbind of the service
+     * cannot destroy its handler in between. A list removed by unbind is not used any more.
+     */
+    private void addFieldInfo(ServiceInfo serviceInfo, Field serviceField, Object target, Context context, boolean remoter) {
+        String serviceIntent = serviceInfo.serviceIntent();
         ServiceFieldInfo serviceFieldInfo = new ServiceFieldInfo(serviceField, target);
-        serviceConnectors.add(serviceFieldInfo);
-        notifyIfAllreadyConneced(serviceFieldInfo, target, serviceInfo.serviceIntent());
+        while (true) {
+            List<ServiceFieldInfo> serviceConnectors = serviceInfoMap.get(serviceIntent);
+            if (serviceConnectors == null) {
+                serviceConnectors = new CopyOnWriteArrayList<>();
+                List<ServiceFieldInfo> existingConnectors = serviceInfoMap.putIfAbsent(serviceIntent, serviceConnectors);
+                if (existingConnectors != null) {
+                    serviceConnectors = existingConnectors;
+                }
+            }
+            synchronized (serviceConnectors) {
+                if (serviceInfoMap.get(serviceIntent) == serviceConnectors) {
+                    if (remoter) {
+                        addRemoterServiceHandler(serviceInfo, serviceField.getType(), context);
+                    } else {
+                        addServiceHandler(serviceInfo, (Class<? extends IInterface>) serviceField.getType(), context);
+                    }
+                    checkStableProxy(serviceInfo, serviceField, serviceHandlerMap.get(serviceIntent));
+                    serviceConnectors.add(serviceFieldInfo);
+                    break;
+                }
+            }
+        }
+        notifyIfAllreadyConneced(serviceFieldInfo, target, serviceIntent);
         log("Adding service field " + serviceField.getName());
     }
 
+    /**
+     * Warns if the given field does not ask for the kind of proxy its service is bound with,
+     * as the field that first bound to the service decided it for all of them
+     */
+    private static void checkStableProxy(ServiceInfo serviceInfo, Field serviceField, AbstractServiceHandler serviceHandler) {
+        if (serviceHandler != null && isStableProxy(serviceHandler) != serviceInfo.stableProxy()) {
+            Log.w(TAG, "Service " + serviceInfo.serviceIntent() + " is bound with stableProxy=" + !serviceInfo.stableProxy()
+                    + ", ignoring stableProxy=" + serviceInfo.stableProxy() + " of " + serviceField);
+        }
+    }
+
     /**
      * Sets the field and notify if service is already connected
      */
     private void notifyIfAllreadyConneced(ServiceFieldInfo serviceFieldInfo, Object target, String serviceIntent) {
         AbstractServiceHandler serviceHandler = serviceHandlerMap.get(serviceIntent);
+        if (serviceHandler != null && isStableProxy(serviceHandler)) {
+            //injected right away, whether connected or not
+            updateServiceField(serviceFieldInfo, serviceIntent, serviceHandler);
+        }
         if (serviceHandler != null && serviceHandler.isConnected()) {
-            serviceFieldInfo.onServiceConnected(serviceIntent, serviceHandler.getService(), this);
+            Object serviceObject = getServiceObject(serviceHandler);
+            if (!isStableProxy(serviceHandler)) {
+                updateServiceField(serviceFieldInfo, serviceIntent, serviceHandler);
+            }
             //call back listener methods
             for (ServiceConnectorListener serviceConnectorListener : serviceCallbacks) {
                 if (serviceConnectorListener.isSameTarget(target)) {
-                    serviceConnectorListener.onServiceConnected(serviceIntent, serviceHandler.getService(), this);
+                    serviceConnectorListener.onServiceConnected(serviceIntent, serviceObject, this);
                 }
             }
         }
@@ -369,53 +1221,192 @@ public final class ServiceConnector implements ServiceListener {
     /**
      * Binds to the given target, extracting the service fields to be initialized
      * and the callback methods to be called.
+     *
+     * @param target  The object to analyze
+     * @param context Context used to connect to service
+     * @throws IllegalStateException If this scope is closed
+     * @see #bind(Object, Context)
+     */
+    public void bindTarget(final Object target, final Context context) {
+        synchronized (boundTargets) {
+            checkOpen();
+            //the lifecycle binding of a target binding itself in onCreate already did it
+            if (Boolean.FALSE.equals(boundTargets.put(target, true))) {
+                log("Already bound with its lifecycle " + target);
+                return;
+            }
+        }
+        bindTarget(target, context, false);
+    }
+
+    /**
+     * Binds the given target with its lifecycle, holding back its connection callbacks from the
+     * start if paused. Returns false, without binding it, if the target is already bound.
+     */
+    boolean bindLifecycleTarget(Object target, Context context, boolean paused) {
+        synchronized (boundTargets) {
+            checkOpen();
+            if (boundTargets.containsKey(target)) {
+                return false;
+            }
+            boundTargets.put(target, false);
+        }
+        bindTarget(target, context, paused);
+        return true;
+    }
+
+    private void checkOpen() {
+        if (executor.isShutdown()) {
+            throw new IllegalStateException("ServiceConnector is closed");
+        }
+    }
+
+    /**
+     * Binds to the given target, holding back its connection callbacks from the start if paused
+     */
+    private void bindTarget(Object target, Context context, boolean paused) {
+        boolean traced = ServiceTrace.beginSection("ServiceConnector.bind", target.getClass().getName(), null);
+        try {
+            initListeners(target);
+            if (paused) {
+                //before any service is connected, so that no callback gets through
+                pauseTargetCallbacks(target);
+            }
+            initServiceHandlers(target, context);
+        } finally {
+            if (traced) {
+                ServiceTrace.endSection();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given target has callbacks or service fields bound with this scope
      */
-    private void bindTarget(final Object target, final Context context) {
-        initListeners(target);
-        initServiceHandlers(target, context);
+    boolean isTargetBound(Object target) {
+        synchronized (boundTargets) {
+            return boundTargets.containsKey(target);
+        }
     }
 
     /**
      * Unbind services from the given target.
      *
+     * @param target The target used to bind.
      * @see #unbind(Object)
      */
-    private void unbindTarget(Object target) {
-        int listenerSize;
-
+    public void unbindTarget(Object target) {
+        synchronized (boundTargets) {
+            boundTargets.remove(target);
+        }
         //remove the service callbacks for same target
-		listenerSize = serviceCallbacks.size();
-        for (int i = listenerSize - 1; i >= 0; i--) {
-            ServiceListenerInfo serviceListenerInfo = serviceCallbacks.get(i);
+        for (ServiceListenerInfo serviceListenerInfo : serviceCallbacks) {
             if (serviceListenerInfo.isSameTarget(target)) {
-                serviceCallbacks.remove(i);
+                serviceCallbacks.remove(serviceListenerInfo);
             }
         }
         //remove the failure callbacks for same target
-        listenerSize = serviceFailtureCallbacks.size();
-        for (int i = listenerSize - 1; i >= 0; i--) {
-            ServiceListenerInfo serviceListenerInfo = serviceFailtureCallbacks.get(i);
+        for (ServiceListenerInfo serviceListenerInfo : serviceFailtureCallbacks) {
             if (serviceListenerInfo.isSameTarget(target)) {
-                serviceFailtureCallbacks.remove(i);
+                serviceFailtureCallbacks.remove(serviceListenerInfo);
+            }
+        }
+
+        for (Map.Entry<String, List<ServiceFieldInfo>> serviceInfoEntry : serviceInfoMap.entrySet()) {
+            String serviceIntent = serviceInfoEntry.getKey();
+            List<ServiceFieldInfo> serviceFieldInfoList = serviceInfoEntry.getValue();
+            AbstractServiceHandler serviceHandler = null;
+            synchronized (serviceFieldInfoList) {
+                //reset the service field for the same targets
+                for (ServiceFieldInfo serviceFieldInfo : serviceFieldInfoList) {
+                    if (serviceFieldInfo.isSameTarget(target)) {
+                        serviceFieldInfo.unbind();
+                        serviceFieldInfoList.remove(serviceFieldInfo);
+                    }
+                }
+                //the handler goes first, so that a bind never finds the handler of a removed list
+                if (serviceFieldInfoList.isEmpty() && serviceInfoMap.get(serviceIntent) == serviceFieldInfoList) {
+                    serviceHandler = serviceHandlerMap.remove(serviceIntent);
+                    serviceInfoMap.remove(serviceIntent, serviceFieldInfoList);
+                }
+            }
+            if (serviceHandler != null) {
+                releaseServiceHandler(serviceIntent, serviceHandler);
             }
         }
+    }
 
-        for (String serviceIntent : serviceInfoMap.keySet()) {
-            //reset the service field for the same targets
-            List<ServiceFieldInfo> serviceFieldInfoList = serviceInfoMap.get(serviceIntent);
-            int size = serviceFieldInfoList.size();
-            for (int i = size - 1; i >= 0; i--) {
-                ServiceFieldInfo serviceFieldInfo = serviceFieldInfoList.get(i);
-                if (serviceFieldInfo.isSameTarget(target)) {
-                    serviceFieldInfo.onServiceDisconnected(serviceIntent, this);
-                    serviceFieldInfoList.remove(i);
+    /**
+     * Unbinds all the targets of this scope and stops its threads.
+     * The scope cannot be used to bind again.
+     *
+     * @see #newScope(boolean)
+     */
+    public void close() {
+        synchronized (boundTargets) {
+            boundTargets.clear();
+        }
+        serviceCallbacks.clear();
+        serviceFailtureCallbacks.clear();
+        for (Map.Entry<String, List<ServiceFieldInfo>> serviceInfoEntry : serviceInfoMap.entrySet()) {
+            String serviceIntent = serviceInfoEntry.getKey();
+            List<ServiceFieldInfo> serviceFieldInfoList = serviceInfoEntry.getValue();
+            AbstractServiceHandler serviceHandler = null;
+            synchronized (serviceFieldInfoList) {
+                for (ServiceFieldInfo serviceFieldInfo : serviceFieldInfoList) {
+                    serviceFieldInfo.unbind();
+                }
+                serviceFieldInfoList.clear();
+                if (serviceInfoMap.get(serviceIntent) == serviceFieldInfoList) {
+                    serviceHandler = serviceHandlerMap.remove(serviceIntent);
+                    serviceInfoMap.remove(serviceIntent, serviceFieldInfoList);
                 }
             }
-            if (serviceFieldInfoList.isEmpty()) {
-                serviceHandlerMap.get(serviceIntent)
-                        .destroy();
-                serviceHandlerMap.remove(serviceIntent);
-                serviceInfoMap.remove(serviceIntent);
+            if (serviceHandler != null) {
+                releaseServiceHandler(serviceIntent, serviceHandler);
+            }
+        }
+        //the callbacks already posted by the handlers still run
+        executor.shutdown();
+        for (ExecutorService asyncExecutor : asyncExecutors.values()) {
+            asyncExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Returns true if the given handler is the one in use for the service. Callbacks of
+     * a destroyed handler may still be on their way, and are ignored.
+     */
+    private boolean isCurrentHandler(String serviceIntent, AbstractServiceHandler serviceHandler) {
+        return serviceHandlerMap.get(serviceIntent) == serviceHandler;
+    }
+
+    /**
+     * Updates all the fields of the given service
+     */
+    private void updateServiceFields(String serviceIntent, AbstractServiceHandler serviceHandler) {
+        //a stable proxy stays in the fields, and the handler has already swapped its service object
+        if (isStableProxy(serviceHandler)) {
+            return;
+        }
+        List<ServiceFieldInfo> serviceFieldInfoList = serviceInfoMap.get(serviceIntent);
+        if (serviceFieldInfoList != null) {
+            for (ServiceFieldInfo serviceFieldInfo : serviceFieldInfoList) {
+                updateServiceField(serviceFieldInfo, serviceIntent, serviceHandler);
+            }
+        }
+    }
+
+    /**
+     * Sets the field to the current service object of the handler, or null if not connected.
+     * Done holding the field, so that the last update always leaves it matching the connection.
+     */
+    private void updateServiceField(ServiceFieldInfo serviceFieldInfo, String serviceIntent, AbstractServiceHandler serviceHandler) {
+        synchronized (serviceFieldInfo) {
+            if (serviceHandler.isConnected() || isStableProxy(serviceHandler)) {
+                serviceFieldInfo.onServiceConnected(serviceIntent, getServiceObject(serviceHandler), this);
+            } else {
+                serviceFieldInfo.onServiceDisconnected(serviceIntent, this);
             }
         }
     }
@@ -424,14 +1415,22 @@ public final class ServiceConnector implements ServiceListener {
     @Override
     public void onServiceConnected(String serviceIntent, AbstractServiceHandler serviceHandler) {
         log("Service Connected " + serviceIntent);
-        Object serviceObject = serviceHandler.getService();
-        //initialize the fields
-        for (ServiceConnectorListener serviceConnectorListener : serviceInfoMap.get(serviceIntent)) {
-            serviceConnectorListener.onServiceConnected(serviceIntent, serviceObject, this);
+        if (!isCurrentHandler(serviceIntent, serviceHandler)) {
+            return;
         }
-        //call back listener methods
-        for (ServiceConnectorListener serviceConnectorListener : serviceCallbacks) {
-            serviceConnectorListener.onServiceConnected(serviceIntent, serviceObject, this);
+        boolean traced = ServiceTrace.beginSection("ServiceConnector.onServiceConnected", serviceIntent, null);
+        try {
+            Object serviceObject = getServiceObject(serviceHandler);
+            //initialize the fields
+            updateServiceFields(serviceIntent, serviceHandler);
+            //call back listener methods
+            for (ServiceConnectorListener serviceConnectorListener : serviceCallbacks) {
+                serviceConnectorListener.onServiceConnected(serviceIntent, serviceObject, this);
+            }
+        } finally {
+            if (traced) {
+                ServiceTrace.endSection();
+            }
         }
         //unblock if any
         synchronized (this) {
@@ -444,12 +1443,10 @@ public final class ServiceConnector implements ServiceListener {
     @Override
     public void onServiceDisconnected(String serviceIntent, AbstractServiceHandler serviceHandler) {
         log("Service DisConnected " + serviceIntent);
-        List<ServiceFieldInfo> serviceFieldInfoList = serviceInfoMap.get(serviceIntent);
-        if (serviceFieldInfoList != null) {
-            for (ServiceConnectorListener serviceConnectorListener : serviceFieldInfoList) {
-                serviceConnectorListener.onServiceDisconnected(serviceIntent, this);
-            }
+        if (!isCurrentHandler(serviceIntent, serviceHandler)) {
+            return;
         }
+        updateServiceFields(serviceIntent, serviceHandler);
         for (ServiceConnectorListener serviceConnectorListener : serviceCallbacks) {
             serviceConnectorListener.onServiceDisconnected(serviceIntent, this);
         }
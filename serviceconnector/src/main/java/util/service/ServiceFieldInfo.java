@@ -15,6 +15,8 @@ class ServiceFieldInfo extends ServiceConnectorListener {
     private static final String TAG = ServiceConnector.class.getSimpleName();
     private Field serviceField;
     private Object target;
+    //set once the target is unbound, after which the field is not set any more
+    private boolean unbound;
 
     /**
      * Initialize a {@link ServiceFieldInfo} with given {@link Field} that
@@ -30,12 +32,22 @@ class ServiceFieldInfo extends ServiceConnectorListener {
     }
 
     @Override
-    public void onServiceConnected(String serviceIntent, Object serviceObject, ServiceConnector serviceConnector) {
-        setServiceObject(serviceObject);
+    public synchronized void onServiceConnected(String serviceIntent, Object serviceObject, ServiceConnector serviceConnector) {
+        if (!unbound) {
+            setServiceObject(serviceObject);
+        }
     }
 
     @Override
-    public void onServiceDisconnected(String serviceIntent, ServiceConnector serviceConnector) {
+    public synchronized void onServiceDisconnected(String serviceIntent, ServiceConnector serviceConnector) {
+        setServiceObject(null);
+    }
+
+    /**
+     * Resets the field, and stops setting it when the service connects
+     */
+    synchronized void unbind() {
+        unbound = true;
         setServiceObject(null);
     }
 
@@ -0,0 +1,134 @@
+package util.service;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import util.service.handler.AbstractServiceHandler;
+import util.service.handler.ServiceListener;
+
+/**
+ * Keeps the {@link AbstractServiceHandler}s shared by the default {@link ServiceConnector} and the ones
+ * created with shared connections, so that a service is bound once for all of them.
+ * <p>
+ * Each acquire of a handler takes a reference to it, which the matching release gives back,
+ * and the handler is destroyed when the last reference is released. A connector may acquire the
+ * handler again before releasing the one it removed, so the references are counted, not just the owners.
+ *
+ * <p>
+ * A handler is set up with the configuration of its first acquire, which holds till it is destroyed.
+ * A later acquire with another configuration gets the same handler, and the difference is logged.
+ *
+ * @see ServiceConnector#newScope(boolean)
+ */
+final class ServiceHandlerPool {
+
+    /**
+     * Creates the handler of a service the first time it is acquired
+     */
+    interface HandlerFactory {
+
+        /**
+         * Creates a handler that runs its callbacks on the given executor and reports to the given listener
+         */
+        AbstractServiceHandler create(ExecutorService executor, ServiceListener serviceListener);
+    }
+
+    private static final String TAG = ServiceConnector.class.getSimpleName();
+    //the handlers outlive the connector that created them, so they don't use its executor
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, SharedHandler> sharedHandlers = new HashMap<>();
+
+    /**
+     * Returns the handler of the given service, creating it with the given configuration if needed,
+     * and adds the given listener to the ones it reports to
+     *
+     * @param configuration Describes how the handler is set up, to compare with the one of the existing handler
+     */
+    synchronized AbstractServiceHandler acquire(String serviceIntent, String configuration, ServiceListener serviceListener, HandlerFactory handlerFactory) {
+        SharedHandler sharedHandler = sharedHandlers.get(serviceIntent);
+        if (sharedHandler == null) {
+            sharedHandler = new SharedHandler();
+            sharedHandler.serviceHandler = handlerFactory.create(executor, sharedHandler);
+            sharedHandler.configuration = configuration;
+            sharedHandlers.put(serviceIntent, sharedHandler);
+        } else if (!sharedHandler.configuration.equals(configuration)) {
+            Log.w(TAG, "Sharing the connection to " + serviceIntent + " set up with " + sharedHandler.configuration
+                    + ", ignoring " + configuration);
+        }
+        Integer references = sharedHandler.references.get(serviceListener);
+        if (references == null) {
+            references = 0;
+            sharedHandler.serviceListeners.add(serviceListener);
+        }
+        sharedHandler.references.put(serviceListener, references + 1);
+        return sharedHandler.serviceHandler;
+    }
+
+    /**
+     * Releases a reference the given listener took to the handler of the given service,
+     * removing the listener once it has released all of them, and destroying the handler
+     * once no references are left
+     */
+    void release(String serviceIntent, ServiceListener serviceListener) {
+        AbstractServiceHandler releasedHandler = null;
+        synchronized (this) {
+            SharedHandler sharedHandler = sharedHandlers.get(serviceIntent);
+            Integer references = sharedHandler != null ? sharedHandler.references.get(serviceListener) : null;
+            if (references == null) {
+                return;
+            }
+            if (references > 1) {
+                sharedHandler.references.put(serviceListener, references - 1);
+            } else {
+                sharedHandler.references.remove(serviceListener);
+                sharedHandler.serviceListeners.remove(serviceListener);
+                if (sharedHandler.references.isEmpty()) {
+                    sharedHandlers.remove(serviceIntent);
+                    releasedHandler = sharedHandler.serviceHandler;
+                }
+            }
+        }
+        if (releasedHandler != null) {
+            releasedHandler.destroy();
+        }
+    }
+
+    /**
+     * A shared handler, passing its callbacks on to all the connectors using it
+     */
+    private static class SharedHandler implements ServiceListener {
+
+        private AbstractServiceHandler serviceHandler;
+        private String configuration;
+        private final List<ServiceListener> serviceListeners = new CopyOnWriteArrayList<>();
+        //references held by each listener, guarded by the pool
+        private final Map<ServiceListener, Integer> references = new HashMap<>();
+
+        @Override
+        public void onServiceConnected(String serviceIntent, AbstractServiceHandler serviceHandler) {
+            for (ServiceListener serviceListener : serviceListeners) {
+                serviceListener.onServiceConnected(serviceIntent, serviceHandler);
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(String serviceIntent, AbstractServiceHandler serviceHandler) {
+            for (ServiceListener serviceListener : serviceListeners) {
+                serviceListener.onServiceDisconnected(serviceIntent, serviceHandler);
+            }
+        }
+
+        @Override
+        public void onServiceConnectionFailed(String serviceIntent, Exception exception) {
+            for (ServiceListener serviceListener : serviceListeners) {
+                serviceListener.onServiceConnectionFailed(serviceIntent, exception);
+            }
+        }
+    }
+}
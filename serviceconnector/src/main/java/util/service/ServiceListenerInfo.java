@@ -4,6 +4,8 @@ import android.os.IInterface;
 import android.util.Log;
 
 import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Wraps the method that is annotated with  {@link util.service.annotation.ServiceConnectionCallback}
@@ -13,6 +15,14 @@ class ServiceListenerInfo extends ServiceConnectorListener {
     private static final String TAG = ServiceConnector.class.getSimpleName();
     private Method listenerMethod;
     private Object target;
+    //whether the callbacks are held back till resumed
+    private boolean paused;
+    //whether the callbacks are held back, till the ones of a pause are all replayed
+    private boolean holding;
+    //whether a resume is replaying the held back callbacks
+    private boolean replaying;
+    //latest connection state or failure of each service, held back while paused
+    private Map<String, Object> pendingEvents = new LinkedHashMap<>();
 
     /**
      * Initialize a {@link ServiceListenerInfo} with the method
@@ -28,28 +38,83 @@ class ServiceListenerInfo extends ServiceConnectorListener {
     }
 
 
+    /**
+     * Holds back the callbacks till {@link #resume()}
+     */
+    synchronized void pause() {
+        paused = true;
+        holding = true;
+    }
+
+    /**
+     * Delivers the callbacks held back while paused, and delivers the rest as they come.
+     * Only the latest event of each service is delivered.
+     * <p>
+     * The callbacks coming in during the replay are held back too, and replayed after it,
+     * so that none is delivered ahead of an older one.
+     */
+    void resume() {
+        synchronized (this) {
+            if (!paused) {
+                return;
+            }
+            paused = false;
+            if (replaying) {
+                //the resume already replaying delivers the rest
+                return;
+            }
+            replaying = true;
+        }
+        while (true) {
+            Map<String, Object> events;
+            synchronized (this) {
+                if (paused || pendingEvents.isEmpty()) {
+                    replaying = false;
+                    holding = paused;
+                    return;
+                }
+                events = pendingEvents;
+                pendingEvents = new LinkedHashMap<>();
+            }
+            for (Map.Entry<String, Object> event : events.entrySet()) {
+                invoke(event.getKey(), event.getValue());
+            }
+        }
+    }
+
     @Override
     public void onServiceConnected(String serviceIntent, Object serviceObject, ServiceConnector serviceConnector) {
-        try {
-            listenerMethod.invoke(target, serviceIntent, true);
-        } catch (Exception ex) {
-            Log.w(TAG, "Unable to call the listener method", ex);
-        }
+        onEvent(serviceIntent, true);
     }
 
     @Override
     public void onServiceDisconnected(String serviceIntent, ServiceConnector serviceConnector) {
-        try {
-            listenerMethod.invoke(target, serviceIntent, false);
-        } catch (Exception ex) {
-            Log.w(TAG, "Unable to call the listener method", ex);
-        }
+        onEvent(serviceIntent, false);
     }
 
     @Override
     public void onServiceConnectionFailed(String serviceIntent, Exception exception) {
+        onEvent(serviceIntent, exception);
+    }
+
+    /**
+     * Calls the listener method with the given event, or holds it back if paused
+     */
+    private void onEvent(String serviceIntent, Object event) {
+        synchronized (this) {
+            if (holding) {
+                //keep the order of the latest events
+                pendingEvents.remove(serviceIntent);
+                pendingEvents.put(serviceIntent, event);
+                return;
+            }
+        }
+        invoke(serviceIntent, event);
+    }
+
+    private void invoke(String serviceIntent, Object event) {
         try {
-            listenerMethod.invoke(target, serviceIntent, exception);
+            listenerMethod.invoke(target, serviceIntent, event);
         } catch (Exception ex) {
             Log.w(TAG, "Unable to call the listener method", ex);
         }
@@ -0,0 +1,69 @@
+package util.service.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a void (or oneway) method of a service interface whose calls are buffered by
+ * {@link util.service.ServiceConnector} and delivered in batches through another method of the service.
+ * <p>
+ * The method should take at least one parameter, and the batch method the same number of parameters,
+ * each a <b>List</b> that receives the values of the corresponding parameter of the buffered calls, in the order they were made.
+ * A batch is sent when it reaches {@link #maxBatchSize()}, when {@link #maxDelay()} has passed since the
+ * first call in it, or when the service gets unbound. Calls made while the service is disconnected are not buffered,
+ * but made as usual, and the calls still buffered when the service disconnects are dropped.
+ * <p>
+ * For interfaces that cannot be annotated, like the ones generated from AIDL,
+ * use {@link util.service.ServiceConnector#batchCalls(Class, String, util.service.proxy.CallBatcher.Policy)}
+ * <p>
+ * ex:
+ * <pre><code>
+ *  {@literal @}Remoter
+ *  public interface ITelemetryService {
+ *      {@literal @}Batched(batchMethod = "logEvents")
+ *      void logEvent(String name, long time);
+ *
+ *      void logEvents(List&lt;String&gt; names, List&lt;Long&gt; times);
+ *  }
+ * </code></pre>
+ *
+ * @see util.service.ServiceConnector
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Batched {
+
+    /**
+     * Name of the service method that receives the batches
+     */
+    String batchMethod();
+
+    /**
+     * Maximum number of calls sent in one batch
+     */
+    int maxBatchSize() default 32;
+
+    /**
+     * Maximum time in ms a call waits in the buffer before its batch is sent
+     */
+    long maxDelay() default 100;
+
+    /**
+     * Maximum number of calls buffered
+     */
+    int bufferSize() default 1024;
+
+    /**
+     * What to do with a call when the buffer is full
+     */
+    OverflowPolicy overflow() default OverflowPolicy.DROP_OLDEST;
+
+    /**
+     * Maximum time in ms to wait for room in the buffer with {@link OverflowPolicy#BLOCK}
+     */
+    long blockTimeout() default 1000;
+}
@@ -0,0 +1,44 @@
+package util.service.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a service interface as cacheable, so that {@link util.service.ServiceConnector}
+ * answers repeated calls with the same arguments without calling the remote service.
+ * <p>
+ * Use this only on methods whose result depends only on their arguments. The cached results are
+ * dropped when the service reconnects.
+ * <p>
+ * For interfaces that cannot be annotated, like the ones generated from AIDL,
+ * use {@link util.service.ServiceConnector#cacheResults(Class, String, long, int)}
+ * <p>
+ * ex:
+ * <pre><code>
+ *  {@literal @}Remoter
+ *  public interface IConfigService {
+ *      {@literal @}CacheResult(ttl = 60000, maxSize = 32)
+ *      String getConfig(String key);
+ *  }
+ * </code></pre>
+ *
+ * @see util.service.ServiceConnector
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CacheResult {
+
+    /**
+     * Time in ms a cached result stays valid. 0 keeps it until the service reconnects.
+     */
+    long ttl() default 0;
+
+    /**
+     * Maximum number of results cached for the method
+     */
+    int maxSize() default 16;
+}
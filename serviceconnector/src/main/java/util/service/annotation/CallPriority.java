@@ -0,0 +1,55 @@
+package util.service.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets the priority of the calls to a method of a service interface, for services whose concurrent calls
+ * are limited by {@link util.service.ServiceConnector#limitConcurrentCalls(String, util.service.proxy.CallBulkhead.Policy)}.
+ * When the service is saturated, the waiting calls of higher priority go first.
+ * <p>
+ * For interfaces that cannot be annotated, like the ones generated from AIDL,
+ * use {@link util.service.ServiceConnector#prioritizeCalls(Class, String, int)}
+ * <p>
+ * ex:
+ * <pre><code>
+ *  {@literal @}Remoter
+ *  public interface IUserService {
+ *      {@literal @}CallPriority(CallPriority.HIGH)
+ *      User getUser(String id);
+ *
+ *      {@literal @}CallPriority(CallPriority.LOW)
+ *      void syncUsers();
+ *  }
+ * </code></pre>
+ *
+ * @see util.service.ServiceConnector
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CallPriority {
+
+    /**
+     * Priority of latency sensitive calls
+     */
+    int HIGH = 10;
+
+    /**
+     * Priority of the calls to methods without one
+     */
+    int NORMAL = 0;
+
+    /**
+     * Priority of background calls
+     */
+    int LOW = -10;
+
+    /**
+     * Priority of the calls, higher goes first
+     */
+    int value();
+}
@@ -0,0 +1,40 @@
+package util.service.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a service interface as safe to call again, so that a call that fails because the service
+ * died or is disconnected is retried once by {@link util.service.ServiceConnector} as soon as the service reconnects.
+ * <p>
+ * The call waits for the service to reconnect for up to the given timeout, and fails with its original
+ * exception if it does not. A call on the main thread does not wait, as the service reconnects on the main
+ * thread, and is retried only if the service already reconnected.
+ * <p>
+ * For interfaces that cannot be annotated, like the ones generated from AIDL,
+ * use {@link util.service.ServiceConnector#retryCalls(Class, String, long)}
+ * <p>
+ * ex:
+ * <pre><code>
+ *  {@literal @}Remoter
+ *  public interface IUserService {
+ *      {@literal @}Idempotent(timeout = 2000)
+ *      User getUser(String id);
+ *  }
+ * </code></pre>
+ *
+ * @see util.service.ServiceConnector
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Idempotent {
+
+    /**
+     * Maximum time in ms to wait for the service to reconnect before retrying
+     */
+    long timeout() default 5000;
+}
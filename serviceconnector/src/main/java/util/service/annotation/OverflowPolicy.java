@@ -0,0 +1,29 @@
+package util.service.annotation;
+
+/**
+ * What to do with a new call when the buffer holding pending calls is full
+ *
+ * @see Batched
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Drop the oldest pending call to make room for the new one
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drop the new call
+     */
+    DROP_NEWEST,
+
+    /**
+     * Reject the new call, throwing an exception to the caller
+     */
+    REJECT,
+
+    /**
+     * Block the caller until there is room, rejecting the call if the wait times out
+     */
+    BLOCK
+}
@@ -0,0 +1,54 @@
+package util.service.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the rate of the calls made by this process to a method of a service interface, so that a chatty client
+ * does not flood a service shared with other processes.
+ * <p>
+ * The limit is a token bucket, allowing bursts of up to {@link #burst()} calls, refilled at {@link #callsPerSecond()}.
+ * The {@link ThrottlePolicy} decides what happens to a call made when the bucket is empty.
+ * <p>
+ * For interfaces that cannot be annotated, like the ones generated from AIDL,
+ * use {@link util.service.ServiceConnector#limitCallRate(Class, String, util.service.proxy.CallRateLimiter.Policy)}
+ * <p>
+ * ex:
+ * <pre><code>
+ *  {@literal @}Remoter
+ *  public interface IUserService {
+ *      {@literal @}RateLimited(callsPerSecond = 5, burst = 10, throttle = ThrottlePolicy.SHED)
+ *      void reportPresence(String id);
+ *  }
+ * </code></pre>
+ *
+ * @see util.service.ServiceConnector
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RateLimited {
+
+    /**
+     * Number of calls allowed per second, on average
+     */
+    double callsPerSecond();
+
+    /**
+     * Number of calls allowed at once after a quiet period
+     */
+    int burst() default 1;
+
+    /**
+     * What to do with a call when the limit is used up
+     */
+    ThrottlePolicy throttle() default ThrottlePolicy.BLOCK;
+
+    /**
+     * Maximum time in ms to delay a call with {@link ThrottlePolicy#BLOCK}
+     */
+    long timeout() default 1000;
+}
@@ -27,4 +27,55 @@ import java.lang.annotation.Target;
 public @interface ServiceInfo {
 
     String serviceIntent();
+
+    /**
+     * Package of the service to bind to. Along with {@link #serviceClassName()}, binds to this service
+     * without resolving the {@link #serviceIntent()}.
+     */
+    String servicePackage() default "";
+
+    /**
+     * Class name of the service to bind to, either fully qualified or starting with a '.' to be relative to
+     * the {@link #servicePackage()}
+     */
+    String serviceClassName() default "";
+
+    /**
+     * Intents to try in order if the service of the {@link #serviceIntent()} cannot be found or bound.
+     * The service that gets bound is remembered and tried first the next time.
+     * The service is still identified by its {@link #serviceIntent()}.
+     */
+    String[] fallbackIntents() default {};
+
+    /**
+     * Whether to inject a stable proxy of the service, that is set once when bound and kept across reconnects.
+     * Only the service object behind the proxy is swapped when the service reconnects, however many fields it has,
+     * and the field need not be checked for null. Calls made while disconnected throw a
+     * <b>android.os.DeadObjectException</b>, or an IllegalStateException if the method cannot throw a RemoteException.
+     * <p>
+     * All the fields of a service should agree on it: the field that first binds to the service decides for all of
+     * them, and a warning is logged for any field asking otherwise.
+     */
+    boolean stableProxy() default false;
+
+    /**
+     * Whether to send the {@link util.service.trace.TraceContext} current on the calling thread along with
+     * each call to the service, for the service to restore, so that the work it does can be attributed
+     * to the action that made the call. The contexts are sent only once the service has answered the handshake
+     * of {@link util.service.trace.TraceContext}, so services that do not restore them get the calls unchanged.
+     * <p>
+     * Applies to all the fields of the service if the field that first binds to it asks for it.
+     */
+    boolean propagateTraceContext() default false;
+
+    /**
+     * Flags to bind to the service with, in addition to <b>Context.BIND_AUTO_CREATE</b>, like
+     * <b>Context.BIND_IMPORTANT</b>, <b>Context.BIND_ABOVE_CLIENT</b>, <b>Context.BIND_WAIVE_PRIORITY</b>
+     * or <b>Context.BIND_NOT_FOREGROUND</b>, to tune the priority of the service process.
+     * <p>
+     * A service is bound once for all the fields of it, with the flags of the field that first binds to it.
+     *
+     * @see util.service.ServiceConnector#setBindFlags(String, int)
+     */
+    int bindFlags() default 0;
 }
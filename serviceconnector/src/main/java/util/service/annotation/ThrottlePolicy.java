@@ -0,0 +1,24 @@
+package util.service.annotation;
+
+/**
+ * What to do with a call made when the rate limit of its service or method is used up
+ *
+ * @see RateLimited
+ */
+public enum ThrottlePolicy {
+
+    /**
+     * Delay the call until the limit allows it, rejecting the call if the wait times out
+     */
+    BLOCK,
+
+    /**
+     * Reject the call at once, throwing an exception to the caller
+     */
+    REJECT,
+
+    /**
+     * Drop the call without calling the service, returning the default value of the method (null, 0 or false)
+     */
+    SHED
+}
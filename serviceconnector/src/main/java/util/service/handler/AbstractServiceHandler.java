@@ -11,24 +11,66 @@ import android.os.IBinder;
 import android.os.IInterface;
 import android.util.Log;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 
+import util.service.proxy.ServiceProxy;
+import util.service.trace.ServiceTrace;
+import util.service.trace.TraceContext;
+import util.service.transfer.ServiceInputStream;
+import util.service.transfer.SharedBufferPool;
+
 /**
  * Takes care of common service connection logic
  */
 public abstract class AbstractServiceHandler<T> {
 
     private static final String TAG = "ServiceConnector";
+    private static final int MAX_POOLED_SHARED_BUFFERS = 4;
     private Context context;
     private boolean connected;
     private T service;
     private Class<T> serviceClass;
     private String serviceIntent;
     private boolean bound;
+    //set while a bind is in progress, made without holding this handler
+    private boolean binding;
     private boolean destroyed;
+    //flags to bind with, in addition to BIND_AUTO_CREATE
+    private int bindFlags;
+    //explicit service to bind to, null to resolve the intent
+    private ComponentName serviceComponent;
+    //whether the trace context of the caller is sent with each call
+    private boolean propagateTraceContext;
+    //intents tried in order if the service intent cannot be bound
+    private String[] fallbackIntents = new String[0];
     private ServiceListener serviceListener;
     private ExecutorService executorService;
+    //connection callbacks not yet delivered, delivered one at a time so that they arrive in order
+    private final ArrayDeque<Runnable> pendingCallbacks = new ArrayDeque<>();
+    private boolean deliveringCallbacks;
+    private final Runnable callbackDelivery = new Runnable() {
+        @Override
+        public void run() {
+            deliverCallbacks();
+        }
+    };
+    private ServiceProxy serviceProxy;
+    private SharedBufferPool sharedBufferPool;
+    //streams that live only as long as the connection
+    private Set<ServiceInputStream> streams = Collections.newSetFromMap(new ConcurrentHashMap<ServiceInputStream, Boolean>());
+    //forgets the streams read to the end or closed by their readers
+    private final ServiceInputStream.Listener streamListener = new ServiceInputStream.Listener() {
+        @Override
+        public void onStreamEnded(ServiceInputStream stream) {
+            streams.remove(stream);
+        }
+    };
 
     /**
      * Service connection
@@ -37,9 +79,21 @@ public abstract class AbstractServiceHandler<T> {
         public void onServiceConnected(ComponentName className, IBinder serviceBinder) {
             try {
                 synchronized (AbstractServiceHandler.this) {
-                    AbstractServiceHandler.this.service = initService(serviceBinder);
+                    if (destroyed) {
+                        return;
+                    }
+                    if (propagateTraceContext) {
+                        T service = initService(TraceContext.propagateThrough(serviceBinder));
+                        AbstractServiceHandler.this.service = service != null
+                                ? TraceContext.exposeBinder(service, getServiceClass(), serviceBinder) : null;
+                    } else {
+                        AbstractServiceHandler.this.service = initService(serviceBinder);
+                    }
                     if (AbstractServiceHandler.this.service != null) {
                         connected = true;
+                        if (serviceProxy != null) {
+                            serviceProxy.setService(AbstractServiceHandler.this.service);
+                        }
                         AbstractServiceHandler.this.notifyAll();
                     }
                 }
@@ -57,9 +111,16 @@ public abstract class AbstractServiceHandler<T> {
 
         public void onServiceDisconnected(ComponentName className) {
             synchronized (AbstractServiceHandler.this) {
+                if (destroyed) {
+                    return;
+                }
                 AbstractServiceHandler.this.service = null;
                 connected = false;
+                if (serviceProxy != null) {
+                    serviceProxy.setService(null);
+                }
             }
+            closeStreams();
             AbstractServiceHandler.this.onServiceDisconnected();
             connectToService();
         }
@@ -108,7 +169,7 @@ public abstract class AbstractServiceHandler<T> {
      */
     protected void onServiceConnected() {
         if (serviceListener != null) {
-            executorService.execute(new Runnable() {
+            postCallback(new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -126,7 +187,7 @@ public abstract class AbstractServiceHandler<T> {
      */
     protected void onServiceDisconnected() {
         if (serviceListener != null) {
-            executorService.execute(new Runnable() {
+            postCallback(new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -139,6 +200,37 @@ public abstract class AbstractServiceHandler<T> {
         }
     }
 
+    /**
+     * Delivers the given callback on the executor after the ones posted before it
+     */
+    private void postCallback(Runnable callback) {
+        synchronized (pendingCallbacks) {
+            pendingCallbacks.addLast(callback);
+            if (deliveringCallbacks) {
+                return;
+            }
+            deliveringCallbacks = true;
+        }
+        executorService.execute(callbackDelivery);
+    }
+
+    /**
+     * Delivers the pending callbacks in order. Called on the executor.
+     */
+    private void deliverCallbacks() {
+        while (true) {
+            Runnable callback;
+            synchronized (pendingCallbacks) {
+                callback = pendingCallbacks.pollFirst();
+                if (callback == null) {
+                    deliveringCallbacks = false;
+                    return;
+                }
+            }
+            callback.run();
+        }
+    }
+
     /**
      * Returns the service interface
      */
@@ -146,15 +238,110 @@ public abstract class AbstractServiceHandler<T> {
         return service;
     }
 
+    /**
+     * Sets the {@link ServiceProxy} that wraps the service object of this handler.
+     * The proxy is kept pointing to the current service object as the service connects and disconnects.
+     */
+    public void setServiceProxy(ServiceProxy serviceProxy) {
+        this.serviceProxy = serviceProxy;
+    }
+
+    /**
+     * Sets the flags to bind to the service with, in addition to {@link Context#BIND_AUTO_CREATE}.
+     * Takes effect from the next bind.
+     */
+    public synchronized void setBindFlags(int bindFlags) {
+        this.bindFlags = bindFlags;
+    }
+
+    /**
+     * Sets whether to send the {@link TraceContext} of the caller with each call to the service.
+     * Takes effect from the next connection.
+     */
+    public synchronized void setPropagateTraceContext(boolean propagateTraceContext) {
+        this.propagateTraceContext = propagateTraceContext;
+    }
+
+    /**
+     * Sets the service to bind to without resolving the service intent, or null to resolve it
+     */
+    public synchronized void setServiceComponent(ComponentName serviceComponent) {
+        this.serviceComponent = serviceComponent;
+    }
+
+    /**
+     * Sets the intents to try in order if the service of the service intent cannot be found or bound
+     */
+    public synchronized void setFallbackIntents(String... fallbackIntents) {
+        this.fallbackIntents = fallbackIntents.clone();
+    }
+
+    /**
+     * Returns the {@link ServiceProxy} that wraps the service object, or null if none
+     */
+    public final ServiceProxy getServiceProxy() {
+        return serviceProxy;
+    }
+
+    /**
+     * Returns the pool of shared buffers used to pass large payloads to this service,
+     * creating it if needed. The pool is closed when this handler is destroyed.
+     */
+    public synchronized SharedBufferPool getSharedBufferPool() {
+        if (sharedBufferPool == null) {
+            sharedBufferPool = new SharedBufferPool(serviceIntent, MAX_POOLED_SHARED_BUFFERS);
+            if (destroyed) {
+                sharedBufferPool.close();
+            }
+        }
+        return sharedBufferPool;
+    }
+
+    /**
+     * Adds a stream to be closed when the service disconnects
+     */
+    public void addStream(ServiceInputStream stream) {
+        streams.add(stream);
+        stream.setListener(streamListener);
+        if (destroyed) {
+            closeStreams();
+        }
+    }
+
+    /**
+     * Closes the streams tied to the connection
+     */
+    private void closeStreams() {
+        for (ServiceInputStream stream : streams) {
+            streams.remove(stream);
+            stream.close();
+        }
+    }
+
     /**
      * Destroys this connection
      */
     public void destroy() {
-        destroyed = true;
-        if (bound) {
-            context.unbindService(serviceConnection);
+        boolean wasBound;
+        //a bind in progress undoes itself once it sees destroyed
+        synchronized (this) {
+            destroyed = true;
+            wasBound = bound;
             bound = false;
             connected = false;
+        }
+        if (serviceProxy != null) {
+            serviceProxy.destroy();
+            serviceProxy.setService(null);
+        }
+        synchronized (this) {
+            if (sharedBufferPool != null) {
+                sharedBufferPool.close();
+            }
+        }
+        closeStreams();
+        if (wasBound) {
+            context.unbindService(serviceConnection);
             onServiceDisconnected();
         }
     }
@@ -165,16 +352,43 @@ public abstract class AbstractServiceHandler<T> {
             executorService.execute(new Runnable() {
                 @Override
                 public void run() {
-                    if (!destroyed) {
+                    int bindFlags;
+                    ComponentName serviceComponent;
+                    String[] fallbackIntents;
+                    synchronized (AbstractServiceHandler.this) {
+                        //stays bound across service restarts, so bind only once
+                        if (destroyed || bound || binding) {
+                            return;
+                        }
+                        binding = true;
+                        bindFlags = AbstractServiceHandler.this.bindFlags;
+                        serviceComponent = AbstractServiceHandler.this.serviceComponent;
+                        fallbackIntents = AbstractServiceHandler.this.fallbackIntents;
+                    }
+                    //resolving and binding are IPCs, made without blocking the connection callbacks
+                    boolean bindSucceeded = false;
+                    Exception failure = null;
+                    try {
+                        bindSucceeded = bindService(bindFlags, serviceComponent, fallbackIntents);
+                    } catch (Exception ex) {
+                        failure = ex;
+                    }
+                    boolean destroyedWhileBinding = false;
+                    synchronized (AbstractServiceHandler.this) {
+                        binding = false;
+                        if (bindSucceeded) {
+                            destroyedWhileBinding = destroyed;
+                            bound = !destroyed;
+                        }
+                    }
+                    if (destroyedWhileBinding) {
+                        context.unbindService(serviceConnection);
+                    }
+                    if (failure != null) {
                         try {
-                            Intent sIntent = createExplicitFromImplicitIntent(context, new Intent(serviceIntent));
-                            bound = context.bindService(sIntent, serviceConnection, Context.BIND_AUTO_CREATE);
-                        } catch (Exception ex) {
-                            try {
-                                serviceListener.onServiceConnectionFailed(getServiceIntent(), ex);
-                            } catch (Exception ignored) {
-                                Log.w(TAG, "Callback failed", ex);
-                            }
+                            serviceListener.onServiceConnectionFailed(getServiceIntent(), failure);
+                        } catch (Exception ignored) {
+                            Log.w(TAG, "Callback failed", failure);
                         }
                     }
                 }
@@ -182,21 +396,97 @@ public abstract class AbstractServiceHandler<T> {
         }
     }
 
+    /**
+     * Binds to the first of the candidate services that binds, remembering it in the {@link ResolutionCache}
+     * to try first the next time. The candidates are resolved only as they are tried.
+     * Called without holding this handler, with the settings taken when the bind started.
+     *
+     * @return Whether bound
+     * @throws Exception The failure of the last candidate tried, if none bound
+     */
+    private boolean bindService(int bindFlags, ComponentName serviceComponent, String[] fallbackIntents) throws Exception {
+        ResolutionCache resolutionCache = ResolutionCache.getDefault();
+        List<Intent> triedIntents = new ArrayList<>();
+        Exception failure = null;
+        for (int candidate = 0; candidate < fallbackIntents.length + 2; candidate++) {
+            Intent intent = getCandidateIntent(candidate, resolutionCache, serviceComponent, fallbackIntents);
+            if (intent == null || isTried(triedIntents, intent)) {
+                continue;
+            }
+            triedIntents.add(intent);
+            boolean traced = ServiceTrace.beginSection("ServiceConnector.bindService", serviceIntent, null);
+            try {
+                if (context.bindService(intent, serviceConnection, Context.BIND_AUTO_CREATE | bindFlags)) {
+                    resolutionCache.put(serviceIntent, intent);
+                    return true;
+                }
+            } catch (Exception ex) {
+                failure = ex;
+            } finally {
+                if (traced) {
+                    ServiceTrace.endSection();
+                }
+            }
+        }
+        resolutionCache.remove(serviceIntent);
+        if (failure != null) {
+            throw failure;
+        }
+        if (triedIntents.isEmpty()) {
+            throw new IllegalArgumentException("No service found for " + serviceIntent);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the explicit intent of the given candidate, or null if it does not resolve.
+     * The candidates in order are the service last bound to, the explicit service if any or else
+     * the service of the service intent, and those of the fallback intents.
+     */
+    private Intent getCandidateIntent(int candidate, ResolutionCache resolutionCache, ComponentName serviceComponent,
+                                      String[] fallbackIntents) {
+        if (candidate == 0) {
+            return resolutionCache.get(serviceIntent);
+        }
+        if (candidate == 1) {
+            return serviceComponent != null
+                    ? new Intent(serviceIntent).setComponent(serviceComponent)
+                    : createExplicitFromImplicitIntent(context, new Intent(serviceIntent));
+        }
+        return createExplicitFromImplicitIntent(context, new Intent(fallbackIntents[candidate - 2]));
+    }
+
+    private static boolean isTried(List<Intent> triedIntents, Intent intent) {
+        for (Intent triedIntent : triedIntents) {
+            if (triedIntent.filterEquals(intent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Creates the intent to use to connect to service.
      */
     private Intent createExplicitFromImplicitIntent(Context context, Intent implicitIntent) {
         Intent explicitIntent = null;
         if (context != null) {
-            PackageManager pm = context.getPackageManager();
-            List<ResolveInfo> resolveInfo = pm.queryIntentServices(implicitIntent, 0);
-            if (resolveInfo != null && resolveInfo.size() >= 1) {
-                ResolveInfo serviceInfo = resolveInfo.get(0);
-                String packageName = serviceInfo.serviceInfo.packageName;
-                String className = serviceInfo.serviceInfo.name;
-                ComponentName component = new ComponentName(packageName, className);
-                explicitIntent = new Intent(implicitIntent);
-                explicitIntent.setComponent(component);
+            boolean traced = ServiceTrace.beginSection("ServiceConnector.resolve", implicitIntent.getAction(), null);
+            try {
+                PackageManager pm = context.getPackageManager();
+                List<ResolveInfo> resolveInfo = pm.queryIntentServices(implicitIntent, 0);
+                if (resolveInfo != null && resolveInfo.size() >= 1) {
+                    ResolveInfo serviceInfo = resolveInfo.get(0);
+                    String packageName = serviceInfo.serviceInfo.packageName;
+                    String className = serviceInfo.serviceInfo.name;
+                    ComponentName component = new ComponentName(packageName, className);
+                    explicitIntent = new Intent(implicitIntent);
+                    explicitIntent.setComponent(component);
+                }
+            } finally {
+                if (traced) {
+                    ServiceTrace.endSection();
+                }
             }
         }
         return explicitIntent;
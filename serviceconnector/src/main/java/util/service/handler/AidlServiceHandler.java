@@ -23,7 +23,6 @@ import java.util.concurrent.ExecutorService;
 public class AidlServiceHandler<T extends IInterface> extends AbstractServiceHandler {
 
     private static final String TAG = "ServiceConnector";
-    private Class serviceStub;
 
 
     //*************************************************************
@@ -40,7 +39,6 @@ public class AidlServiceHandler<T extends IInterface> extends AbstractServiceHan
     public AidlServiceHandler(final Context context, final String serviceIntent, Class<? extends IInterface> serviceClass,
                               ExecutorService executorService, ServiceListener serviceListener, boolean connect) {
         super(context, serviceIntent, serviceClass, executorService, serviceListener, connect);
-        this.serviceStub = getStub(serviceClass);
     }
 
 
@@ -59,6 +57,8 @@ public class AidlServiceHandler<T extends IInterface> extends AbstractServiceHan
     protected T initService(IBinder serviceBinder) {
         T service = null;
         try {
+            //looked up here, as the connection may complete before this handler is fully constructed
+            Class serviceStub = getStub(getServiceClass());
             Method asInterfaceMethod = serviceStub.getMethod("asInterface", IBinder.class);
             service = (T) asInterfaceMethod.invoke(serviceStub, serviceBinder);
 
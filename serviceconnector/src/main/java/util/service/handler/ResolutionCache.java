@@ -0,0 +1,272 @@
+package util.service.handler;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the service last bound to for each service intent, so that the next bind
+ * need not resolve the intent through the {@link PackageManager}.
+ * <p>
+ * Once {@linkplain #enablePersistence(Context) persisted}, the services are kept in a small file along with the
+ * version code of their packages, so that they are known from the first bind after a process start.
+ * The file is loaded in the background, and the services of packages that changed since are dropped
+ * before any of them is used. A bind made before then resolves its intent as usual.
+ */
+public final class ResolutionCache {
+
+    private static final String TAG = "ServiceConnector";
+    private static final String FILE_NAME = "serviceconnector_resolutions";
+    private static final int FILE_VERSION = 1;
+    private static final int UNKNOWN_VERSION = -1;
+    private static final ResolutionCache DEFAULT = new ResolutionCache();
+    private final ConcurrentMap<String, Resolution> resolutions = new ConcurrentHashMap<>();
+    private volatile File file;
+    private volatile PackageManager packageManager;
+    private volatile CountDownLatch loaded;
+    private ExecutorService ioExecutor;
+
+    /**
+     * Returns the cache used by the service handlers
+     */
+    public static ResolutionCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Initialize an empty cache, kept only in memory till {@link #enablePersistence(Context)}
+     */
+    ResolutionCache() {
+    }
+
+    /**
+     * Starts keeping the resolved services in a file of the given context, loading the services kept
+     * by the previous process in the background. Does nothing if already persisted.
+     */
+    public synchronized void enablePersistence(Context context) {
+        if (file != null) {
+            return;
+        }
+        Context applicationContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        packageManager = applicationContext.getPackageManager();
+        file = new File(applicationContext.getCacheDir(), FILE_NAME);
+        loaded = new CountDownLatch(1);
+        ioExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ServiceConnector-resolutions");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean changed;
+                try {
+                    Map<String, Resolution> loadedResolutions = load();
+                    changed = validate(loadedResolutions);
+                    for (Map.Entry<String, Resolution> entry : loadedResolutions.entrySet()) {
+                        //a bind made before the load knows better
+                        if (resolutions.putIfAbsent(entry.getKey(), entry.getValue()) != null) {
+                            changed = true;
+                        }
+                    }
+                } finally {
+                    loaded.countDown();
+                }
+                if (changed) {
+                    write();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the intent of the service last bound to for the given service intent, or null if none.
+     * Does not wait for the persisted services, which are known only once loaded.
+     */
+    public Intent get(String serviceIntent) {
+        Resolution resolution = resolutions.get(serviceIntent);
+        return resolution != null ? new Intent(resolution.intent) : null;
+    }
+
+    /**
+     * Waits for the persisted services to be loaded, returning false if they are not in time
+     * or the cache is not persisted
+     */
+    boolean awaitLoaded(long timeout, TimeUnit unit) throws InterruptedException {
+        CountDownLatch loaded = this.loaded;
+        return loaded != null && loaded.await(timeout, unit);
+    }
+
+    /**
+     * Remembers the explicit intent of the service bound to for the given service intent
+     */
+    public void put(String serviceIntent, Intent intent) {
+        Resolution resolution = resolutions.get(serviceIntent);
+        if (resolution == null || !resolution.intent.filterEquals(intent)) {
+            resolutions.put(serviceIntent, new Resolution(new Intent(intent), UNKNOWN_VERSION));
+            save();
+        }
+    }
+
+    /**
+     * Forgets the service of the given service intent, as it could not be bound
+     */
+    public void remove(String serviceIntent) {
+        if (resolutions.remove(serviceIntent) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Writes the services to the file in the background, if persisted
+     */
+    private void save() {
+        if (file != null) {
+            ioExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    write();
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads the services kept in the file. Called on the io thread.
+     */
+    private Map<String, Resolution> load() {
+        Map<String, Resolution> loadedResolutions = new HashMap<>();
+        if (!file.exists()) {
+            return loadedResolutions;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(file));
+            if (input.readInt() != FILE_VERSION) {
+                return loadedResolutions;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String serviceIntent = input.readUTF();
+                Intent intent = new Intent(input.readUTF());
+                intent.setComponent(new ComponentName(input.readUTF(), input.readUTF()));
+                loadedResolutions.put(serviceIntent, new Resolution(intent, input.readInt()));
+            }
+        } catch (IOException ex) {
+            Log.w(TAG, "Unable to read the resolved services", ex);
+        } finally {
+            close(input);
+        }
+        return loadedResolutions;
+    }
+
+    /**
+     * Drops the loaded services whose packages changed since they were kept, returning true if any.
+     * Called on the io thread.
+     */
+    private boolean validate(Map<String, Resolution> loadedResolutions) {
+        boolean changed = false;
+        Iterator<Resolution> iterator = loadedResolutions.values().iterator();
+        while (iterator.hasNext()) {
+            Resolution resolution = iterator.next();
+            if (resolution.versionCode != UNKNOWN_VERSION
+                    && resolution.versionCode != getVersionCode(resolution.intent.getComponent().getPackageName())) {
+                iterator.remove();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Writes the services to the file, replacing it. Called on the io thread.
+     */
+    private void write() {
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new FileOutputStream(tempFile));
+            Map<String, Resolution> snapshot = new HashMap<>(resolutions);
+            output.writeInt(FILE_VERSION);
+            output.writeInt(snapshot.size());
+            for (Map.Entry<String, Resolution> entry : snapshot.entrySet()) {
+                Resolution resolution = entry.getValue();
+                ComponentName component = resolution.intent.getComponent();
+                if (resolution.versionCode == UNKNOWN_VERSION) {
+                    resolution.versionCode = getVersionCode(component.getPackageName());
+                }
+                output.writeUTF(entry.getKey());
+                output.writeUTF(resolution.intent.getAction());
+                output.writeUTF(component.getPackageName());
+                output.writeUTF(component.getClassName());
+                output.writeInt(resolution.versionCode);
+            }
+            output.close();
+            output = null;
+            if (!tempFile.renameTo(file)) {
+                Log.w(TAG, "Unable to save the resolved services");
+            }
+        } catch (IOException ex) {
+            Log.w(TAG, "Unable to save the resolved services", ex);
+        } finally {
+            close(output);
+        }
+    }
+
+    /**
+     * Returns the version code of the given package, or {@link #UNKNOWN_VERSION} if not installed
+     */
+    private int getVersionCode(String packageName) {
+        try {
+            return packageManager.getPackageInfo(packageName, 0).versionCode;
+        } catch (PackageManager.NameNotFoundException ex) {
+            return UNKNOWN_VERSION;
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * A service resolved for a service intent
+     */
+    private static class Resolution {
+        final Intent intent;
+        //version code of the package of the service, as of when it was resolved
+        volatile int versionCode;
+
+        Resolution(Intent intent, int versionCode) {
+            this.intent = intent;
+            this.versionCode = versionCode;
+        }
+    }
+}
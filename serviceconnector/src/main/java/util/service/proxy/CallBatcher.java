@@ -0,0 +1,367 @@
+package util.service.proxy;
+
+import android.util.Log;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import util.service.annotation.Batched;
+import util.service.annotation.OverflowPolicy;
+
+/**
+ * A {@link CallInterceptor} that buffers the calls to void methods and delivers them in batches
+ * through a batch method of the service.
+ * <p>
+ * Batches are sent from a background thread, in the order the calls were made.
+ * The calls are buffered only while the service is connected: the calls made while it is disconnected go through
+ * as if not batched, and the calls still buffered when it disconnects are dropped and counted as {@link #METRIC_DROPPED_CALLS}.
+ * The calls still buffered when the service is unbound are sent to it in the background, so that the unbind does not wait for them.
+ *
+ * @see Batched
+ */
+public final class CallBatcher extends CallInterceptor {
+
+    private static final String TAG = "ServiceConnector";
+
+    /**
+     * Name of the metric counting the calls that were buffered
+     */
+    public static final String METRIC_BATCHED_CALLS = "batchedCalls";
+    /**
+     * Name of the metric counting the batches sent to the service
+     */
+    public static final String METRIC_BATCHES_SENT = "batchesSent";
+    /**
+     * Name of the metric counting the batches that failed to be sent
+     */
+    public static final String METRIC_FAILED_BATCHES = "failedBatches";
+    /**
+     * Name of the metric counting the calls dropped because the buffer was full or the service disconnected
+     */
+    public static final String METRIC_DROPPED_CALLS = "droppedCalls";
+    /**
+     * Name of the metric counting the calls rejected because the buffer was full
+     */
+    public static final String METRIC_REJECTED_CALLS = "rejectedCalls";
+
+    private final Map<Method, CallBuffer> callBuffers = new HashMap<>();
+
+    /**
+     * Creates the batcher for the methods of the given service interface,
+     * either annotated with {@link Batched} or registered in the given {@link MethodPolicies}.
+     *
+     * @return The batcher, or null if there are no such methods
+     * @throws IllegalArgumentException if a method is not void or takes no parameters, or its batch method is not found
+     */
+    public static CallBatcher create(Class<?> serviceClass, MethodPolicies methodPolicies) throws IllegalArgumentException {
+        CallBatcher callBatcher = new CallBatcher();
+        for (Method method : serviceClass.getMethods()) {
+            Batched batched = method.getAnnotation(Batched.class);
+            Policy policy = batched != null ? new Policy(batched.batchMethod(), batched.maxBatchSize(), batched.maxDelay(),
+                    batched.bufferSize(), batched.overflow(), batched.blockTimeout())
+                    : methodPolicies.get(serviceClass, method, Policy.class);
+            if (policy != null) {
+                if (method.getReturnType() != void.class) {
+                    throw new IllegalArgumentException(method.getName() + " should be void to be batched");
+                }
+                //a batch of calls without parameters would not tell how many calls it holds
+                if (method.getParameterTypes().length == 0) {
+                    throw new IllegalArgumentException(method.getName() + " should take parameters to be batched");
+                }
+                Method batchMethod = getBatchMethod(serviceClass, policy.batchMethod, method.getParameterTypes().length);
+                callBatcher.callBuffers.put(method, callBatcher.new CallBuffer(batchMethod, policy));
+            }
+        }
+        return callBatcher.callBuffers.isEmpty() ? null : callBatcher;
+    }
+
+    /**
+     * Finds the batch method of the given name, taking the given number of List parameters
+     */
+    private static Method getBatchMethod(Class<?> serviceClass, String batchMethodName, int parameterCount) {
+        for (Method method : serviceClass.getMethods()) {
+            if (method.getName().equals(batchMethodName) && method.getParameterTypes().length == parameterCount) {
+                boolean listParameters = true;
+                for (Class<?> parameterType : method.getParameterTypes()) {
+                    listParameters &= parameterType.isAssignableFrom(ArrayList.class);
+                }
+                if (listParameters) {
+                    return method;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Batch method " + batchMethodName + " taking " + parameterCount
+                + " List parameters not found in " + serviceClass.getName());
+    }
+
+    private CallBatcher() {
+    }
+
+    @Override
+    public Object intercept(ServiceCall call) throws Throwable {
+        CallBuffer callBuffer = callBuffers.get(call.getMethod());
+        if (callBuffer == null || call.getServiceProxy().getService() == null) {
+            return call.proceed();
+        }
+        callBuffer.add(call.getArguments());
+        return null;
+    }
+
+    @Override
+    protected void onServiceChanged(Object service) {
+        for (CallBuffer callBuffer : callBuffers.values()) {
+            if (service != null) {
+                //send the calls that got buffered while the service was disconnecting
+                callBuffer.scheduleFlush(0);
+            } else {
+                callBuffer.drop();
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        Object service = getServiceProxy().getService();
+        for (CallBuffer callBuffer : callBuffers.values()) {
+            callBuffer.flushInBackground(service);
+        }
+    }
+
+    /**
+     * Sends all the buffered calls now, blocking until they are sent
+     */
+    public void flush() {
+        for (CallBuffer callBuffer : callBuffers.values()) {
+            callBuffer.flush();
+        }
+    }
+
+    /**
+     * Batching policy of a method
+     */
+    public static final class Policy {
+
+        private final String batchMethod;
+        private final int maxBatchSize;
+        private final long maxDelay;
+        private final int bufferSize;
+        private final OverflowPolicy overflow;
+        private final long blockTimeout;
+
+        /**
+         * Initialize the policy
+         *
+         * @param batchMethod  Name of the service method that receives the batches
+         * @param maxBatchSize Maximum number of calls sent in one batch
+         * @param maxDelay     Maximum time in ms a call waits in the buffer before its batch is sent
+         * @param bufferSize   Maximum number of calls buffered
+         * @param overflow     What to do with a call when the buffer is full
+         * @param blockTimeout Maximum time in ms to wait for room in the buffer with {@link OverflowPolicy#BLOCK}
+         */
+        public Policy(String batchMethod, int maxBatchSize, long maxDelay, int bufferSize, OverflowPolicy overflow, long blockTimeout) {
+            if (maxBatchSize <= 0 || bufferSize <= 0) {
+                throw new IllegalArgumentException("maxBatchSize and bufferSize should be greater than 0");
+            }
+            this.batchMethod = batchMethod;
+            this.maxBatchSize = maxBatchSize;
+            this.maxDelay = maxDelay;
+            this.bufferSize = bufferSize;
+            this.overflow = overflow;
+            this.blockTimeout = blockTimeout;
+        }
+    }
+
+    /**
+     * Buffer of the calls to one method
+     */
+    private final class CallBuffer {
+
+        private final Method batchMethod;
+        private final Policy policy;
+        private final ArrayDeque<Object[]> calls = new ArrayDeque<>();
+        private final Object flushLock = new Object();
+        //the single flush waiting to run, if any
+        private ScheduledFuture<?> pendingFlush;
+        private final Runnable flushTask = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (CallBuffer.this) {
+                    pendingFlush = null;
+                }
+                flush();
+            }
+        };
+
+        CallBuffer(Method batchMethod, Policy policy) {
+            this.batchMethod = batchMethod;
+            this.policy = policy;
+        }
+
+        /**
+         * Buffers a call, applying the overflow policy if the buffer is full
+         */
+        synchronized void add(Object[] arguments) {
+            CallMetrics metrics = getServiceProxy().getMetrics();
+            if (calls.size() >= policy.bufferSize) {
+                switch (policy.overflow) {
+                    case DROP_OLDEST:
+                        calls.pollFirst();
+                        metrics.increment(METRIC_DROPPED_CALLS);
+                        break;
+                    case DROP_NEWEST:
+                        metrics.increment(METRIC_DROPPED_CALLS);
+                        return;
+                    case REJECT:
+                        metrics.increment(METRIC_REJECTED_CALLS);
+                        throw new RejectedExecutionException("Call buffer full for " + getServiceProxy().getServiceIntent());
+                    case BLOCK:
+                        waitForRoom();
+                        break;
+                }
+            }
+            calls.addLast(arguments != null ? arguments : new Object[0]);
+            metrics.increment(METRIC_BATCHED_CALLS);
+            scheduleFlush(calls.size() >= policy.maxBatchSize ? 0 : policy.maxDelay);
+        }
+
+        /**
+         * Waits for up to the block timeout for room in the buffer
+         */
+        private void waitForRoom() {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.blockTimeout);
+            try {
+                while (calls.size() >= policy.bufferSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (calls.size() >= policy.bufferSize) {
+                getServiceProxy().getMetrics().increment(METRIC_REJECTED_CALLS);
+                throw new RejectedExecutionException("Call buffer full for " + getServiceProxy().getServiceIntent());
+            }
+        }
+
+        /**
+         * Drops the buffered calls, as the service they were for is gone
+         */
+        synchronized void drop() {
+            if (!calls.isEmpty()) {
+                getServiceProxy().getMetrics().add(METRIC_DROPPED_CALLS, calls.size());
+                Log.w(TAG, "Dropped " + calls.size() + " buffered calls to " + batchMethod.getName() + " as the service disconnected");
+                calls.clear();
+                //wake up the callers waiting for room
+                notifyAll();
+            }
+        }
+
+        /**
+         * Schedules the buffered calls to be sent after the given delay,
+         * unless a flush is already pending to run by then
+         */
+        synchronized void scheduleFlush(long delay) {
+            if (pendingFlush != null) {
+                //one that could not be cancelled is starting, and sends the calls buffered till now
+                if (pendingFlush.getDelay(TimeUnit.MILLISECONDS) <= delay || !pendingFlush.cancel(false)) {
+                    return;
+                }
+            }
+            pendingFlush = ProxyScheduler.get().schedule(flushTask, delay, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Takes the buffered calls and sends them to the given service in the background,
+         * as the service is being unbound
+         */
+        void flushInBackground(final Object service) {
+            final ArrayDeque<Object[]> unsentCalls;
+            synchronized (this) {
+                if (pendingFlush != null) {
+                    pendingFlush.cancel(false);
+                    pendingFlush = null;
+                }
+                if (calls.isEmpty()) {
+                    return;
+                }
+                unsentCalls = new ArrayDeque<>(calls);
+                calls.clear();
+                //wake up the callers waiting for room
+                notifyAll();
+                if (service == null) {
+                    getServiceProxy().getMetrics().add(METRIC_DROPPED_CALLS, unsentCalls.size());
+                    return;
+                }
+            }
+            ProxyScheduler.get().execute(new Runnable() {
+                @Override
+                public void run() {
+                    //after a flush in progress, so that the calls stay in order
+                    synchronized (flushLock) {
+                        while (!unsentCalls.isEmpty()) {
+                            List<Object[]> batch = new ArrayList<>(Math.min(unsentCalls.size(), policy.maxBatchSize));
+                            while (batch.size() < policy.maxBatchSize && !unsentCalls.isEmpty()) {
+                                batch.add(unsentCalls.pollFirst());
+                            }
+                            send(service, batch);
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Sends the buffered calls in batches, keeping them if the service is not connected
+         */
+        void flush() {
+            synchronized (flushLock) {
+                while (getServiceProxy().getService() != null) {
+                    List<Object[]> batch;
+                    synchronized (this) {
+                        if (calls.isEmpty()) {
+                            return;
+                        }
+                        batch = new ArrayList<>(Math.min(calls.size(), policy.maxBatchSize));
+                        while (batch.size() < policy.maxBatchSize && !calls.isEmpty()) {
+                            batch.add(calls.pollFirst());
+                        }
+                        //wake up the callers waiting for room
+                        notifyAll();
+                    }
+                    send(getServiceProxy().getService(), batch);
+                }
+            }
+        }
+
+        /**
+         * Sends one batch of calls to the given service
+         */
+        private void send(Object service, List<Object[]> batch) {
+            Object[] batchArguments = new Object[batchMethod.getParameterTypes().length];
+            for (int i = 0; i < batchArguments.length; i++) {
+                List<Object> values = new ArrayList<>(batch.size());
+                for (Object[] arguments : batch) {
+                    values.add(arguments[i]);
+                }
+                batchArguments[i] = values;
+            }
+            try {
+                getServiceProxy().invokeService(service, batchMethod, batchArguments);
+                getServiceProxy().getMetrics().increment(METRIC_BATCHES_SENT);
+            } catch (Throwable ex) {
+                getServiceProxy().getMetrics().increment(METRIC_FAILED_BATCHES);
+                Log.w(TAG, "Failed to send batch of " + batch.size() + " calls to " + batchMethod.getName(), ex);
+            }
+        }
+    }
+}
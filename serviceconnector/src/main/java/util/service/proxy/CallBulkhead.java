@@ -0,0 +1,213 @@
+package util.service.proxy;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import util.service.annotation.CallPriority;
+
+/**
+ * A {@link CallInterceptor} that limits the number of calls made to a service at the same time, so that a saturated
+ * service holds up only the threads calling it, and only as many of them as it can serve.
+ * <p>
+ * Calls beyond the limit wait their turn, the ones of higher {@link CallPriority} first, and calls of the same priority
+ * in the order they were made. A call is rejected with a {@link RejectedExecutionException} if too many calls
+ * are already waiting, or if it waited for longer than the timeout of the policy.
+ *
+ * @see util.service.ServiceConnector#limitConcurrentCalls(String, Policy)
+ */
+public final class CallBulkhead extends CallInterceptor {
+
+    /**
+     * Name of the metric counting the calls that had to wait for their turn
+     */
+    public static final String METRIC_QUEUED_CALLS = "bulkheadQueuedCalls";
+    /**
+     * Name of the metric with the number of calls waiting for their turn
+     */
+    public static final String METRIC_QUEUE_DEPTH = "bulkheadQueueDepth";
+    /**
+     * Name of the metric with the most calls ever waiting for their turn at once
+     */
+    public static final String METRIC_MAX_QUEUE_DEPTH = "bulkheadMaxQueueDepth";
+    /**
+     * Name of the metric adding up the time in ms the calls waited for their turn
+     */
+    public static final String METRIC_QUEUE_WAIT_TIME = "bulkheadQueueWaitTime";
+    /**
+     * Name of the metric counting the calls rejected because too many were waiting, or they waited too long
+     */
+    public static final String METRIC_REJECTED_CALLS = "bulkheadRejectedCalls";
+
+    private final Policy policy;
+    private final Map<Method, Integer> methodPriorities = new ConcurrentHashMap<>();
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+    private int activeCalls;
+    private long sequence;
+
+    /**
+     * Creates the bulkhead for the given service interface, with the priorities of its methods either given by
+     * {@link CallPriority} or registered in the given {@link MethodPolicies}.
+     *
+     * @return The bulkhead, or null if no policy is given
+     */
+    public static CallBulkhead create(Class<?> serviceClass, MethodPolicies methodPolicies, Policy policy) {
+        if (policy == null) {
+            return null;
+        }
+        CallBulkhead callBulkhead = new CallBulkhead(policy);
+        for (Method method : serviceClass.getMethods()) {
+            CallPriority callPriority = method.getAnnotation(CallPriority.class);
+            Priority priority = callPriority != null ? new Priority(callPriority.value())
+                    : methodPolicies.get(serviceClass, method, Priority.class);
+            if (priority != null) {
+                callBulkhead.methodPriorities.put(method, priority.value);
+            }
+        }
+        return callBulkhead;
+    }
+
+    private CallBulkhead(Policy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public Object intercept(ServiceCall call) throws Throwable {
+        Integer priority = methodPriorities.get(call.getMethod());
+        acquire(priority != null ? priority : CallPriority.NORMAL);
+        try {
+            return call.proceed();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Takes a slot for a call of the given priority, waiting for one if all are taken
+     */
+    private synchronized void acquire(int priority) {
+        if (activeCalls < policy.maxConcurrentCalls && waiters.isEmpty()) {
+            activeCalls++;
+            return;
+        }
+        CallMetrics metrics = getServiceProxy().getMetrics();
+        if (waiters.size() >= policy.maxQueuedCalls) {
+            metrics.increment(METRIC_REJECTED_CALLS);
+            throw new RejectedExecutionException("Too many calls waiting for " + getServiceProxy().getServiceIntent());
+        }
+        Waiter waiter = new Waiter(priority, sequence++);
+        waiters.add(waiter);
+        metrics.increment(METRIC_QUEUED_CALLS);
+        metrics.add(METRIC_QUEUE_DEPTH, 1);
+        metrics.max(METRIC_MAX_QUEUE_DEPTH, waiters.size());
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(policy.timeout);
+        try {
+            while (!waiter.granted) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        metrics.add(METRIC_QUEUE_WAIT_TIME, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (!waiter.granted) {
+            waiters.remove(waiter);
+            metrics.add(METRIC_QUEUE_DEPTH, -1);
+            metrics.increment(METRIC_REJECTED_CALLS);
+            throw new RejectedExecutionException("Timed out waiting to call " + getServiceProxy().getServiceIntent());
+        }
+    }
+
+    /**
+     * Hands the slot of a finished call to the first waiting call, or frees it
+     */
+    private synchronized void release() {
+        Waiter waiter = waiters.poll();
+        if (waiter != null) {
+            waiter.granted = true;
+            getServiceProxy().getMetrics().add(METRIC_QUEUE_DEPTH, -1);
+            notifyAll();
+        } else {
+            activeCalls--;
+        }
+    }
+
+    /**
+     * A call waiting for its turn
+     */
+    private static final class Waiter implements Comparable<Waiter> {
+        final int priority;
+        final long sequence;
+        boolean granted;
+
+        Waiter(int priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Concurrency limits of a service
+     */
+    public static final class Policy {
+
+        private final int maxConcurrentCalls;
+        private final int maxQueuedCalls;
+        private final long timeout;
+
+        /**
+         * Initialize the policy
+         *
+         * @param maxConcurrentCalls Maximum number of calls made to the service at the same time
+         * @param maxQueuedCalls     Maximum number of calls waiting for their turn
+         * @param timeout            Maximum time in ms a call waits for its turn
+         */
+        public Policy(int maxConcurrentCalls, int maxQueuedCalls, long timeout) {
+            if (maxConcurrentCalls <= 0) {
+                throw new IllegalArgumentException("maxConcurrentCalls should be greater than 0");
+            }
+            if (maxQueuedCalls < 0) {
+                throw new IllegalArgumentException("maxQueuedCalls should not be negative");
+            }
+            if (timeout < 0) {
+                throw new IllegalArgumentException("timeout should not be negative");
+            }
+            this.maxConcurrentCalls = maxConcurrentCalls;
+            this.maxQueuedCalls = maxQueuedCalls;
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * Priority of the calls to a method
+     */
+    public static final class Priority {
+
+        private final int value;
+
+        /**
+         * Initialize the priority
+         *
+         * @param value Priority of the calls, higher goes first
+         * @see CallPriority
+         */
+        public Priority(int value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package util.service.proxy;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import util.service.annotation.SingleFlight;
+
+/**
+ * A {@link CallInterceptor} that collapses concurrent identical calls (same method and equal arguments)
+ * into a single call to the service, sharing its result with all the callers.
+ * <p>
+ * The number of calls that were answered without calling the service is counted in
+ * {@link CallMetrics} as {@link #METRIC_COLLAPSED_CALLS}.
+ *
+ * @see SingleFlight
+ */
+public final class CallCollapser extends CallInterceptor {
+
+    /**
+     * Name of the metric counting the calls that shared the result of another call
+     */
+    public static final String METRIC_COLLAPSED_CALLS = "collapsedCalls";
+
+    private final Set<Method> methods = Collections.newSetFromMap(new ConcurrentHashMap<Method, Boolean>());
+    private final ConcurrentHashMap<CallKey, InFlightCall> inFlightCalls = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the collapser for the methods of the given service interface,
+     * either annotated with {@link SingleFlight} or registered in the given {@link MethodPolicies}.
+     *
+     * @return The collapser, or null if there are no such methods
+     */
+    public static CallCollapser create(Class<?> serviceClass, MethodPolicies methodPolicies) {
+        Set<Method> methods = new HashSet<>();
+        for (Method method : serviceClass.getMethods()) {
+            if ((method.isAnnotationPresent(SingleFlight.class)
+                    || methodPolicies.get(serviceClass, method, Policy.class) != null)
+                    && method.getReturnType() != void.class) {
+                methods.add(method);
+            }
+        }
+        if (methods.isEmpty()) {
+            return null;
+        }
+        CallCollapser callCollapser = new CallCollapser();
+        callCollapser.methods.addAll(methods);
+        return callCollapser;
+    }
+
+    private CallCollapser() {
+    }
+
+    @Override
+    public Object intercept(ServiceCall call) throws Throwable {
+        if (!methods.contains(call.getMethod())) {
+            return call.proceed();
+        }
+        CallKey callKey = new CallKey(call.getMethod(), call.getArguments());
+        InFlightCall newCall = new InFlightCall();
+        InFlightCall inFlightCall = inFlightCalls.putIfAbsent(callKey, newCall);
+        if (inFlightCall != null) {
+            call.getServiceProxy().getMetrics().increment(METRIC_COLLAPSED_CALLS);
+            return inFlightCall.await();
+        }
+        try {
+            newCall.result = call.proceed();
+        } catch (Throwable ex) {
+            newCall.exception = ex;
+        } finally {
+            inFlightCalls.remove(callKey);
+            newCall.done.countDown();
+        }
+        return newCall.await();
+    }
+
+    /**
+     * Policy to register a method whose concurrent identical calls are collapsed
+     */
+    public static final class Policy {
+    }
+
+    /**
+     * A call in progress whose result is shared
+     */
+    private static final class InFlightCall {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Object result;
+        private volatile Throwable exception;
+
+        /**
+         * Waits for the call to complete, returning its result or throwing its exception
+         */
+        Object await() throws Throwable {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (exception != null) {
+                throw exception;
+            }
+            return result;
+        }
+    }
+}
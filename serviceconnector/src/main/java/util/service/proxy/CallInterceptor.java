@@ -0,0 +1,61 @@
+package util.service.proxy;
+
+import android.os.Looper;
+
+/**
+ * Intercepts the calls made on a {@link ServiceProxy}.
+ * <p>
+ * An interceptor either answers the call itself, or calls {@link ServiceCall#proceed()}
+ * to pass it on to the next interceptor, and eventually to the remote service.
+ *
+ * @see ServiceProxy
+ */
+public abstract class CallInterceptor {
+
+    private ServiceProxy serviceProxy;
+
+    /**
+     * Called for each call made on the proxy
+     *
+     * @param call The call being made
+     * @return The result of the call
+     */
+    public abstract Object intercept(ServiceCall call) throws Throwable;
+
+    /**
+     * Called when the service object wrapped by the proxy changes, either because
+     * the service got connected to a new binder, or got disconnected.
+     *
+     * @param service The new service object, or null if disconnected
+     */
+    protected void onServiceChanged(Object service) {
+    }
+
+    /**
+     * Called when the service is being unbound, while the service object is still available
+     */
+    protected void onDestroy() {
+    }
+
+    /**
+     * Returns whether the caller is on the main thread, which must not wait for the service
+     * as the service connects and disconnects on it
+     */
+    protected static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * Returns the {@link ServiceProxy} this interceptor belongs to
+     */
+    protected final ServiceProxy getServiceProxy() {
+        return serviceProxy;
+    }
+
+    /**
+     * Sets the {@link ServiceProxy} this interceptor belongs to
+     */
+    final void setServiceProxy(ServiceProxy serviceProxy) {
+        this.serviceProxy = serviceProxy;
+    }
+}
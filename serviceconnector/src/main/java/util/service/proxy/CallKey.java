@@ -0,0 +1,40 @@
+package util.service.proxy;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Identifies a call by its method and arguments, comparing arguments by value
+ */
+final class CallKey {
+
+    private final Method method;
+    private final Object[] arguments;
+    private final int hashCode;
+
+    /**
+     * Initialize the key for the given call
+     */
+    CallKey(Method method, Object[] arguments) {
+        this.method = method;
+        this.arguments = arguments != null ? arguments.clone() : new Object[0];
+        this.hashCode = 31 * method.hashCode() + Arrays.deepHashCode(this.arguments);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof CallKey)) {
+            return false;
+        }
+        CallKey otherKey = (CallKey) other;
+        return method.equals(otherKey.method) && Arrays.deepEquals(arguments, otherKey.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
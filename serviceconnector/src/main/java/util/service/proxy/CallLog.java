@@ -0,0 +1,522 @@
+package util.service.proxy;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A compact binary log of the calls made to a service, written by a {@link CallRecorder}
+ * and read back to replay the calls.
+ * <p>
+ * The log starts with the name of the service interface, followed by one record per call with when it was made,
+ * how long it took, the method and its arguments. The records are in the order the calls completed, not the order
+ * they were made. Arguments are kept if they are null, primitives, strings,
+ * byte arrays, {@link Parcelable}s without binders or file descriptors, or {@link Serializable}s.
+ * The calls with other arguments are logged as not replayable.
+ */
+public final class CallLog {
+
+    private static final String TAG = "ServiceConnector";
+    private static final int MAGIC = 0x5343524C;
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_BYTE = 2;
+    private static final byte TYPE_CHAR = 3;
+    private static final byte TYPE_SHORT = 4;
+    private static final byte TYPE_INT = 5;
+    private static final byte TYPE_LONG = 6;
+    private static final byte TYPE_FLOAT = 7;
+    private static final byte TYPE_DOUBLE = 8;
+    private static final byte TYPE_STRING = 9;
+    private static final byte TYPE_BYTES = 10;
+    private static final byte TYPE_PARCELABLE = 11;
+    private static final byte TYPE_SERIALIZABLE = 12;
+
+    private CallLog() {
+    }
+
+    /**
+     * Encodes the given arguments of a call
+     *
+     * @return The encoded arguments, or null if one of them cannot be logged
+     */
+    static byte[] encodeArguments(Object[] arguments) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            int count = arguments != null ? arguments.length : 0;
+            output.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                if (!writeArgument(output, arguments[i])) {
+                    return null;
+                }
+            }
+            output.flush();
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the given argument with its type
+     *
+     * @return False if the argument cannot be logged
+     */
+    private static boolean writeArgument(DataOutputStream output, Object argument) throws IOException {
+        if (argument == null) {
+            output.writeByte(TYPE_NULL);
+        } else if (argument instanceof Boolean) {
+            output.writeByte(TYPE_BOOLEAN);
+            output.writeBoolean((Boolean) argument);
+        } else if (argument instanceof Byte) {
+            output.writeByte(TYPE_BYTE);
+            output.writeByte((Byte) argument);
+        } else if (argument instanceof Character) {
+            output.writeByte(TYPE_CHAR);
+            output.writeChar((Character) argument);
+        } else if (argument instanceof Short) {
+            output.writeByte(TYPE_SHORT);
+            output.writeShort((Short) argument);
+        } else if (argument instanceof Integer) {
+            output.writeByte(TYPE_INT);
+            output.writeInt((Integer) argument);
+        } else if (argument instanceof Long) {
+            output.writeByte(TYPE_LONG);
+            output.writeLong((Long) argument);
+        } else if (argument instanceof Float) {
+            output.writeByte(TYPE_FLOAT);
+            output.writeFloat((Float) argument);
+        } else if (argument instanceof Double) {
+            output.writeByte(TYPE_DOUBLE);
+            output.writeDouble((Double) argument);
+        } else if (argument instanceof String) {
+            output.writeByte(TYPE_STRING);
+            writeBytes(output, ((String) argument).getBytes(UTF_8));
+        } else if (argument instanceof byte[]) {
+            output.writeByte(TYPE_BYTES);
+            writeBytes(output, (byte[]) argument);
+        } else if (argument instanceof Parcelable) {
+            Parcel parcel = Parcel.obtain();
+            try {
+                parcel.writeParcelable((Parcelable) argument, 0);
+                //fails if the parcelable holds binders or file descriptors
+                byte[] marshalled = parcel.marshall();
+                output.writeByte(TYPE_PARCELABLE);
+                writeBytes(output, marshalled);
+            } finally {
+                parcel.recycle();
+            }
+        } else if (argument instanceof Serializable) {
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            ObjectOutputStream objectOutput = new ObjectOutputStream(serialized);
+            objectOutput.writeObject(argument);
+            objectOutput.close();
+            output.writeByte(TYPE_SERIALIZABLE);
+            writeBytes(output, serialized.toByteArray());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the arguments encoded by {@link #encodeArguments(Object[])}
+     */
+    private static Object[] decodeArguments(byte[] encoded, ClassLoader classLoader) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(encoded));
+        Object[] arguments = new Object[input.readInt()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = readArgument(input, classLoader);
+        }
+        return arguments;
+    }
+
+    private static Object readArgument(DataInputStream input, ClassLoader classLoader) throws IOException {
+        byte type = input.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_BOOLEAN:
+                return input.readBoolean();
+            case TYPE_BYTE:
+                return input.readByte();
+            case TYPE_CHAR:
+                return input.readChar();
+            case TYPE_SHORT:
+                return input.readShort();
+            case TYPE_INT:
+                return input.readInt();
+            case TYPE_LONG:
+                return input.readLong();
+            case TYPE_FLOAT:
+                return input.readFloat();
+            case TYPE_DOUBLE:
+                return input.readDouble();
+            case TYPE_STRING:
+                return new String(readBytes(input), UTF_8);
+            case TYPE_BYTES:
+                return readBytes(input);
+            case TYPE_PARCELABLE:
+                byte[] marshalled = readBytes(input);
+                Parcel parcel = Parcel.obtain();
+                try {
+                    parcel.unmarshall(marshalled, 0, marshalled.length);
+                    parcel.setDataPosition(0);
+                    return parcel.readParcelable(classLoader);
+                } finally {
+                    parcel.recycle();
+                }
+            case TYPE_SERIALIZABLE:
+                ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(readBytes(input)));
+                try {
+                    return objectInput.readObject();
+                } catch (ClassNotFoundException ex) {
+                    throw new IOException("Unknown argument class " + ex.getMessage());
+                } finally {
+                    objectInput.close();
+                }
+            default:
+                throw new IOException("Unknown argument type " + type);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the names of the parameter types of the given method, identifying it among its overloads
+     */
+    private static String[] getParameterTypeNames(Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        String[] names = new String[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            names[i] = parameterTypes[i].getName();
+        }
+        return names;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * A call read from the log
+     */
+    public static final class Record {
+
+        private final long time;
+        private final long duration;
+        private final String methodName;
+        private final String[] parameterTypeNames;
+        private final byte[] arguments;
+
+        Record(long time, long duration, String methodName, String[] parameterTypeNames, byte[] arguments) {
+            this.time = time;
+            this.duration = duration;
+            this.methodName = methodName;
+            this.parameterTypeNames = parameterTypeNames;
+            this.arguments = arguments;
+        }
+
+        /**
+         * Returns when the call was made, in us since the recording started
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns how long the call took when recorded, in us
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * Returns the name of the method called
+         */
+        public String getMethodName() {
+            return methodName;
+        }
+
+        /**
+         * Returns whether the arguments of the call were logged, so that it can be replayed
+         */
+        public boolean isReplayable() {
+            return arguments != null;
+        }
+
+        /**
+         * Returns the method called, in the given service interface
+         *
+         * @throws NoSuchMethodException If the interface has no such method
+         */
+        public Method getMethod(Class<?> serviceClass) throws NoSuchMethodException {
+            for (Method method : serviceClass.getMethods()) {
+                if (method.getName().equals(methodName)
+                        && Arrays.equals(getParameterTypeNames(method), parameterTypeNames)) {
+                    return method;
+                }
+            }
+            throw new NoSuchMethodException(methodName + " not found in " + serviceClass.getName());
+        }
+
+        /**
+         * Returns the arguments of the call, loading their classes with the given class loader
+         *
+         * @throws IOException If the call is not replayable, or an argument cannot be read back
+         */
+        public Object[] getArguments(ClassLoader classLoader) throws IOException {
+            if (arguments == null) {
+                throw new IOException("Arguments of " + methodName + " were not logged");
+            }
+            return decodeArguments(arguments, classLoader);
+        }
+    }
+
+    /**
+     * Writes the calls to a log file, in the background so that the calls are not slowed down.
+     * <p>
+     * The file is created on the io thread, replacing any existing one, and starts with the service interface
+     * of the first call. The calls waiting to be written are bounded, and the calls beyond are dropped.
+     */
+    static final class Writer {
+
+        //calls waiting to be written, beyond which the calls are dropped
+        private static final int MAX_PENDING_RECORDS = 1024;
+        private final File file;
+        private final ThreadPoolExecutor ioExecutor;
+        private DataOutputStream output;
+        private boolean failed;
+
+        /**
+         * Initialize the writer of the given log file, opened on the first call
+         */
+        Writer(File file) {
+            this.file = file;
+            //unbounded, so that a flush or close always gets in, the calls being bounded by write
+            ioExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ServiceConnector-recorder");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        /**
+         * Logs a call
+         *
+         * @param serviceClass The service interface called
+         * @param time         When the call was made, in us since the recording started
+         * @param duration     How long the call took, in us
+         * @param method       The method called
+         * @param arguments    The arguments encoded by {@link CallLog#encodeArguments(Object[])}, null if not logged
+         * @return False if the call is dropped, because too many calls are waiting to be written or the log is closed
+         */
+        boolean write(final Class<?> serviceClass, final long time, final long duration, final Method method, final byte[] arguments) {
+            if (ioExecutor.getQueue().size() >= MAX_PENDING_RECORDS) {
+                return false;
+            }
+            try {
+                ioExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        writeRecord(serviceClass, time, duration, method, arguments);
+                    }
+                });
+                return true;
+            } catch (RejectedExecutionException ex) {
+                //a call that was still on its way when the log got closed
+                return false;
+            }
+        }
+
+        /**
+         * Returns whether the log is closed, and takes no more calls
+         */
+        boolean isClosed() {
+            return ioExecutor.isShutdown();
+        }
+
+        /**
+         * Creates the file, starting with the given service interface. Called on the io thread.
+         */
+        private void open(Class<?> serviceClass) throws IOException {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(serviceClass.getName());
+        }
+
+        /**
+         * Writes a call to the file. Called on the io thread.
+         */
+        private void writeRecord(Class<?> serviceClass, long time, long duration, Method method, byte[] arguments) {
+            if (failed) {
+                return;
+            }
+            try {
+                if (output == null) {
+                    open(serviceClass);
+                }
+                output.writeLong(time);
+                output.writeLong(duration);
+                output.writeUTF(method.getName());
+                String[] parameterTypeNames = getParameterTypeNames(method);
+                output.writeInt(parameterTypeNames.length);
+                for (String parameterTypeName : parameterTypeNames) {
+                    output.writeUTF(parameterTypeName);
+                }
+                output.writeBoolean(arguments != null);
+                if (arguments != null) {
+                    writeBytes(output, arguments);
+                }
+            } catch (IOException ex) {
+                failed = true;
+                Log.w(TAG, "Unable to record the calls to " + file, ex);
+            }
+        }
+
+        /**
+         * Writes out the calls logged so far, keeping the file open for the next ones
+         */
+        void flush() {
+            try {
+                ioExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (output != null && !failed) {
+                            try {
+                                output.flush();
+                            } catch (IOException ex) {
+                                failed = true;
+                                Log.w(TAG, "Unable to record the calls to " + file, ex);
+                            }
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ignored) {
+                //already closed
+            }
+        }
+
+        /**
+         * Writes out the calls logged so far and closes the file
+         */
+        void close() {
+            try {
+                ioExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        CallLog.close(output);
+                    }
+                });
+                ioExecutor.shutdown();
+            } catch (RejectedExecutionException ignored) {
+                //already closed
+            }
+        }
+    }
+
+    /**
+     * Reads the calls from a log file
+     */
+    public static final class Reader implements Closeable {
+
+        private final DataInputStream input;
+        private final String serviceClassName;
+
+        /**
+         * Opens the given log file
+         *
+         * @throws IOException If the file cannot be read or is not a call log
+         */
+        public Reader(File file) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    throw new IOException(file + " is not a call log");
+                }
+                serviceClassName = input.readUTF();
+            } catch (IOException ex) {
+                CallLog.close(input);
+                throw ex;
+            }
+        }
+
+        /**
+         * Returns the name of the service interface whose calls are logged
+         */
+        public String getServiceClassName() {
+            return serviceClassName;
+        }
+
+        /**
+         * Returns the next call, or null at the end of the log
+         */
+        public Record next() throws IOException {
+            long time;
+            try {
+                time = input.readLong();
+            } catch (EOFException ex) {
+                return null;
+            }
+            long duration = input.readLong();
+            String methodName = input.readUTF();
+            String[] parameterTypeNames = new String[input.readInt()];
+            for (int i = 0; i < parameterTypeNames.length; i++) {
+                parameterTypeNames[i] = input.readUTF();
+            }
+            byte[] arguments = input.readBoolean() ? readBytes(input) : null;
+            return new Record(time, duration, methodName, parameterTypeNames, arguments);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
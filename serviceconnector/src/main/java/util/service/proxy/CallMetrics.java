@@ -0,0 +1,67 @@
+package util.service.proxy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named counters kept by the {@link CallInterceptor}s of a {@link ServiceProxy}
+ */
+public final class CallMetrics {
+
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Adds one to the counter of the given name
+     */
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Adds the given value to the counter of the given name
+     */
+    public void add(String name, long value) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = counters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.addAndGet(value);
+    }
+
+    /**
+     * Sets the counter of the given name to the given value if it is greater than its current value
+     */
+    public void max(String name, long value) {
+        add(name, 0);
+        AtomicLong counter = counters.get(name);
+        long current = counter.get();
+        while (value > current && !counter.compareAndSet(current, value)) {
+            current = counter.get();
+        }
+    }
+
+    /**
+     * Returns the value of the counter of the given name
+     */
+    public long get(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter != null ? counter.get() : 0;
+    }
+
+    /**
+     * Returns a copy of all the counters
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().get());
+        }
+        return snapshot;
+    }
+}
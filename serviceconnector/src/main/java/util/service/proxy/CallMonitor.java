@@ -0,0 +1,89 @@
+package util.service.proxy;
+
+import android.os.Looper;
+
+/**
+ * A {@link CallInterceptor} that reports the calls made to a service on the main thread, where they cause jank,
+ * and the calls slower than a threshold, to a {@link CallReportLog}.
+ * <p>
+ * The calls are timed as they reach the service, leaving out the time they waited for the other interceptors.
+ * Calls answered without the service, like cached, batched, queued or shed calls, are not reported,
+ * and a call sent later, like a queued call, is reported on the thread it is sent from.
+ * <p>
+ * To keep the cost low in production, only a sample of the calls can be monitored, and the stack traces
+ * telling where the calls came from are captured only if asked for.
+ *
+ * @see util.service.ServiceConnector#monitorCalls(Policy)
+ */
+public final class CallMonitor extends CallInterceptor {
+
+    private final Policy policy;
+    private final CallReportLog reportLog;
+
+    /**
+     * Creates the monitor for a service
+     *
+     * @return The monitor, or null if no policy is given
+     */
+    public static CallMonitor create(Policy policy, CallReportLog reportLog) {
+        return policy != null ? new CallMonitor(policy, reportLog) : null;
+    }
+
+    private CallMonitor(Policy policy, CallReportLog reportLog) {
+        this.policy = policy;
+        this.reportLog = reportLog;
+    }
+
+    @Override
+    public Object intercept(ServiceCall call) throws Throwable {
+        if (policy.sampleRate < 1 && Math.random() >= policy.sampleRate) {
+            return call.proceed();
+        }
+        long start = System.nanoTime();
+        try {
+            return call.proceed();
+        } finally {
+            long duration = (System.nanoTime() - start) / 1000000;
+            boolean mainThread = Looper.myLooper() == Looper.getMainLooper();
+            if ((mainThread && policy.detectMainThread) || duration >= policy.slowCallThreshold) {
+                ServiceProxy serviceProxy = call.getServiceProxy();
+                //still on the stack of the caller
+                StackTraceElement[] stackTrace = policy.captureStackTraces ? new Throwable().getStackTrace() : null;
+                reportLog.add(new CallReport(serviceProxy.getServiceIntent(), serviceProxy.getServiceClass().getName(),
+                        call.getMethod().getName(), duration, System.currentTimeMillis() - duration, mainThread, stackTrace));
+            }
+        }
+    }
+
+    /**
+     * What calls to report
+     */
+    public static final class Policy {
+
+        private final boolean detectMainThread;
+        private final long slowCallThreshold;
+        private final double sampleRate;
+        private final boolean captureStackTraces;
+
+        /**
+         * Initialize the policy
+         *
+         * @param detectMainThread   Whether to report all the calls made on the main thread
+         * @param slowCallThreshold  Duration in ms from which a call is reported, on any thread
+         * @param sampleRate         Fraction of the calls monitored, from 0 to 1
+         * @param captureStackTraces Whether to capture where the reported calls came from
+         */
+        public Policy(boolean detectMainThread, long slowCallThreshold, double sampleRate, boolean captureStackTraces) {
+            if (slowCallThreshold < 0) {
+                throw new IllegalArgumentException("slowCallThreshold should not be negative");
+            }
+            if (!(sampleRate >= 0 && sampleRate <= 1)) {
+                throw new IllegalArgumentException("sampleRate should be between 0 and 1");
+            }
+            this.detectMainThread = detectMainThread;
+            this.slowCallThreshold = slowCallThreshold;
+            this.sampleRate = sampleRate;
+            this.captureStackTraces = captureStackTraces;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package util.service.proxy;
+
+import android.os.DeadObjectException;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import util.service.annotation.OverflowPolicy;
+
+/**
+ * A {@link CallInterceptor} that holds the calls to the void methods of a service while it is disconnected,
+ * and sends them in order as soon as it reconnects.
+ * <p>
+ * A call is queued if the service is disconnected, if it fails with a {@link DeadObjectException},
+ * or if older calls are still queued, so that the calls reach the service in the order they were made.
+ * The queue is bounded, and the {@link OverflowPolicy} of the queue decides what happens to a call
+ * when it is full. A call on the main thread does not wait for room with {@link OverflowPolicy#BLOCK},
+ * as the service reconnects on the main thread, and is rejected right away.
+ * <p>
+ * Unbinding does not wait for the queued calls. A drain already running goes on while the service is there,
+ * and the calls left are dropped.
+ *
+ * @see util.service.ServiceConnector#queueCalls(String, Policy)
+ */
+public final class CallQueue extends CallInterceptor {
+
+    private static final String TAG = "ServiceConnector";
+
+    /**
+     * Name of the metric counting the calls queued while the service was disconnected
+     */
+    public static final String METRIC_QUEUED_CALLS = "queuedCalls";
+    /**
+     * Name of the metric counting the queued calls dropped because the queue was full or the service got unbound
+     */
+    public static final String METRIC_DROPPED_QUEUED_CALLS = "droppedQueuedCalls";
+    /**
+     * Name of the metric counting the calls rejected because the queue was full
+     */
+    public static final String METRIC_REJECTED_QUEUED_CALLS = "rejectedQueuedCalls";
+    /**
+     * Name of the metric counting the queued calls that failed when sent
+     */
+    public static final String METRIC_FAILED_QUEUED_CALLS = "failedQueuedCalls";
+
+    private final Policy policy;
+    private final ArrayDeque<ServiceCall> calls = new ArrayDeque<>();
+    private final Object drainLock = new Object();
+    //set while the queued calls are being sent, so that new calls wait their turn
+    private boolean draining;
+    private volatile boolean destroyed;
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Creates the queue for the void methods of the given service interface
+     *
+     * @return The queue, or null if no policy is given or the interface has no void methods
+     */
+    public static CallQueue create(Class<?> serviceClass, Policy policy) {
+        if (policy != null) {
+            for (Method method : serviceClass.getMethods()) {
+                if (method.getReturnType() == void.class) {
+                    return new CallQueue(policy);
+                }
+            }
+        }
+        return null;
+    }
+
+    private CallQueue(Policy policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public Object intercept(ServiceCall call) throws Throwable {
+        if (call.getMethod().getReturnType() != void.class) {
+            return call.proceed();
+        }
+        ServiceProxy serviceProxy = call.getServiceProxy();
+        synchronized (this) {
+            if (!destroyed && (draining || !calls.isEmpty() || serviceProxy.getService() == null)) {
+                add(call);
+                return null;
+            }
+        }
+        try {
+            return call.proceed();
+        } catch (Throwable ex) {
+            if (destroyed || (!(ex instanceof DeadObjectException) && serviceProxy.getService() != null)) {
+                throw ex;
+            }
+            synchronized (this) {
+                add(call);
+            }
+            return null;
+        }
+    }
+
+    @Override
+    protected void onServiceChanged(Object service) {
+        if (service != null) {
+            ProxyScheduler.get().execute(drainTask);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        synchronized (this) {
+            destroyed = true;
+            //a running drain drops what it leaves
+            if (!draining) {
+                dropCalls();
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Drops the queued calls of a destroyed queue. Called holding this.
+     */
+    private void dropCalls() {
+        if (!calls.isEmpty()) {
+            getServiceProxy().getMetrics().add(METRIC_DROPPED_QUEUED_CALLS, calls.size());
+            calls.clear();
+        }
+    }
+
+    /**
+     * Queues a call, applying the overflow policy if the queue is full. Called holding this.
+     */
+    private void add(ServiceCall call) {
+        CallMetrics metrics = getServiceProxy().getMetrics();
+        if (calls.size() >= policy.queueSize) {
+            switch (policy.overflow) {
+                case DROP_OLDEST:
+                    calls.pollFirst();
+                    metrics.increment(METRIC_DROPPED_QUEUED_CALLS);
+                    break;
+                case DROP_NEWEST:
+                    metrics.increment(METRIC_DROPPED_QUEUED_CALLS);
+                    return;
+                case REJECT:
+                    metrics.increment(METRIC_REJECTED_QUEUED_CALLS);
+                    throw new RejectedExecutionException("Call queue full for " + getServiceProxy().getServiceIntent());
+                case BLOCK:
+                    waitForRoom();
+                    break;
+            }
+        }
+        calls.addLast(call);
+        metrics.increment(METRIC_QUEUED_CALLS);
+        if (!draining && getServiceProxy().getService() != null) {
+            //connected meanwhile, or failed on a service about to be disconnected
+            ProxyScheduler.get().execute(drainTask);
+        }
+    }
+
+    /**
+     * Waits for up to the block timeout for room in the queue, not waiting on the main thread. Called holding this.
+     */
+    private void waitForRoom() {
+        long blockTimeout = isMainThread() ? 0 : policy.blockTimeout;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+        try {
+            while (calls.size() >= policy.queueSize && !destroyed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (calls.size() >= policy.queueSize || destroyed) {
+            getServiceProxy().getMetrics().increment(METRIC_REJECTED_QUEUED_CALLS);
+            throw new RejectedExecutionException("Call queue full for " + getServiceProxy().getServiceIntent());
+        }
+    }
+
+    /**
+     * Sends the queued calls in order while the service is connected.
+     * A call that finds the service dead is put back to be sent on the next connection.
+     */
+    private void drain() {
+        synchronized (drainLock) {
+            while (true) {
+                ServiceCall call;
+                synchronized (this) {
+                    if (calls.isEmpty() || getServiceProxy().getService() == null) {
+                        draining = false;
+                        if (destroyed) {
+                            dropCalls();
+                        }
+                        return;
+                    }
+                    draining = true;
+                    call = calls.pollFirst();
+                    //wake up the callers waiting for room
+                    notifyAll();
+                }
+                try {
+                    call.proceed();
+                } catch (Throwable ex) {
+                    if (ex instanceof DeadObjectException || getServiceProxy().getService() == null) {
+                        synchronized (this) {
+                            calls.addFirst(call);
+                            draining = false;
+                            if (destroyed) {
+                                dropCalls();
+                            }
+                        }
+                        return;
+                    }
+                    getServiceProxy().getMetrics().increment(METRIC_FAILED_QUEUED_CALLS);
+                    Log.w(TAG, "Failed to send queued call to " + call.getMethod().getName(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queueing policy of a service
+     */
+    public static final class Policy {
+
+        private final int queueSize;
+        private final OverflowPolicy overflow;
+        private final long blockTimeout;
+
+        /**
+         * Initialize the policy
+         *
+         * @param queueSize    Maximum number of calls queued
+         * @param overflow     What to do with a call when the queue is full
+         * @param blockTimeout Maximum time in ms to wait for room in the queue with {@link OverflowPolicy#BLOCK}
+         */
+        public Policy(int queueSize, OverflowPolicy overflow, long blockTimeout) {
+            if (queueSize <= 0) {
+                throw new IllegalArgumentException("queueSize should be greater than 0");
+            }
+            this.queueSize = queueSize;
+            this.overflow = overflow;
+            this.blockTimeout = blockTimeout;
+        }
+    }
+}
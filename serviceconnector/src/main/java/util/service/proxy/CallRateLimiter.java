@@ -0,0 +1,201 @@
+package util.service.proxy;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import util.service.annotation.RateLimited;
+import util.service.annotation.ThrottlePolicy;
+
+/**
+ * A {@link CallInterceptor} that limits the rate of the calls made to a service, and to its methods,
+ * with token buckets that allow short bursts.
+ * <p>
+ * A call made when a limit is used up is delayed, rejected with a {@link RejectedExecutionException}, or shed
+ * as per the {@link ThrottlePolicy} of the limit. A call limited both by its method and its service
+ * takes from the bucket of its method first.
+ * <p>
+ * The calls that hit a limit are counted in {@link CallMetrics} as {@link #METRIC_THROTTLED_CALLS},
+ * and the ones rejected or shed among them as {@link #METRIC_REJECTED_THROTTLED_CALLS} and {@link #METRIC_SHED_CALLS}.
+ *
+ * @see RateLimited
+ * @see util.service.ServiceConnector#limitCallRate(String, Policy)
+ */
+public final class CallRateLimiter extends CallInterceptor {
+
+    /**
+     * Name of the metric counting the calls that hit a rate limit
+     */
+    public static final String METRIC_THROTTLED_CALLS = "throttledCalls";
+    /**
+     * Name of the metric counting the calls rejected by a rate limit
+     */
+    public static final String METRIC_REJECTED_THROTTLED_CALLS = "rejectedThrottledCalls";
+    /**
+     * Name of the metric counting the calls shed by a rate limit
+     */
+    public static final String METRIC_SHED_CALLS = "shedCalls";
+
+    private final TokenBucket serviceBucket;
+    private final Map<Method, TokenBucket> methodBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the rate limiter of the given service interface, limiting the service with the given policy,
+     * and its methods either annotated with {@link RateLimited} or registered in the given {@link MethodPolicies}.
+     *
+     * @return The rate limiter, or null if neither the service nor its methods are limited
+     */
+    public static CallRateLimiter create(Class<?> serviceClass, MethodPolicies methodPolicies, Policy servicePolicy) {
+        CallRateLimiter callRateLimiter = new CallRateLimiter(servicePolicy != null ? new TokenBucket(servicePolicy) : null);
+        for (Method method : serviceClass.getMethods()) {
+            RateLimited rateLimited = method.getAnnotation(RateLimited.class);
+            Policy policy = rateLimited != null
+                    ? new Policy(rateLimited.callsPerSecond(), rateLimited.burst(), rateLimited.throttle(), rateLimited.timeout())
+                    : methodPolicies.get(serviceClass, method, Policy.class);
+            if (policy != null) {
+                callRateLimiter.methodBuckets.put(method, new TokenBucket(policy));
+            }
+        }
+        return servicePolicy == null && callRateLimiter.methodBuckets.isEmpty() ? null : callRateLimiter;
+    }
+
+    private CallRateLimiter(TokenBucket serviceBucket) {
+        this.serviceBucket = serviceBucket;
+    }
+
+    @Override
+    public Object intercept(ServiceCall call) throws Throwable {
+        TokenBucket methodBucket = methodBuckets.get(call.getMethod());
+        if ((methodBucket != null && !take(methodBucket)) || (serviceBucket != null && !take(serviceBucket))) {
+            return getDefaultValue(call.getMethod().getReturnType());
+        }
+        return call.proceed();
+    }
+
+    /**
+     * Takes a call from the given bucket, applying its throttle policy if it is empty
+     *
+     * @return Whether to make the call, false to shed it
+     */
+    private boolean take(TokenBucket bucket) {
+        long wait = bucket.tryTake();
+        if (wait == 0) {
+            return true;
+        }
+        CallMetrics metrics = getServiceProxy().getMetrics();
+        metrics.increment(METRIC_THROTTLED_CALLS);
+        switch (bucket.policy.throttle) {
+            case SHED:
+                metrics.increment(METRIC_SHED_CALLS);
+                return false;
+            case BLOCK:
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(bucket.policy.timeout);
+                try {
+                    while (wait > 0 && System.nanoTime() + wait <= deadline) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                        wait = bucket.tryTake();
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                if (wait == 0) {
+                    return true;
+                }
+                break;
+        }
+        metrics.increment(METRIC_REJECTED_THROTTLED_CALLS);
+        throw new RejectedExecutionException("Rate limit exceeded for " + getServiceProxy().getServiceIntent());
+    }
+
+    /**
+     * Returns the value a shed call of the given return type returns
+     */
+    private static Object getDefaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == char.class) {
+            return (char) 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == double.class) {
+            return 0d;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    /**
+     * Calls allowed by a limit, refilled continuously up to its burst
+     */
+    private static final class TokenBucket {
+        final Policy policy;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(Policy policy) {
+            this.policy = policy;
+            tokens = policy.burst;
+            lastRefill = System.nanoTime();
+        }
+
+        /**
+         * Takes a call if one is available
+         *
+         * @return 0 if taken, else the time in ns till one is available
+         */
+        synchronized long tryTake() {
+            long now = System.nanoTime();
+            tokens = Math.min(policy.burst, tokens + (now - lastRefill) * policy.callsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / policy.callsPerSecond));
+        }
+    }
+
+    /**
+     * Rate limit of a service or a method
+     */
+    public static final class Policy {
+
+        private final double callsPerSecond;
+        private final int burst;
+        private final ThrottlePolicy throttle;
+        private final long timeout;
+
+        /**
+         * Initialize the policy
+         *
+         * @param callsPerSecond Number of calls allowed per second, on average
+         * @param burst          Number of calls allowed at once after a quiet period
+         * @param throttle       What to do with a call when the limit is used up
+         * @param timeout        Maximum time in ms to delay a call with {@link ThrottlePolicy#BLOCK}
+         */
+        public Policy(double callsPerSecond, int burst, ThrottlePolicy throttle, long timeout) {
+            if (!(callsPerSecond > 0)) {
+                throw new IllegalArgumentException("callsPerSecond should be greater than 0");
+            }
+            if (burst <= 0) {
+                throw new IllegalArgumentException("burst should be greater than 0");
+            }
+            if (timeout < 0) {
+                throw new IllegalArgumentException("timeout should not be negative");
+            }
+            this.callsPerSecond = callsPerSecond;
+            this.burst = burst;
+            this.throttle = throttle;
+            this.timeout = timeout;
+        }
+    }
+}
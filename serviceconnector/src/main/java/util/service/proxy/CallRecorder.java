@@ -0,0 +1,107 @@
+package util.service.proxy;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link CallInterceptor} that records the calls that reach a service to a {@link CallLog} file,
+ * with when they were made and how long they took, so that they can be replayed to load test the service.
+ * <p>
+ * The arguments are encoded on the calling thread, and written out in the background.
+ * A {@link Recording} keeps its file open across the successive connections to the service, and the file
+ * is written out each time the service is unbound.
+ * <p>
+ * The calls are logged as they complete, each with when it was made, so the log is in the order the calls completed.
+ * The calls recorded are counted in {@link CallMetrics} as {@link #METRIC_RECORDED_CALLS},
+ * and the ones dropped because the file is written out too slowly as {@link #METRIC_DROPPED_RECORDS}.
+ * Once the recording is closed, the calls go through unrecorded and uncounted.
+ *
+ * @see util.service.ServiceConnector#recordCalls(String, File)
+ */
+public final class CallRecorder extends CallInterceptor {
+
+    /**
+     * Name of the metric counting the calls recorded
+     */
+    public static final String METRIC_RECORDED_CALLS = "recordedCalls";
+
+    /**
+     * Name of the metric counting the calls not recorded because too many were waiting to be written
+     */
+    public static final String METRIC_DROPPED_RECORDS = "droppedRecords";
+
+    private final Class<?> serviceClass;
+    private final Recording recording;
+
+    /**
+     * Creates the recorder of the calls to the given service interface
+     *
+     * @return The recorder, or null if no recording is given
+     */
+    public static CallRecorder create(Class<?> serviceClass, Recording recording) {
+        return recording != null ? new CallRecorder(serviceClass, recording) : null;
+    }
+
+    private CallRecorder(Class<?> serviceClass, Recording recording) {
+        this.serviceClass = serviceClass;
+        this.recording = recording;
+    }
+
+    @Override
+    public Object intercept(ServiceCall call) throws Throwable {
+        if (recording.isClosed()) {
+            return call.proceed();
+        }
+        byte[] arguments = CallLog.encodeArguments(call.getArguments());
+        long callStart = System.nanoTime();
+        try {
+            return call.proceed();
+        } finally {
+            long callEnd = System.nanoTime();
+            boolean recorded = recording.writer.write(serviceClass, TimeUnit.NANOSECONDS.toMicros(callStart - recording.start),
+                    TimeUnit.NANOSECONDS.toMicros(callEnd - callStart), call.getMethod(), arguments);
+            if (recorded) {
+                getServiceProxy().getMetrics().increment(METRIC_RECORDED_CALLS);
+            } else if (!recording.isClosed()) {
+                //a call made as the recording got closed is not one dropped
+                getServiceProxy().getMetrics().increment(METRIC_DROPPED_RECORDS);
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        recording.writer.flush();
+    }
+
+    /**
+     * A recording of the calls to a service to a {@link CallLog} file, from when it is created till it is closed.
+     * The file is created in the background, replacing any existing one, when the first call is recorded.
+     */
+    public static final class Recording {
+
+        private final CallLog.Writer writer;
+        private final long start = System.nanoTime();
+
+        /**
+         * Initialize a recording to the given file
+         */
+        public Recording(File file) {
+            writer = new CallLog.Writer(file);
+        }
+
+        /**
+         * Writes out the calls recorded and closes the file, in the background
+         */
+        public void close() {
+            writer.close();
+        }
+
+        /**
+         * Returns whether the recording is closed, and records no more calls
+         */
+        public boolean isClosed() {
+            return writer.isClosed();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package util.service.proxy;
+
+/**
+ * A call reported by a {@link CallMonitor}, made on the main thread or slower than the threshold
+ */
+public final class CallReport {
+
+    private final String serviceIntent;
+    private final String serviceClassName;
+    private final String methodName;
+    private final long duration;
+    private final long time;
+    private final boolean mainThread;
+    private final StackTraceElement[] stackTrace;
+
+    CallReport(String serviceIntent, String serviceClassName, String methodName, long duration, long time,
+               boolean mainThread, StackTraceElement[] stackTrace) {
+        this.serviceIntent = serviceIntent;
+        this.serviceClassName = serviceClassName;
+        this.methodName = methodName;
+        this.duration = duration;
+        this.time = time;
+        this.mainThread = mainThread;
+        this.stackTrace = stackTrace;
+    }
+
+    /**
+     * Returns the intent of the service called
+     */
+    public String getServiceIntent() {
+        return serviceIntent;
+    }
+
+    /**
+     * Returns the name of the service interface
+     */
+    public String getServiceClassName() {
+        return serviceClassName;
+    }
+
+    /**
+     * Returns the name of the method called
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * Returns how long the call took, in ms
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns when the call was made, in ms since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns whether the call was made on the main thread
+     */
+    public boolean isMainThread() {
+        return mainThread;
+    }
+
+    /**
+     * Returns where the call was made from, or null if stack traces are not captured
+     */
+    public StackTraceElement[] getStackTrace() {
+        return stackTrace;
+    }
+
+    @Override
+    public String toString() {
+        return serviceClassName + '.' + methodName + " on " + serviceIntent + " took " + duration + "ms"
+                + (mainThread ? " on the main thread" : "");
+    }
+}
@@ -0,0 +1,103 @@
+package util.service.proxy;
+
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the latest {@link CallReport}s of the {@link CallMonitor}s, dropping the oldest ones
+ * beyond its capacity, and passes each new one to its listener.
+ *
+ * @see util.service.ServiceConnector#getCallReports()
+ */
+public final class CallReportLog {
+
+    private static final String TAG = "ServiceConnector";
+    private final ArrayDeque<CallReport> reports = new ArrayDeque<>();
+    private final int capacity;
+    private volatile Listener listener;
+
+    /**
+     * Initialize the log
+     *
+     * @param capacity Maximum number of reports kept
+     */
+    public CallReportLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity should be greater than 0");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Sets the listener to pass each new report to, null to remove.
+     * The listener is called on the thread that made the call, so it should return quickly.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the reports kept, oldest first
+     */
+    public synchronized List<CallReport> getReports() {
+        return new ArrayList<>(reports);
+    }
+
+    /**
+     * Drops all the reports kept
+     */
+    public synchronized void clear() {
+        reports.clear();
+    }
+
+    /**
+     * Writes the reports kept to the given writer, with their stack traces if captured
+     */
+    public void dump(PrintWriter writer) {
+        for (CallReport report : getReports()) {
+            writer.println(report);
+            StackTraceElement[] stackTrace = report.getStackTrace();
+            if (stackTrace != null) {
+                for (StackTraceElement element : stackTrace) {
+                    writer.println("\tat " + element);
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Keeps the given report and passes it to the listener
+     */
+    void add(CallReport report) {
+        synchronized (this) {
+            if (reports.size() >= capacity) {
+                reports.pollFirst();
+            }
+            reports.addLast(report);
+        }
+        Listener listener = this.listener;
+        if (listener != null) {
+            try {
+                listener.onCallReported(report);
+            } catch (Exception ex) {
+                Log.w(TAG, "Callback failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Listener of the calls reported
+     */
+    public interface Listener {
+
+        /**
+         * Called for each call reported, on the thread that made the call
+         */
+        void onCallReported(CallReport report);
+    }
+}
@@ -0,0 +1,139 @@
+package util.service.proxy;
+
+import android.os.DeadObjectException;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import util.service.annotation.Idempotent;
+
+/**
+ * A {@link CallInterceptor} that retries a failed call to an idempotent method once, after the service reconnects.
+ * <p>
+ * A call is retried if it failed with a {@link DeadObjectException}, or while the service was disconnected.
+ * It waits for the next service object for up to the timeout of its method, and fails with
+ * its original exception if the service does not reconnect in time.
+ * A call on the main thread does not wait, as the service reconnects on the main thread:
+ * it is retried only if the service already reconnected.
+ * <p>
+ * The calls retried are counted in {@link CallMetrics} as {@link #METRIC_RETRIED_CALLS},
+ * and the ones that gave up waiting as {@link #METRIC_RETRY_TIMEOUTS}.
+ *
+ * @see Idempotent
+ */
+public final class CallRetrier extends CallInterceptor {
+
+    /**
+     * Name of the metric counting the calls retried after the service reconnected
+     */
+    public static final String METRIC_RETRIED_CALLS = "retriedCalls";
+
+    /**
+     * Name of the metric counting the calls that failed as the service did not reconnect in time
+     */
+    public static final String METRIC_RETRY_TIMEOUTS = "retryTimeouts";
+
+    private final Map<Method, Policy> methodPolicies = new ConcurrentHashMap<>();
+    private boolean destroyed;
+
+    /**
+     * Creates the retrier for the idempotent methods of the given service interface,
+     * either annotated with {@link Idempotent} or registered in the given {@link MethodPolicies}.
+     *
+     * @return The retrier, or null if there are no idempotent methods
+     */
+    public static CallRetrier create(Class<?> serviceClass, MethodPolicies methodPolicies) {
+        CallRetrier callRetrier = new CallRetrier();
+        for (Method method : serviceClass.getMethods()) {
+            Idempotent idempotent = method.getAnnotation(Idempotent.class);
+            Policy policy = idempotent != null ? new Policy(idempotent.timeout())
+                    : methodPolicies.get(serviceClass, method, Policy.class);
+            if (policy != null) {
+                callRetrier.methodPolicies.put(method, policy);
+            }
+        }
+        return callRetrier.methodPolicies.isEmpty() ? null : callRetrier;
+    }
+
+    private CallRetrier() {
+    }
+
+    @Override
+    public Object intercept(ServiceCall call) throws Throwable {
+        Policy policy = methodPolicies.get(call.getMethod());
+        if (policy == null) {
+            return call.proceed();
+        }
+        ServiceProxy serviceProxy = call.getServiceProxy();
+        int generation = serviceProxy.getGeneration();
+        try {
+            return call.proceed();
+        } catch (Throwable ex) {
+            if (!(ex instanceof DeadObjectException) && serviceProxy.getService() != null) {
+                throw ex;
+            }
+            if (!awaitNextService(generation, isMainThread() ? 0 : policy.timeout)) {
+                serviceProxy.getMetrics().increment(METRIC_RETRY_TIMEOUTS);
+                throw ex;
+            }
+            serviceProxy.getMetrics().increment(METRIC_RETRIED_CALLS);
+            return call.proceed();
+        }
+    }
+
+    /**
+     * Waits for a service object newer than the given generation
+     *
+     * @return Whether one is available, false if timed out or the service is unbound
+     */
+    private synchronized boolean awaitNextService(int generation, long timeout) {
+        ServiceProxy serviceProxy = getServiceProxy();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (!destroyed && (serviceProxy.getService() == null || serviceProxy.getGeneration() == generation)) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !destroyed;
+    }
+
+    @Override
+    protected synchronized void onServiceChanged(Object service) {
+        notifyAll();
+    }
+
+    @Override
+    protected synchronized void onDestroy() {
+        destroyed = true;
+        notifyAll();
+    }
+
+    /**
+     * Retry policy of an idempotent method
+     */
+    public static final class Policy {
+
+        private final long timeout;
+
+        /**
+         * Initialize the policy
+         *
+         * @param timeout Maximum time in ms to wait for the service to reconnect before retrying
+         */
+        public Policy(long timeout) {
+            if (timeout < 0) {
+                throw new IllegalArgumentException("timeout should not be negative");
+            }
+            this.timeout = timeout;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package util.service.proxy;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the policies applied to the methods of service interfaces.
+ * <p>
+ * This lets methods of interfaces that cannot be annotated (like the ones generated from AIDL)
+ * be configured programmatically.
+ */
+public final class MethodPolicies {
+
+    private final Map<String, Object> policies = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the policy for all the methods of the given name in the given service interface.
+     * Registering a policy of the same type again replaces the old one.
+     */
+    public void put(Class<?> serviceClass, String methodName, Object policy) {
+        policies.put(getKey(serviceClass, methodName, policy.getClass()), policy);
+    }
+
+    /**
+     * Returns the policy of the given type registered for the method of the given service interface,
+     * or null if none.
+     */
+    public <P> P get(Class<?> serviceClass, Method method, Class<P> policyClass) {
+        return policyClass.cast(policies.get(getKey(serviceClass, method.getName(), policyClass)));
+    }
+
+    /**
+     * Returns the key to use for the given method and policy type
+     */
+    private static String getKey(Class<?> serviceClass, String methodName, Class<?> policyClass) {
+        return serviceClass.getName() + '#' + methodName + '#' + policyClass.getName();
+    }
+}
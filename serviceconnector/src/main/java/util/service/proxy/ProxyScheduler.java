@@ -0,0 +1,33 @@
+package util.service.proxy;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Holds the scheduler shared by the {@link CallInterceptor}s for their delayed work
+ */
+final class ProxyScheduler {
+
+    private static ScheduledExecutorService scheduler;
+
+    private ProxyScheduler() {
+    }
+
+    /**
+     * Returns the shared scheduler, creating it if needed
+     */
+    static synchronized ScheduledExecutorService get() {
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ServiceConnector-Proxy");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+}
@@ -0,0 +1,162 @@
+package util.service.proxy;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import util.service.annotation.CacheResult;
+
+/**
+ * A {@link CallInterceptor} that answers calls to cacheable methods from a bounded LRU cache
+ * keyed by the arguments of the call.
+ * <p>
+ * The cache is cleared whenever the service object changes.
+ *
+ * @see CacheResult
+ */
+public final class ResultCache extends CallInterceptor {
+
+    private final Map<Method, MethodCache> methodCaches = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the cache for the cacheable methods of the given service interface,
+     * either annotated with {@link CacheResult} or registered in the given {@link MethodPolicies}.
+     *
+     * @return The cache, or null if there are no cacheable methods
+     */
+    public static ResultCache create(Class<?> serviceClass, MethodPolicies methodPolicies) {
+        ResultCache resultCache = new ResultCache();
+        for (Method method : serviceClass.getMethods()) {
+            CacheResult cacheResult = method.getAnnotation(CacheResult.class);
+            Policy policy = cacheResult != null ? new Policy(cacheResult.ttl(), cacheResult.maxSize())
+                    : methodPolicies.get(serviceClass, method, Policy.class);
+            if (policy != null && method.getReturnType() != void.class) {
+                resultCache.methodCaches.put(method, new MethodCache(policy));
+            }
+        }
+        return resultCache.methodCaches.isEmpty() ? null : resultCache;
+    }
+
+    private ResultCache() {
+    }
+
+    @Override
+    public Object intercept(ServiceCall call) throws Throwable {
+        MethodCache methodCache = methodCaches.get(call.getMethod());
+        if (methodCache == null) {
+            return call.proceed();
+        }
+        CallKey callKey = new CallKey(call.getMethod(), call.getArguments());
+        CachedResult cachedResult = methodCache.get(callKey);
+        if (cachedResult != null) {
+            return cachedResult.result;
+        }
+        //don't keep results that may have come from an older service
+        int generation = methodCache.getGeneration();
+        Object result = call.proceed();
+        methodCache.put(callKey, result, generation);
+        return result;
+    }
+
+    @Override
+    protected void onServiceChanged(Object service) {
+        clear();
+    }
+
+    /**
+     * Clears all the cached results
+     */
+    public void clear() {
+        for (MethodCache methodCache : methodCaches.values()) {
+            methodCache.clear();
+        }
+    }
+
+    /**
+     * Caching policy of a method
+     */
+    public static final class Policy {
+
+        private final long ttl;
+        private final int maxSize;
+
+        /**
+         * Initialize the policy
+         *
+         * @param ttl     Time in ms a result stays valid. 0 keeps it until the service object changes
+         * @param maxSize Maximum number of results to keep for the method
+         */
+        public Policy(long ttl, int maxSize) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("maxSize should be greater than 0");
+            }
+            this.ttl = ttl;
+            this.maxSize = maxSize;
+        }
+    }
+
+    /**
+     * A cached result
+     */
+    private static final class CachedResult {
+        private final Object result;
+        private final long expiresAt;
+
+        CachedResult(Object result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * LRU cache of the results of one method
+     */
+    private static final class MethodCache {
+
+        private final Policy policy;
+        private final LinkedHashMap<CallKey, CachedResult> results;
+        //incremented on each clear, so that a result called before it is not kept after it
+        private int generation;
+
+        MethodCache(final Policy policy) {
+            this.policy = policy;
+            this.results = new LinkedHashMap<CallKey, CachedResult>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CallKey, CachedResult> eldest) {
+                    return size() > policy.maxSize;
+                }
+            };
+        }
+
+        synchronized CachedResult get(CallKey callKey) {
+            CachedResult cachedResult = results.get(callKey);
+            if (cachedResult != null && policy.ttl > 0 && System.nanoTime() - cachedResult.expiresAt > 0) {
+                results.remove(callKey);
+                cachedResult = null;
+            }
+            return cachedResult;
+        }
+
+        synchronized int getGeneration() {
+            return generation;
+        }
+
+        /**
+         * Keeps the given result, unless the cache was cleared since the given generation
+         */
+        synchronized void put(CallKey callKey, Object result, int generation) {
+            if (generation != this.generation) {
+                return;
+            }
+            long expiresAt = policy.ttl > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.ttl) : 0;
+            results.put(callKey, new CachedResult(result, expiresAt));
+        }
+
+        synchronized void clear() {
+            generation++;
+            results.clear();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package util.service.proxy;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * A call made on a {@link ServiceProxy}, as seen by a {@link CallInterceptor}
+ */
+public final class ServiceCall {
+
+    private final ServiceProxy serviceProxy;
+    private final List<CallInterceptor> interceptors;
+    private final int index;
+    private final Method method;
+    private final Object[] arguments;
+
+    /**
+     * Initialize a call that starts at the interceptor at the given index
+     */
+    ServiceCall(ServiceProxy serviceProxy, List<CallInterceptor> interceptors, int index, Method method, Object[] arguments) {
+        this.serviceProxy = serviceProxy;
+        this.interceptors = interceptors;
+        this.index = index;
+        this.method = method;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Returns the intent of the service being called
+     */
+    public String getServiceIntent() {
+        return serviceProxy.getServiceIntent();
+    }
+
+    /**
+     * Returns the {@link ServiceProxy} this call is made on
+     */
+    public ServiceProxy getServiceProxy() {
+        return serviceProxy;
+    }
+
+    /**
+     * Returns the interface method being called
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the arguments of the call, or null if the method takes none
+     */
+    public Object[] getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Passes the call on to the next interceptor, or to the service if this is the last one.
+     * This can be called more than once, and from any thread.
+     *
+     * @return The result of the call
+     */
+    public Object proceed() throws Throwable {
+        if (index < interceptors.size()) {
+            return interceptors.get(index)
+                    .intercept(new ServiceCall(serviceProxy, interceptors, index + 1, method, arguments));
+        }
+        return serviceProxy.invokeService(method, arguments);
+    }
+}
@@ -0,0 +1,219 @@
+package util.service.proxy;
+
+import android.os.DeadObjectException;
+import android.os.RemoteException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import util.service.trace.ServiceTrace;
+
+/**
+ * A proxy that stands in for a remote service object, passing every call through
+ * a chain of {@link CallInterceptor}s before it reaches the service.
+ * <p>
+ * The service object the calls reach is swapped by the service handler whenever
+ * the service gets connected or disconnected.
+ * <p>
+ * A {@linkplain #isStable() stable} proxy is injected once and kept in the fields across reconnects,
+ * so that a reconnect only swaps its service object.
+ *
+ * @see CallInterceptor
+ */
+public final class ServiceProxy implements InvocationHandler {
+
+    private final String serviceIntent;
+    private final Class<?> serviceClass;
+    private final List<CallInterceptor> interceptors;
+    private final Object proxy;
+    private final boolean stable;
+    private final CallMetrics metrics = new CallMetrics();
+    private volatile Object service;
+    private volatile int generation;
+
+    //*************************************************************
+
+    /**
+     * Initialize a proxy for the given service interface
+     *
+     * @param serviceIntent Intent of the service
+     * @param serviceClass  The service interface to proxy
+     * @param interceptors  Interceptors to call, in order
+     */
+    public ServiceProxy(String serviceIntent, Class<?> serviceClass, List<CallInterceptor> interceptors) {
+        this(serviceIntent, serviceClass, interceptors, false);
+    }
+
+    /**
+     * Initialize a proxy for the given service interface
+     *
+     * @param serviceIntent Intent of the service
+     * @param serviceClass  The service interface to proxy
+     * @param interceptors  Interceptors to call, in order
+     * @param stable        Whether the proxy stays injected while the service is disconnected
+     */
+    public ServiceProxy(String serviceIntent, Class<?> serviceClass, List<CallInterceptor> interceptors, boolean stable) {
+        this.serviceIntent = serviceIntent;
+        this.stable = stable;
+        this.serviceClass = serviceClass;
+        this.interceptors = new CopyOnWriteArrayList<>(interceptors);
+        for (CallInterceptor interceptor : this.interceptors) {
+            interceptor.setServiceProxy(this);
+        }
+        this.proxy = Proxy.newProxyInstance(serviceClass.getClassLoader(), new Class[]{serviceClass}, this);
+    }
+
+    /**
+     * Returns the intent of the service this proxies
+     */
+    public String getServiceIntent() {
+        return serviceIntent;
+    }
+
+    /**
+     * Returns the service interface this proxies
+     */
+    public Class<?> getServiceClass() {
+        return serviceClass;
+    }
+
+    /**
+     * Returns the proxy object implementing the service interface
+     */
+    public Object getProxy() {
+        return proxy;
+    }
+
+    /**
+     * Returns whether this proxy stays injected while the service is disconnected, failing the calls made meanwhile
+     */
+    public boolean isStable() {
+        return stable;
+    }
+
+    /**
+     * Returns the metrics kept by the interceptors of this proxy
+     */
+    public CallMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the service object the calls are currently sent to, or null if not connected
+     */
+    public Object getService() {
+        return service;
+    }
+
+    /**
+     * Returns the number of times the service object has changed.
+     * A call that started in one generation and finished in another may have reached an older service.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Sets the service object to send the calls to, null if the service is disconnected
+     */
+    public void setService(Object service) {
+        synchronized (this) {
+            if (this.service == service) {
+                return;
+            }
+            this.service = service;
+            generation++;
+        }
+        for (CallInterceptor interceptor : interceptors) {
+            interceptor.onServiceChanged(service);
+        }
+    }
+
+    /**
+     * Called when the service is being unbound, before the service object is cleared
+     */
+    public void destroy() {
+        for (CallInterceptor interceptor : interceptors) {
+            interceptor.onDestroy();
+        }
+    }
+
+    /**
+     * Returns the interceptor of the given type, or null if none
+     */
+    public <I extends CallInterceptor> I getInterceptor(Class<I> interceptorClass) {
+        for (CallInterceptor interceptor : interceptors) {
+            if (interceptorClass.isInstance(interceptor)) {
+                return interceptorClass.cast(interceptor);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, args);
+        }
+        if (interceptors.isEmpty()) {
+            return invokeService(method, args);
+        }
+        return new ServiceCall(this, interceptors, 0, method, args).proceed();
+    }
+
+    /**
+     * Calls the method on the current service object
+     */
+    Object invokeService(Method method, Object[] args) throws Throwable {
+        return invokeService(service, method, args);
+    }
+
+    /**
+     * Calls the method on the given service object, which may no longer be the current one
+     */
+    Object invokeService(Object service, Method method, Object[] args) throws Throwable {
+        if (service == null) {
+            throw notConnected(method);
+        }
+        boolean traced = ServiceTrace.beginSection("ServiceConnector.call", serviceIntent, method.getName());
+        try {
+            return method.invoke(service, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        } finally {
+            if (traced) {
+                ServiceTrace.endSection();
+            }
+        }
+    }
+
+    /**
+     * Returns the exception to throw when the given method is called while not connected.
+     * A {@link DeadObjectException} if the method can throw it, as the service object would.
+     */
+    Exception notConnected(Method method) {
+        for (Class<?> exceptionType : method.getExceptionTypes()) {
+            if (exceptionType.isAssignableFrom(RemoteException.class)) {
+                return new DeadObjectException("Service not connected " + serviceIntent);
+            }
+        }
+        return new IllegalStateException("Service not connected " + serviceIntent);
+    }
+
+    /**
+     * Handles the methods declared by {@link Object}
+     */
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("equals")) {
+            return proxy == args[0];
+        } else if (name.equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        }
+        return "ServiceProxy[" + serviceIntent + "]";
+    }
+}
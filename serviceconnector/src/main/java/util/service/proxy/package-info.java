@@ -0,0 +1,5 @@
+/**
+ * Proxies that wrap the remote service objects injected by {@link util.service.ServiceConnector},
+ * letting calls made on them pass through a chain of {@link util.service.proxy.CallInterceptor}s.
+ */
+package util.service.proxy;
@@ -0,0 +1,119 @@
+package util.service.trace;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Emits {@link Trace} sections for the phases of binding and calling services, named after the phase
+ * and the service intent, so that they show in systrace and Perfetto traces next to the binder transactions.
+ * <p>
+ * Tracing is off by default, and costs a single check per phase while off.
+ * Sections need API level 18, and are skipped on older devices, unless they go to a {@link Sink}
+ * set in place of {@link Trace}.
+ * <p>
+ * ex:
+ * <pre><code>
+ *  boolean traced = ServiceTrace.beginSection("ServiceConnector.bindService", serviceIntent, null);
+ *  try {
+ *      ...
+ *  } finally {
+ *      if (traced) {
+ *          ServiceTrace.endSection();
+ *      }
+ *  }
+ * </code></pre>
+ *
+ * @see util.service.ServiceConnector#setEnableTracing(boolean)
+ */
+public final class ServiceTrace {
+
+    //longest section name Trace accepts
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+    private static volatile boolean enabled;
+    //where the sections go, null for Trace
+    private static volatile Sink sink;
+
+    private ServiceTrace() {
+    }
+
+    /**
+     * Enables or disables the trace sections
+     */
+    public static void setEnabled(boolean enabled) {
+        ServiceTrace.enabled = enabled;
+    }
+
+    /**
+     * Sends the sections to the given sink rather than to {@link Trace}, like a log or a test
+     *
+     * @param sink Where the sections go, null for {@link Trace}
+     */
+    public static void setSink(Sink sink) {
+        ServiceTrace.sink = sink;
+    }
+
+    /**
+     * Returns whether trace sections are emitted
+     */
+    public static boolean isEnabled() {
+        return enabled && (sink != null || Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2);
+    }
+
+    /**
+     * Begins a section for the given phase if tracing is enabled. The section must be ended
+     * on the same thread with {@link #endSection()}, only if this returned true.
+     *
+     * @param phase         Name of the phase
+     * @param serviceIntent Service intent, or other subject of the phase
+     * @param detail        What else to name the section after, like the method called, or null
+     * @return Whether the section began
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public static boolean beginSection(String phase, String serviceIntent, String detail) {
+        if (!isEnabled()) {
+            return false;
+        }
+        String name = detail != null ? phase + ' ' + serviceIntent + ' ' + detail : phase + ' ' + serviceIntent;
+        if (name.length() > MAX_SECTION_NAME_LENGTH) {
+            name = name.substring(0, MAX_SECTION_NAME_LENGTH);
+        }
+        Sink sink = ServiceTrace.sink;
+        if (sink != null) {
+            sink.beginSection(name);
+        } else {
+            Trace.beginSection(name);
+        }
+        return true;
+    }
+
+    /**
+     * Ends the last section begun on this thread
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public static void endSection() {
+        Sink sink = ServiceTrace.sink;
+        if (sink != null) {
+            sink.endSection();
+        } else {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Receives the trace sections in place of {@link Trace}. Sections are nested per thread,
+     * and each end closes the last section begun on the same thread.
+     */
+    public interface Sink {
+
+        /**
+         * Begins a section of the given name on the calling thread
+         */
+        void beginSection(String name);
+
+        /**
+         * Ends the last section begun on the calling thread
+         */
+        void endSection();
+    }
+}
@@ -0,0 +1,228 @@
+package util.service.trace;
+
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+import java.util.Random;
+
+/**
+ * Identifies the trace, and the span within it, of the work being done on a thread, so that the work a call
+ * triggers in a remote service can be attributed to the action that made the call.
+ * <p>
+ * For services bound with <b>propagateTraceContext</b>, the service is first asked with a
+ * {@link #HANDSHAKE_TRANSACTION} whether it restores the contexts. Only if it answers is the context current
+ * on the calling thread appended to each remote call, after its arguments. The service answers the handshake,
+ * and restores the context at the start of its <b>onTransact</b>:
+ * <pre><code>
+ *  {@literal @}Override
+ *  public boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+ *      if (TraceContext.acceptHandshake(code, reply)) {
+ *          return true;
+ *      }
+ *      TraceContext.restore(data);
+ *      try {
+ *          return super.onTransact(code, data, reply, flags);
+ *      } finally {
+ *          TraceContext.attach(null);
+ *      }
+ *  }
+ * </code></pre>
+ * Restoring the context removes it from the data, so the stub finds only the arguments it expects.
+ * Services that do not answer the handshake get the calls as they were made. Calls to a service in the
+ * same process do not go through a transaction, and the context stays on the calling thread anyway.
+ *
+ * @see util.service.annotation.ServiceInfo#propagateTraceContext()
+ */
+public final class TraceContext {
+
+    /**
+     * Code of the transaction asking a service whether it restores the contexts, outside the range
+     * of the calls of service interfaces
+     */
+    public static final int HANDSHAKE_TRANSACTION = ('_' << 24) | ('T' << 16) | ('R' << 8) | 'C';
+    private static final ThreadLocal<TraceContext> CURRENT = new ThreadLocal<>();
+    private static final Random RANDOM = new Random();
+    //marks the end of a call carrying a context, and the answer to the handshake
+    private static final int TRAILER_MAGIC = 0x54524358;
+    //trace id, span id and the magic
+    private static final int TRAILER_SIZE = 8 + 8 + 4;
+    private final long traceId;
+    private final long spanId;
+
+    /**
+     * Initialize a context
+     *
+     * @param traceId Id of the trace
+     * @param spanId  Id of the span within the trace
+     */
+    public TraceContext(long traceId, long spanId) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+    }
+
+    /**
+     * Returns the context of a new trace
+     */
+    public static TraceContext newTrace() {
+        return new TraceContext(RANDOM.nextLong(), RANDOM.nextLong());
+    }
+
+    /**
+     * Returns the context of a new span of the same trace
+     */
+    public TraceContext newSpan() {
+        return new TraceContext(traceId, RANDOM.nextLong());
+    }
+
+    /**
+     * Returns the id of the trace
+     */
+    public long getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * Returns the id of the span within the trace
+     */
+    public long getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * Returns the context current on this thread, or null if none
+     */
+    public static TraceContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes the given context current on this thread, null to clear it
+     *
+     * @return The context that was current before
+     */
+    public static TraceContext attach(TraceContext traceContext) {
+        TraceContext previous = CURRENT.get();
+        if (traceContext != null) {
+            CURRENT.set(traceContext);
+        } else {
+            CURRENT.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * Answers the handshake of a client sending its contexts, for the service handling the call
+     *
+     * @param code  The code of the call, as passed to <b>onTransact</b>
+     * @param reply The reply of the call, as passed to <b>onTransact</b>
+     * @return Whether the call was the handshake, and is answered
+     */
+    public static boolean acceptHandshake(int code, Parcel reply) {
+        if (code != HANDSHAKE_TRANSACTION) {
+            return false;
+        }
+        if (reply != null) {
+            reply.writeInt(TRAILER_MAGIC);
+        }
+        return true;
+    }
+
+    /**
+     * Makes the context sent with the given call current on this thread, for the service handling the call.
+     * Clears the current context if the call has none. The context is removed from the end of the data,
+     * and the position of the data is left unchanged.
+     *
+     * @param data The data of the call, as passed to <b>onTransact</b>
+     * @return The context sent with the call, or null if none
+     */
+    public static TraceContext restore(Parcel data) {
+        TraceContext traceContext = read(data);
+        if (traceContext != null) {
+            data.setDataSize(data.dataSize() - TRAILER_SIZE);
+        }
+        attach(traceContext);
+        return traceContext;
+    }
+
+    /**
+     * Returns a binder that appends the context current on the calling thread to each call made through it,
+     * once the service has answered the handshake
+     */
+    public static IBinder propagateThrough(IBinder binder) {
+        return TracingBinder.wrap(binder);
+    }
+
+    /**
+     * Returns the given service object, made over a binder returned by {@link #propagateThrough(IBinder)},
+     * with its <b>asBinder</b> returning the given service binder, as only that one can be sent to other processes
+     */
+    public static <T> T exposeBinder(T service, Class<T> serviceClass, IBinder binder) {
+        return TracingBinder.exposeBinder(service, serviceClass, binder);
+    }
+
+    /**
+     * Asks the service of the given binder whether it restores the contexts
+     */
+    static boolean handshake(IBinder binder) throws RemoteException {
+        Parcel data = Parcel.obtain();
+        Parcel reply = Parcel.obtain();
+        try {
+            return binder.transact(HANDSHAKE_TRANSACTION, data, reply, 0)
+                    && reply.dataSize() >= 4 && reply.readInt() == TRAILER_MAGIC;
+        } finally {
+            data.recycle();
+            reply.recycle();
+        }
+    }
+
+    /**
+     * Appends this context to the given data of a call
+     */
+    void write(Parcel data) {
+        data.setDataPosition(data.dataSize());
+        data.writeLong(traceId);
+        data.writeLong(spanId);
+        data.writeInt(TRAILER_MAGIC);
+    }
+
+    /**
+     * Reads the context appended to the given data of a call, if any
+     */
+    private static TraceContext read(Parcel data) {
+        int size = data.dataSize();
+        if (size < TRAILER_SIZE) {
+            return null;
+        }
+        int position = data.dataPosition();
+        try {
+            data.setDataPosition(size - 4);
+            if (data.readInt() != TRAILER_MAGIC) {
+                return null;
+            }
+            data.setDataPosition(size - TRAILER_SIZE);
+            return new TraceContext(data.readLong(), data.readLong());
+        } finally {
+            data.setDataPosition(position);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TraceContext)) {
+            return false;
+        }
+        TraceContext traceContext = (TraceContext) other;
+        return traceId == traceContext.traceId && spanId == traceContext.spanId;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (traceId ^ (traceId >>> 32)) * 31 + (int) (spanId ^ (spanId >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return Long.toHexString(traceId) + '-' + Long.toHexString(spanId);
+    }
+}
@@ -0,0 +1,120 @@
+package util.service.trace;
+
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Wraps the binder of a remote service, appending the {@link TraceContext} current on the calling thread
+ * to the data of each call made through it, once the service has answered the handshake.
+ * The handshake is made by the first call with a context.
+ * <p>
+ * The wrapper is a dynamic proxy, so that it forwards every method of {@link IBinder} on the device,
+ * including the ones hidden from the SDK. It cannot be sent to another process, so the service objects
+ * made over it expose the binder it wraps instead.
+ */
+final class TracingBinder implements InvocationHandler {
+
+    private final IBinder binder;
+    //whether the service restores the contexts, null till asked
+    private volatile Boolean handshakeAccepted;
+
+    /**
+     * Returns the wrapper of the given binder
+     */
+    static IBinder wrap(IBinder binder) {
+        return (IBinder) Proxy.newProxyInstance(IBinder.class.getClassLoader(), new Class[]{IBinder.class},
+                new TracingBinder(binder));
+    }
+
+    private TracingBinder(IBinder binder) {
+        this.binder = binder;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return "TracingBinder[" + binder + "]";
+        }
+        if (method.getName().equals("transact")) {
+            attachTraceContext((Integer) args[0], (Parcel) args[1]);
+        }
+        try {
+            return method.invoke(binder, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Appends the current context to the data of the call of the given code, if the service restores it
+     */
+    private void attachTraceContext(int code, Parcel data) throws RemoteException {
+        TraceContext traceContext = TraceContext.current();
+        //only the calls of the service interface, not the system ones like INTERFACE_TRANSACTION
+        if (traceContext != null && code >= IBinder.FIRST_CALL_TRANSACTION && code <= IBinder.LAST_CALL_TRANSACTION
+                && isHandshakeAccepted()) {
+            traceContext.write(data);
+        }
+    }
+
+    /**
+     * Returns whether the service restores the contexts, asking it the first time
+     */
+    private boolean isHandshakeAccepted() throws RemoteException {
+        Boolean accepted = handshakeAccepted;
+        if (accepted == null) {
+            //concurrent first calls may both ask, and get the same answer
+            accepted = TraceContext.handshake(binder);
+            handshakeAccepted = accepted;
+        }
+        return accepted;
+    }
+
+    /**
+     * Returns a proxy of the given service object whose <b>asBinder</b> returns the given binder
+     */
+    static <T> T exposeBinder(final T service, Class<T> serviceClass, final IBinder binder) {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        interfaces.add(serviceClass);
+        //like the proxy interfaces of Remoter
+        Collections.addAll(interfaces, service.getClass().getInterfaces());
+        return serviceClass.cast(Proxy.newProxyInstance(serviceClass.getClassLoader(),
+                interfaces.toArray(new Class<?>[interfaces.size()]), new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("asBinder") && method.getParameterTypes().length == 0) {
+                            return binder;
+                        }
+                        if (method.getDeclaringClass() == Object.class) {
+                            String name = method.getName();
+                            if (name.equals("equals")) {
+                                return proxy == args[0];
+                            } else if (name.equals("hashCode")) {
+                                return System.identityHashCode(proxy);
+                            }
+                            return service.toString();
+                        }
+                        try {
+                            return method.invoke(service, args);
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getCause();
+                        }
+                    }
+                }));
+    }
+}
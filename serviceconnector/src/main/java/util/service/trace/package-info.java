@@ -0,0 +1,4 @@
+/**
+ * Tracing of the connections and calls to remote services, to line them up with the binder transactions in system traces.
+ */
+package util.service.trace;
@@ -0,0 +1,276 @@
+package util.service.transfer;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads the results a remote service streams through a pipe {@link ParcelFileDescriptor}.
+ * <p>
+ * A background task reads ahead a bounded number of chunks from the pipe. When the reader falls behind,
+ * the pipe fills up and the writer in the service blocks, so the service never runs ahead of the client
+ * by more than the read ahead and the pipe buffer.
+ * <p>
+ * Closing the stream closes the pipe, which fails the writes in the service, cancelling the stream.
+ * It also interrupts the read ahead, which reads through an interruptible channel so that it does not stay
+ * blocked on a pipe the service no longer writes to.
+ * Streams opened with {@link util.service.ServiceConnector#openStream(String, ParcelFileDescriptor)}
+ * are closed when the service disconnects, unless already read to the end.
+ *
+ * @see ServiceStreams
+ */
+public final class ServiceInputStream extends InputStream {
+
+    /**
+     * Listener notified when a stream has been read to the end or closed
+     */
+    public interface Listener {
+
+        /**
+         * Called once, on the thread that read the end of the stream or closed it
+         */
+        void onStreamEnded(ServiceInputStream stream);
+    }
+
+    private static final byte[] END_OF_STREAM = new byte[0];
+    private final ParcelFileDescriptor pipe;
+    private final int chunkSize;
+    private final BlockingQueue<byte[]> chunks;
+    private final DataInputStream recordInput = new DataInputStream(this);
+    //buffer of the single byte reads, which DataInputStream makes for every primitive
+    private final byte[] singleByte = new byte[1];
+    private Listener listener;
+    private boolean ended;
+    private volatile IOException readFailure;
+    private volatile boolean closed;
+    //thread reading ahead, to interrupt on close, guarded by the stream
+    private Thread readAheadThread;
+    private byte[] chunk;
+    private int position;
+    private boolean endOfStream;
+
+    /**
+     * Initialize the stream and start reading ahead
+     *
+     * @param pipe            The read end of the pipe
+     * @param chunkSize       Size of the chunks read from the pipe
+     * @param readAheadChunks Maximum number of chunks read ahead
+     * @param executor        Executor to read ahead on
+     */
+    public ServiceInputStream(ParcelFileDescriptor pipe, int chunkSize, int readAheadChunks, Executor executor) {
+        this.pipe = pipe;
+        this.chunkSize = chunkSize;
+        this.chunks = new ArrayBlockingQueue<>(readAheadChunks);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                readAhead();
+            }
+        });
+    }
+
+    /**
+     * Reads chunks from the pipe until the end of the stream, blocking while the queue is full
+     */
+    private void readAhead() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            readAheadThread = Thread.currentThread();
+        }
+        FileInputStream pipeInput = new ParcelFileDescriptor.AutoCloseInputStream(pipe);
+        FileChannel pipeChannel = pipeInput.getChannel();
+        try {
+            while (!closed) {
+                byte[] buffer = new byte[chunkSize];
+                int read = pipeChannel.read(ByteBuffer.wrap(buffer));
+                if (read < 0) {
+                    break;
+                }
+                if (read > 0) {
+                    chunks.put(read == chunkSize ? buffer : Arrays.copyOf(buffer, read));
+                }
+            }
+        } catch (IOException ex) {
+            if (!closed) {
+                readFailure = ex;
+            }
+        } catch (InterruptedException ex) {
+            if (!closed) {
+                readFailure = new InterruptedIOException("Read ahead interrupted");
+            }
+        } finally {
+            try {
+                pipeInput.close();
+            } catch (IOException ignored) {
+            }
+            try {
+                //waits for the reader to make room, unless closed, as the close interrupts
+                if (!closed) {
+                    chunks.put(END_OF_STREAM);
+                }
+            } catch (InterruptedException ignored) {
+            }
+            synchronized (this) {
+                readAheadThread = null;
+                //the interrupt of a close is not left to the next task of the executor
+                Thread.interrupted();
+            }
+            if (closed) {
+                chunks.clear();
+                chunks.offer(END_OF_STREAM);
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(length, chunk.length - position);
+        System.arraycopy(chunk, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return chunk != null ? chunk.length - position : 0;
+    }
+
+    /**
+     * Reads the next record written by {@link ServiceStreams#writeRecord(java.io.OutputStream, byte[])}
+     *
+     * @return The record, or null at the end of the stream
+     * @throws java.io.EOFException if the stream ends within a record
+     * @throws IOException          if the length of the record is invalid
+     */
+    public byte[] readRecord() throws IOException {
+        int firstByte = read();
+        if (firstByte < 0) {
+            return null;
+        }
+        int length = firstByte << 24 | recordInput.readUnsignedByte() << 16
+                | recordInput.readUnsignedByte() << 8 | recordInput.readUnsignedByte();
+        if (length < 0 || length > ServiceStreams.MAX_RECORD_LENGTH) {
+            throw new IOException("Invalid record length " + length);
+        }
+        byte[] record = new byte[length];
+        recordInput.readFully(record);
+        return record;
+    }
+
+    /**
+     * Makes sure there is unread data in the current chunk, waiting for the next one if needed
+     *
+     * @return false at the end of the stream
+     */
+    private boolean nextChunk() throws IOException {
+        while (!endOfStream && (chunk == null || position >= chunk.length)) {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException ex) {
+                throw new InterruptedIOException("Interrupted while reading stream");
+            }
+            position = 0;
+            if (chunk == END_OF_STREAM) {
+                endOfStream = true;
+                notifyEnded();
+            }
+        }
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (endOfStream && readFailure != null) {
+            throw readFailure;
+        }
+        return !endOfStream;
+    }
+
+    /**
+     * Sets the listener to notify when this stream has been read to the end or closed.
+     * It is notified right away if that already happened.
+     */
+    public void setListener(Listener listener) {
+        boolean alreadyEnded;
+        synchronized (this) {
+            this.listener = listener;
+            alreadyEnded = ended;
+        }
+        if (alreadyEnded && listener != null) {
+            listener.onStreamEnded(this);
+        }
+    }
+
+    /**
+     * Notifies the listener the first time the stream ends
+     */
+    private void notifyEnded() {
+        Listener listener;
+        synchronized (this) {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            listener = this.listener;
+        }
+        if (listener != null) {
+            listener.onStreamEnded(this);
+        }
+    }
+
+    /**
+     * Returns true if the stream is closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes the stream, cancelling it in the service
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            //closing the pipe does not wake a read blocked on it, the interrupt closes its channel
+            if (readAheadThread != null) {
+                readAheadThread.interrupt();
+            }
+        }
+        try {
+            pipe.close();
+        } catch (IOException ignored) {
+        }
+        chunks.clear();
+        //wakes a reader waiting for the next chunk
+        chunks.offer(END_OF_STREAM);
+        notifyEnded();
+    }
+}
@@ -0,0 +1,108 @@
+package util.service.transfer;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * Service side helpers to stream results to a client through a pipe {@link ParcelFileDescriptor},
+ * instead of paging over many binder calls or building one huge parcel.
+ * <p>
+ * ex:
+ * <pre><code>
+ *  //IQueryService.aidl
+ *  ParcelFileDescriptor query(String selection);
+ *
+ *  //service
+ *  public ParcelFileDescriptor query(final String selection) throws RemoteException {
+ *      return ServiceStreams.openStream(new ServiceStreams.StreamWriter() {
+ *          public void write(OutputStream out) throws IOException {
+ *              for (Row row : rows(selection)) {
+ *                  ServiceStreams.writeRecord(out, row.toBytes());
+ *              }
+ *          }
+ *      }, executor);
+ *  }
+ *
+ *  //client
+ *  ServiceInputStream results = ServiceConnector.openStream(QUERY_SERVICE, queryService.query(selection));
+ *  for (byte[] record = results.readRecord(); record != null; record = results.readRecord()) {
+ *  }
+ * </code></pre>
+ *
+ * @see ServiceInputStream
+ */
+@TargetApi(Build.VERSION_CODES.GINGERBREAD)
+public final class ServiceStreams {
+
+    private static final String TAG = "ServiceConnector";
+
+    /**
+     * Maximum length of a record, so that a corrupt stream cannot make the client allocate without bound
+     */
+    public static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     * Writes the content of a stream
+     */
+    public interface StreamWriter {
+
+        /**
+         * Writes the content to the given stream. Writes fail with an {@link IOException}
+         * once the client closes the stream.
+         */
+        void write(OutputStream out) throws IOException;
+    }
+
+    private ServiceStreams() {
+    }
+
+    /**
+     * Creates a pipe, and starts writing to it on the given executor
+     *
+     * @param writer   Writes the content of the stream
+     * @param executor Executor to write on
+     * @return The read end of the pipe, to be returned to the client
+     */
+    public static ParcelFileDescriptor openStream(final StreamWriter writer, Executor executor) throws IOException {
+        final ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]);
+                try {
+                    writer.write(out);
+                } catch (IOException ex) {
+                    Log.w(TAG, "Stream closed before completion", ex);
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        });
+        return pipe[0];
+    }
+
+    /**
+     * Writes a length prefixed record, to be read by {@link ServiceInputStream#readRecord()}
+     *
+     * @throws IllegalArgumentException if the record is longer than {@link #MAX_RECORD_LENGTH}
+     */
+    public static void writeRecord(OutputStream out, byte[] record) throws IOException {
+        if (record.length > MAX_RECORD_LENGTH) {
+            throw new IllegalArgumentException("Record of " + record.length + " bytes longer than " + MAX_RECORD_LENGTH);
+        }
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(record.length);
+        dataOut.write(record);
+        dataOut.flush();
+    }
+}
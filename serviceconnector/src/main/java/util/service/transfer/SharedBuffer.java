@@ -0,0 +1,185 @@
+package util.service.transfer;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A shared memory region that can be passed to a remote service as a {@link Parcelable},
+ * letting large payloads reach the service without being copied through the binder transaction.
+ * Only the region's file descriptor and the length of the payload travel over binder.
+ * <p>
+ * On the client, obtain one from {@link util.service.ServiceConnector#obtainSharedBuffer(String, int)},
+ * write the payload, pass it to the service, and {@link #recycle()} it once the call returns.
+ * A call to a oneway method returns before the service has read the payload, so a buffer passed to one must not
+ * be recycled on return, as the next payload would overwrite it: {@link #close()} it instead, which leaves the region
+ * to the service, or recycle it only once the service tells it is done.
+ * <p>
+ * On the service, read the payload from {@link #getByteBuffer()} and {@link #close()} it when done.
+ * <p>
+ * ex:
+ * <pre><code>
+ *  //IUploadService.aidl
+ *  import util.service.transfer.SharedBuffer;
+ *  interface IUploadService {
+ *      void upload(in SharedBuffer buffer);
+ *  }
+ *
+ *  //client
+ *  SharedBuffer buffer = ServiceConnector.obtainSharedBuffer(UPLOAD_SERVICE, data.length);
+ *  buffer.write(data);
+ *  uploadService.upload(buffer);
+ *  buffer.recycle();
+ * </code></pre>
+ * Needs API level 27, see {@link SharedBufferPool#isSupported()}
+ */
+@TargetApi(Build.VERSION_CODES.O_MR1)
+public final class SharedBuffer implements Parcelable, Closeable {
+
+    private final SharedMemory sharedMemory;
+    private final SharedBufferPool pool;
+    private ByteBuffer byteBuffer;
+    private int length;
+    private boolean closed;
+
+    /**
+     * Initialize a buffer over the given memory, owned by the given pool
+     */
+    SharedBuffer(SharedMemory sharedMemory, SharedBufferPool pool) {
+        this.sharedMemory = sharedMemory;
+        this.pool = pool;
+    }
+
+    /**
+     * Initialize the buffer received from a parcel
+     */
+    private SharedBuffer(Parcel source) {
+        this.length = source.readInt();
+        this.sharedMemory = SharedMemory.CREATOR.createFromParcel(source);
+        this.pool = null;
+    }
+
+    /**
+     * Returns the size of the region
+     */
+    public int getCapacity() {
+        return sharedMemory.getSize();
+    }
+
+    /**
+     * Returns the length of the payload in the region
+     */
+    public synchronized int getLength() {
+        return length;
+    }
+
+    /**
+     * Sets the length of the payload written to the region
+     */
+    public synchronized void setLength(int length) {
+        if (length < 0 || length > getCapacity()) {
+            throw new IllegalArgumentException("Invalid length " + length + " for capacity " + getCapacity());
+        }
+        this.length = length;
+    }
+
+    /**
+     * Returns the region mapped in this process. Its limit is set to the length of the payload.
+     */
+    public synchronized ByteBuffer getByteBuffer() throws IOException {
+        if (closed) {
+            throw new IOException("SharedBuffer is closed");
+        }
+        if (byteBuffer == null) {
+            try {
+                byteBuffer = sharedMemory.mapReadWrite();
+            } catch (ErrnoException ex) {
+                throw new IOException("Unable to map shared memory", ex);
+            }
+        }
+        byteBuffer.clear();
+        byteBuffer.limit(length);
+        return byteBuffer;
+    }
+
+    /**
+     * Copies the given data to the start of the region, setting the length of the payload
+     */
+    public synchronized void write(byte[] data) throws IOException {
+        setLength(data.length);
+        getByteBuffer().put(data);
+    }
+
+    /**
+     * Returns a copy of the payload
+     */
+    public synchronized byte[] read() throws IOException {
+        byte[] data = new byte[length];
+        getByteBuffer().get(data);
+        return data;
+    }
+
+    /**
+     * Returns the buffer to the pool it came from to be reused, or closes it if it wasn't from a pool.
+     * Call this only after the service is done with the payload, which for a oneway method is not when the call returns.
+     */
+    public void recycle() {
+        if (pool != null) {
+            pool.recycle(this);
+        } else {
+            close();
+        }
+    }
+
+    /**
+     * Returns whether the region is released, so that the buffer can no longer be used
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Unmaps and releases the region
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            if (byteBuffer != null) {
+                SharedMemory.unmap(byteBuffer);
+                byteBuffer = null;
+            }
+            sharedMemory.close();
+        }
+    }
+
+    @Override
+    public int describeContents() {
+        return CONTENTS_FILE_DESCRIPTOR;
+    }
+
+    @Override
+    public synchronized void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(length);
+        sharedMemory.writeToParcel(dest, flags);
+    }
+
+    public static final Creator<SharedBuffer> CREATOR = new Creator<SharedBuffer>() {
+        @Override
+        public SharedBuffer createFromParcel(Parcel source) {
+            return new SharedBuffer(source);
+        }
+
+        @Override
+        public SharedBuffer[] newArray(int size) {
+            return new SharedBuffer[size];
+        }
+    };
+}
@@ -0,0 +1,123 @@
+package util.service.transfer;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SharedMemory;
+import android.system.ErrnoException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of {@link SharedBuffer}s reused across calls to a service,
+ * so that shared memory regions need not be created for every payload.
+ * <p>
+ * Regions are sized in powers of two, and a request is served by the smallest pooled region that fits.
+ */
+@TargetApi(Build.VERSION_CODES.O_MR1)
+public final class SharedBufferPool implements Closeable {
+
+    private static final int MIN_REGION_SIZE = 64 * 1024;
+    private final String name;
+    private final int maxPooledBuffers;
+    private final List<SharedBuffer> pooledBuffers = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * Returns whether shared buffers are supported on this device
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1;
+    }
+
+    /**
+     * Initialize the pool
+     *
+     * @param name             Name given to the regions, for debugging
+     * @param maxPooledBuffers Maximum number of idle buffers kept for reuse
+     */
+    public SharedBufferPool(String name, int maxPooledBuffers) {
+        this.name = name;
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    /**
+     * Returns a buffer with at least the given capacity, reusing a pooled one if possible
+     *
+     * @throws UnsupportedOperationException If shared buffers are not supported on this device
+     * @throws IOException                   If the region could not be created
+     */
+    public SharedBuffer obtain(int size) throws IOException {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("SharedBuffer needs API level " + Build.VERSION_CODES.O_MR1);
+        }
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("SharedBufferPool is closed");
+            }
+            SharedBuffer bestFit = null;
+            for (SharedBuffer pooledBuffer : pooledBuffers) {
+                if (pooledBuffer.getCapacity() >= size
+                        && (bestFit == null || pooledBuffer.getCapacity() < bestFit.getCapacity())) {
+                    bestFit = pooledBuffer;
+                }
+            }
+            if (bestFit != null) {
+                pooledBuffers.remove(bestFit);
+                return bestFit;
+            }
+        }
+        try {
+            return new SharedBuffer(SharedMemory.create(name, getRegionSize(size)), this);
+        } catch (ErrnoException ex) {
+            throw new IOException("Unable to create shared memory", ex);
+        }
+    }
+
+    /**
+     * Takes back a buffer to be reused, closing it if the pool is full or closed.
+     * A buffer already closed is not reused.
+     */
+    void recycle(SharedBuffer sharedBuffer) {
+        if (sharedBuffer.isClosed()) {
+            return;
+        }
+        synchronized (this) {
+            if (!closed && pooledBuffers.size() < maxPooledBuffers && !pooledBuffers.contains(sharedBuffer)) {
+                sharedBuffer.setLength(0);
+                pooledBuffers.add(sharedBuffer);
+                return;
+            }
+        }
+        sharedBuffer.close();
+    }
+
+    /**
+     * Closes the pool, releasing the idle buffers. Buffers in use are released when recycled.
+     */
+    @Override
+    public void close() {
+        List<SharedBuffer> buffers;
+        synchronized (this) {
+            closed = true;
+            buffers = new ArrayList<>(pooledBuffers);
+            pooledBuffers.clear();
+        }
+        for (SharedBuffer buffer : buffers) {
+            buffer.close();
+        }
+    }
+
+    /**
+     * Returns the size of the region to create for the given size
+     */
+    private static int getRegionSize(int size) {
+        int regionSize = MIN_REGION_SIZE;
+        while (regionSize < size && regionSize < (1 << 30)) {
+            regionSize <<= 1;
+        }
+        return Math.max(regionSize, size);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Helpers to move large payloads to and from remote services without copying them through binder transactions.
+ */
+package util.service.transfer;
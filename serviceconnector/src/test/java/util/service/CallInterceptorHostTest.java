@@ -0,0 +1,280 @@
+package util.service;
+
+import android.os.DeadObjectException;
+import android.os.RemoteException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import util.service.annotation.Batched;
+import util.service.annotation.ServiceConnectionCallback;
+import util.service.annotation.ServiceInfo;
+import util.service.proxy.CallBatcher;
+import util.service.proxy.CallCollapser;
+import util.service.proxy.MethodPolicies;
+
+/**
+ * Tests the interceptors driven by the annotations of a service interface, against a service hosted by a {@link FakeContext}
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class CallInterceptorHostTest {
+
+    static final String INTENT_INTERCEPTED_SERVICE = "util.service.fake.INTERCEPTED_SERVICE";
+    private static final long TIMEOUT = 5000;
+    private static final int CALLERS = 5;
+
+    private FakeContext context;
+    private FakeService service;
+
+    @Before
+    public void setup() {
+        context = new FakeContext();
+        service = context.addService(INTENT_INTERCEPTED_SERVICE, new FakeService(new FakeService.BinderFactory() {
+            @Override
+            public FakeBinder create() {
+                return new InterceptedServiceImpl();
+            }
+        }));
+    }
+
+    @After
+    public void tearDown() {
+        Assert.assertEquals("Expected no bindings left", 0, context.getBindingCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testCachedResults() throws Exception {
+        InterceptedTarget target = bind();
+        IInterceptedService interceptedService = target.interceptedService;
+
+        Assert.assertEquals(4, interceptedService.lookup(2));
+        Assert.assertEquals(4, interceptedService.lookup(2));
+        Assert.assertEquals("Expected the repeated call answered from the cache", 1, getCallCount());
+        Assert.assertEquals(9, interceptedService.lookup(3));
+        Assert.assertEquals("Expected the results keyed by the arguments", 2, getCallCount());
+
+        Thread.sleep(400);
+        Assert.assertEquals(4, interceptedService.lookup(2));
+        Assert.assertEquals("Expected the expired result called again", 3, getCallCount());
+
+        service.kill(true);
+        awaitRestarted(target);
+        Assert.assertEquals(4, target.interceptedService.lookup(2));
+        Assert.assertEquals("Expected the cache cleared on reconnect", 1, getCallCount());
+
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testCollapsedCalls() throws Exception {
+        InterceptedTarget target = bind();
+        IInterceptedService interceptedService = target.interceptedService;
+
+        InterceptedServiceImpl serviceImpl = (InterceptedServiceImpl) service.getBinder();
+        serviceImpl.closeGate();
+        List<Object> results = new CopyOnWriteArrayList<>();
+        List<Thread> callers = startGatedLookups(interceptedService, 4, results);
+        awaitCollapsedCalls(CALLERS - 1);
+        serviceImpl.openGate();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        Assert.assertEquals("Expected a single call for the identical calls", 1, getCallCount());
+        Assert.assertEquals(CALLERS, results.size());
+        for (Object result : results) {
+            Assert.assertEquals(16, result);
+        }
+
+        results.clear();
+        serviceImpl.closeGate();
+        callers = startGatedLookups(interceptedService, -1, results);
+        awaitCollapsedCalls(2 * (CALLERS - 1));
+        serviceImpl.openGate();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        Assert.assertEquals(2, getCallCount());
+        Assert.assertEquals(CALLERS, results.size());
+        for (Object result : results) {
+            Assert.assertTrue("Expected the exception thrown to every caller", result instanceof IllegalArgumentException);
+        }
+
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testBatchedCalls() throws Exception {
+        InterceptedTarget target = bind();
+        IInterceptedService interceptedService = target.interceptedService;
+        InterceptedServiceImpl firstService = (InterceptedServiceImpl) service.getBinder();
+
+        interceptedService.logValue(1);
+        interceptedService.logValue(2);
+        interceptedService.logValue(3);
+        awaitBatches(firstService, 1);
+        Assert.assertEquals(Arrays.asList(Arrays.asList(1, 2, 3)), firstService.getBatches());
+
+        interceptedService.logValue(4);
+        service.setBindLatency(500);
+        service.kill(true);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (ServiceConnector.isConnected(INTENT_INTERCEPTED_SERVICE) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals("Expected the buffered call dropped on disconnect",
+                1L, (long) ServiceConnector.getCallMetrics(INTENT_INTERCEPTED_SERVICE).get(CallBatcher.METRIC_DROPPED_CALLS));
+        try {
+            interceptedService.logValue(5);
+            Assert.fail("Expected the call made while disconnected to fail rather than be buffered");
+        } catch (DeadObjectException expected) {
+        }
+
+        awaitRestarted(target);
+        InterceptedServiceImpl restartedService = (InterceptedServiceImpl) service.getBinder();
+        interceptedService = target.interceptedService;
+        interceptedService.logValue(6);
+        interceptedService.logValue(7);
+        interceptedService.logValue(8);
+        awaitBatches(restartedService, 1);
+        interceptedService.logValue(9);
+        restartedService.closeGate();
+        ServiceConnector.unbind(target);
+        Assert.assertEquals("Expected the unbind not to wait for the buffered call", 1, restartedService.getBatches().size());
+        restartedService.openGate();
+        awaitBatches(restartedService, 2);
+        Assert.assertEquals("Expected the buffered call sent on unbind",
+                Arrays.asList(Arrays.asList(6, 7, 8), Arrays.asList(9)), restartedService.getBatches());
+    }
+
+    @Test
+    public void testBatchedCallsNeedParameters() {
+        try {
+            CallBatcher.create(IPingService.class, new MethodPolicies());
+            Assert.fail("Expected a method without parameters refused");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Waits for the given service to have received the given number of batches
+     */
+    private static void awaitBatches(InterceptedServiceImpl serviceImpl, int batches) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (serviceImpl.getBatches().size() < batches && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Starts the callers making the same gated lookup, adding their results or exceptions to the given list
+     */
+    private static List<Thread> startGatedLookups(final IInterceptedService interceptedService, final int key, final List<Object> results) {
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        results.add(interceptedService.gatedLookup(key));
+                    } catch (Exception ex) {
+                        results.add(ex);
+                    }
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        return callers;
+    }
+
+    /**
+     * Waits for the given number of calls to have joined another call in flight
+     */
+    private static void awaitCollapsedCalls(long collapsedCalls) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            Long collapsed = ServiceConnector.getCallMetrics(INTENT_INTERCEPTED_SERVICE).get(CallCollapser.METRIC_COLLAPSED_CALLS);
+            if (collapsed != null && collapsed >= collapsedCalls) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        Assert.fail("Expected " + collapsedCalls + " collapsed calls");
+    }
+
+    /**
+     * Binds a new target, waiting for the service to be injected
+     */
+    private InterceptedTarget bind() throws InterruptedException {
+        InterceptedTarget target = new InterceptedTarget();
+        ServiceConnector.bind(target, context);
+        ServiceConnector.waitForConnected(TIMEOUT, INTENT_INTERCEPTED_SERVICE);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (target.interceptedService == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        return target;
+    }
+
+    /**
+     * Waits for the killed service to be restarted and injected again in the given target,
+     * as the handler reports connected before the callbacks update the target
+     */
+    private static void awaitRestarted(InterceptedTarget target) throws InterruptedException {
+        Boolean connected;
+        do {
+            //the callback of the first connection may not be taken yet
+            connected = target.connectionEvents.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        } while (Boolean.TRUE.equals(connected));
+        Assert.assertEquals("Expected the service disconnected", Boolean.FALSE, connected);
+        Assert.assertEquals("Expected the service restarted", Boolean.TRUE, target.connectionEvents.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Returns the number of calls that reached the running service
+     */
+    private int getCallCount() throws Exception {
+        return ((InterceptedServiceImpl) service.getBinder()).getCallCount();
+    }
+
+    /**
+     * A target of the intercepted service
+     */
+    public static class InterceptedTarget {
+
+        @ServiceInfo(serviceIntent = INTENT_INTERCEPTED_SERVICE)
+        volatile IInterceptedService interceptedService;
+
+        final BlockingQueue<Boolean> connectionEvents = new LinkedBlockingQueue<>();
+
+        @ServiceConnectionCallback
+        public void onServiceConnectionChanged(String serviceIntent, boolean connected) {
+            connectionEvents.add(connected);
+        }
+    }
+
+    /**
+     * A service interface whose batched calls would not carry the number of calls
+     */
+    public interface IPingService {
+
+        @Batched(batchMethod = "pings")
+        void ping() throws RemoteException;
+
+        void pings() throws RemoteException;
+    }
+}
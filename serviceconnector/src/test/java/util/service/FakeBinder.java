@@ -0,0 +1,56 @@
+package util.service;
+
+import android.os.Binder;
+import android.os.DeadObjectException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A local binder that can be killed to simulate the death of the service process
+ */
+public class FakeBinder extends Binder {
+
+    private final List<DeathRecipient> deathRecipients = new CopyOnWriteArrayList<>();
+    private volatile boolean alive = true;
+
+    @Override
+    public void linkToDeath(DeathRecipient recipient, int flags) {
+        deathRecipients.add(recipient);
+    }
+
+    @Override
+    public boolean unlinkToDeath(DeathRecipient recipient, int flags) {
+        return deathRecipients.remove(recipient);
+    }
+
+    @Override
+    public boolean isBinderAlive() {
+        return alive;
+    }
+
+    @Override
+    public boolean pingBinder() {
+        return alive;
+    }
+
+    /**
+     * Kills this binder, notifying the death recipients
+     */
+    public void die() {
+        alive = false;
+        for (DeathRecipient deathRecipient : deathRecipients) {
+            deathRecipient.binderDied();
+        }
+        deathRecipients.clear();
+    }
+
+    /**
+     * Throws {@link DeadObjectException} if this binder is dead, as a remote call would
+     */
+    protected void checkAlive() throws DeadObjectException {
+        if (!alive) {
+            throw new DeadObjectException();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package util.service;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.shadows.ShadowPackageManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Context that hosts {@link FakeService}s in process, so that the connector can be tested on the JVM.
+ * <p>
+ * Connection callbacks are delivered serially on a single thread, like they are on the main thread,
+ * or on the main looper itself, like on a device.
+ */
+public class FakeContext extends ContextWrapper {
+
+    static final String PACKAGE_NAME = "util.service.fake";
+    private final Map<String, FakeService> services = new ConcurrentHashMap<>();
+    private final Map<ServiceConnection, FakeService> bindings = new ConcurrentHashMap<>();
+    private final AtomicInteger bindCalls = new AtomicInteger();
+    private volatile int lastBindFlags;
+    private volatile long bindServiceLatency;
+    private final Handler mainLooperHandler;
+    private final ScheduledExecutorService mainThread = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FakeContext-main");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public FakeContext() {
+        this(false);
+    }
+
+    /**
+     * @param mainLooper Whether to deliver the connection callbacks on the main looper, which is the test thread,
+     *                   so that they run only when the test runs the tasks of the main looper,
+     *                   like with {@link ShadowLooper#runUiThreadTasks()}
+     */
+    public FakeContext(boolean mainLooper) {
+        super(RuntimeEnvironment.application);
+        mainLooperHandler = mainLooper ? new Handler(Looper.getMainLooper()) : null;
+        if (mainLooper) {
+            //otherwise the tasks posted from other threads run right away
+            ShadowLooper.pauseMainLooper();
+        }
+    }
+
+    /**
+     * Hosts the given service, resolving the given intent to it
+     */
+    public FakeService addService(String serviceIntent, FakeService service) {
+        ResolveInfo resolveInfo = new ResolveInfo();
+        resolveInfo.serviceInfo = new ServiceInfo();
+        resolveInfo.serviceInfo.packageName = PACKAGE_NAME;
+        resolveInfo.serviceInfo.name = serviceIntent;
+        ShadowPackageManager packageManager = Shadow.extract(getPackageManager());
+        packageManager.addResolveInfoForIntent(new Intent(serviceIntent), resolveInfo);
+        service.attach(new ComponentName(PACKAGE_NAME, serviceIntent), this);
+        services.put(serviceIntent, service);
+        return service;
+    }
+
+    /**
+     * Sets how long bindService takes to return, in ms, like a slow call to the system
+     */
+    public void setBindServiceLatency(long bindServiceLatency) {
+        this.bindServiceLatency = bindServiceLatency;
+    }
+
+    /**
+     * Runs the given connection callback on the main thread after the given delay in ms
+     */
+    void runOnMainThread(final Runnable callback, long delay) {
+        if (mainLooperHandler == null) {
+            mainThread.schedule(callback, delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        //delayed on the thread, as the clock of the main looper does not run by itself
+        mainThread.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mainLooperHandler.post(callback);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the number of connections currently bound
+     */
+    public int getBindingCount() {
+        return bindings.size();
+    }
+
+    /**
+     * Returns the number of times bindService was called
+     */
+    public int getBindCalls() {
+        return bindCalls.get();
+    }
+
+    /**
+     * Returns the flags of the last bindService call
+     */
+    public int getLastBindFlags() {
+        return lastBindFlags;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public boolean bindService(Intent service, ServiceConnection connection, int flags) {
+        bindCalls.incrementAndGet();
+        lastBindFlags = flags;
+        if (bindServiceLatency > 0) {
+            try {
+                Thread.sleep(bindServiceLatency);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ComponentName componentName = service.getComponent();
+        FakeService fakeService = componentName != null ? services.get(componentName.getClassName()) : null;
+        if (fakeService == null || !fakeService.bind(connection)) {
+            return false;
+        }
+        bindings.put(connection, fakeService);
+        return true;
+    }
+
+    @Override
+    public void unbindService(ServiceConnection connection) {
+        FakeService fakeService = bindings.remove(connection);
+        if (fakeService == null) {
+            throw new IllegalArgumentException("Service not registered: " + connection);
+        }
+        fakeService.unbind(connection);
+    }
+}
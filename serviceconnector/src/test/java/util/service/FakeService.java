@@ -0,0 +1,170 @@
+package util.service;
+
+import android.content.ComponentName;
+import android.content.ServiceConnection;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A service hosted by a {@link FakeContext}, that can refuse binds, fail binds and be killed
+ */
+public class FakeService {
+
+    /**
+     * Creates the binder each time the service (re)starts
+     */
+    public interface BinderFactory {
+        FakeBinder create();
+    }
+
+    private final BinderFactory binderFactory;
+    private final Map<ServiceConnection, FakeBinder> connections = new HashMap<>();
+    private ComponentName componentName;
+    private FakeContext context;
+    private FakeBinder binder;
+    private volatile long bindLatency;
+    private volatile boolean bindRefused;
+    private volatile RuntimeException bindException;
+    private int startCount;
+
+    public FakeService(BinderFactory binderFactory) {
+        this.binderFactory = binderFactory;
+    }
+
+    /**
+     * Sets how long it takes for a bind to connect, in ms
+     */
+    public void setBindLatency(long bindLatency) {
+        this.bindLatency = bindLatency;
+    }
+
+    /**
+     * Sets whether bindService should return false for this service
+     */
+    public void setBindRefused(boolean bindRefused) {
+        this.bindRefused = bindRefused;
+    }
+
+    /**
+     * Sets the exception bindService should throw for this service, null to bind normally
+     */
+    public void setBindException(RuntimeException bindException) {
+        this.bindException = bindException;
+    }
+
+    /**
+     * Returns the binder of the running service, null if not running
+     */
+    public synchronized FakeBinder getBinder() {
+        return binder;
+    }
+
+    /**
+     * Returns the number of times the service was started
+     */
+    public synchronized int getStartCount() {
+        return startCount;
+    }
+
+    /**
+     * Returns the number of connections bound to this service
+     */
+    public synchronized int getConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Kills the service process, disconnecting all its connections.
+     *
+     * @param restart Whether to restart the service and reconnect the connections, as the system does
+     */
+    public void kill(boolean restart) {
+        Map<ServiceConnection, FakeBinder> killedConnections;
+        FakeBinder killedBinder;
+        synchronized (this) {
+            killedBinder = binder;
+            binder = null;
+            killedConnections = new HashMap<>(connections);
+            for (ServiceConnection connection : connections.keySet()) {
+                connections.put(connection, null);
+            }
+        }
+        if (killedBinder != null) {
+            killedBinder.die();
+        }
+        for (final ServiceConnection connection : killedConnections.keySet()) {
+            context.runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    connection.onServiceDisconnected(componentName);
+                }
+            }, 0);
+            if (restart) {
+                deliver(connection);
+            }
+        }
+    }
+
+    /**
+     * Attaches this service to the context hosting it
+     */
+    void attach(ComponentName componentName, FakeContext context) {
+        this.componentName = componentName;
+        this.context = context;
+    }
+
+    /**
+     * Binds the connection, as Context.bindService would
+     */
+    boolean bind(ServiceConnection connection) {
+        if (bindException != null) {
+            throw bindException;
+        }
+        if (bindRefused) {
+            return false;
+        }
+        synchronized (this) {
+            if (!connections.containsKey(connection)) {
+                connections.put(connection, null);
+            }
+        }
+        deliver(connection);
+        return true;
+    }
+
+    /**
+     * Unbinds the connection, as Context.unbindService would
+     */
+    synchronized void unbind(ServiceConnection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * Delivers the binder to the connection after the bind latency,
+     * unless it already got the current binder
+     */
+    private void deliver(final ServiceConnection connection) {
+        context.runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                FakeBinder connectedBinder;
+                synchronized (FakeService.this) {
+                    if (!connections.containsKey(connection)) {
+                        return;
+                    }
+                    if (binder == null) {
+                        binder = binderFactory.create();
+                        startCount++;
+                    }
+                    if (connections.get(connection) == binder) {
+                        return;
+                    }
+                    connectedBinder = binder;
+                    connections.put(connection, binder);
+                }
+                connection.onServiceConnected(componentName, connectedBinder);
+            }
+        }, bindLatency);
+    }
+}
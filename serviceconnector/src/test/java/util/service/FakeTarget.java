@@ -0,0 +1,47 @@
+package util.service;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import util.service.annotation.ServiceConnectionCallback;
+import util.service.annotation.ServiceConnectionFailureCallback;
+import util.service.annotation.ServiceInfo;
+
+import static util.service.ServiceConnectorHostTest.INTENT_TEST_SERVICE;
+
+/**
+ * A target that records its connection callbacks
+ */
+public class FakeTarget {
+
+    @ServiceInfo(serviceIntent = INTENT_TEST_SERVICE)
+    ITestService testService;
+
+    private final BlockingQueue<Boolean> connectionEvents = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Exception> failures = new LinkedBlockingQueue<>();
+
+    @ServiceConnectionCallback
+    public void onServiceConnectionChanged(String serviceIntent, boolean connected) {
+        connectionEvents.add(connected);
+    }
+
+    @ServiceConnectionFailureCallback
+    public void onServiceConnectionFailed(String serviceIntent, Exception exception) {
+        failures.add(exception);
+    }
+
+    /**
+     * Waits for the next connection callback, returning the connected state, or null on timeout
+     */
+    public Boolean nextConnectionEvent(long timeout) throws InterruptedException {
+        return connectionEvents.poll(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for the next failure callback, returning the exception, or null on timeout
+     */
+    public Exception nextFailure(long timeout) throws InterruptedException {
+        return failures.poll(timeout, TimeUnit.MILLISECONDS);
+    }
+}
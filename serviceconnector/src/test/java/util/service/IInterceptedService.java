@@ -0,0 +1,60 @@
+package util.service;
+
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.RemoteException;
+
+import java.util.List;
+
+import util.service.annotation.Batched;
+import util.service.annotation.CacheResult;
+import util.service.annotation.SingleFlight;
+
+/**
+ * A service interface whose methods are annotated for the call interceptors, served by {@link FakeBinder}s
+ */
+public interface IInterceptedService extends IInterface {
+
+    /**
+     * Returns the given key squared, cached for a short while
+     */
+    @CacheResult(ttl = 300, maxSize = 2)
+    int lookup(int key) throws RemoteException;
+
+    /**
+     * Returns the given key squared once let through, failing for negative keys. Concurrent identical calls are collapsed.
+     */
+    @SingleFlight
+    int gatedLookup(int key) throws RemoteException;
+
+    /**
+     * Logs the given value, delivered in batches to {@link #logValues(List)}
+     */
+    @Batched(batchMethod = "logValues", maxBatchSize = 3, maxDelay = 2000)
+    void logValue(int value) throws RemoteException;
+
+    /**
+     * Logs a batch of values
+     */
+    void logValues(List<Integer> values) throws RemoteException;
+
+    /**
+     * Returns the number of calls made to this service
+     */
+    int getCallCount() throws RemoteException;
+
+    /**
+     * Local implementation, looked up by the connector as an AIDL stub
+     */
+    abstract class Stub extends FakeBinder implements IInterceptedService {
+
+        public static IInterceptedService asInterface(IBinder binder) {
+            return binder instanceof IInterceptedService ? (IInterceptedService) binder : null;
+        }
+
+        @Override
+        public IBinder asBinder() {
+            return this;
+        }
+    }
+}
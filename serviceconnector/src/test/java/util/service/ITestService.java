@@ -0,0 +1,46 @@
+package util.service;
+
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.RemoteException;
+
+import util.service.annotation.CallPriority;
+import util.service.annotation.Idempotent;
+
+/**
+ * A service interface shaped like the ones generated from AIDL, served by {@link FakeBinder}s
+ */
+public interface ITestService extends IInterface {
+
+    /**
+     * Returns the given value
+     */
+    int echo(int value) throws RemoteException;
+
+    /**
+     * Sends the given value, without a result, ahead of the other calls waiting for a saturated service
+     */
+    @CallPriority(CallPriority.HIGH)
+    void send(int value) throws RemoteException;
+
+    /**
+     * Returns the number of calls made to this service, retried if the service dies
+     */
+    @Idempotent
+    int getCallCount() throws RemoteException;
+
+    /**
+     * Local implementation, looked up by the connector as an AIDL stub
+     */
+    abstract class Stub extends FakeBinder implements ITestService {
+
+        public static ITestService asInterface(IBinder binder) {
+            return binder instanceof ITestService ? (ITestService) binder : null;
+        }
+
+        @Override
+        public IBinder asBinder() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package util.service;
+
+import android.os.RemoteException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link IInterceptedService} implementation that counts the calls reaching it
+ */
+public class InterceptedServiceImpl extends IInterceptedService.Stub {
+
+    private final AtomicInteger callCount = new AtomicInteger();
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    /**
+     * Holds the calls to {@link #gatedLookup(int)} and {@link #logValues(List)} till {@link #openGate()}
+     */
+    public void closeGate() {
+        gate = new CountDownLatch(1);
+    }
+
+    /**
+     * Lets the held calls through
+     */
+    public void openGate() {
+        gate.countDown();
+    }
+
+    @Override
+    public int lookup(int key) throws RemoteException {
+        checkAlive();
+        callCount.incrementAndGet();
+        return key * key;
+    }
+
+    @Override
+    public int gatedLookup(int key) throws RemoteException {
+        checkAlive();
+        callCount.incrementAndGet();
+        try {
+            gate.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key " + key);
+        }
+        return key * key;
+    }
+
+    /**
+     * Returns the batches of values logged to this service, in order
+     */
+    public List<List<Integer>> getBatches() {
+        return batches;
+    }
+
+    @Override
+    public void logValue(int value) throws RemoteException {
+        logValues(Collections.singletonList(value));
+    }
+
+    @Override
+    public void logValues(List<Integer> values) throws RemoteException {
+        checkAlive();
+        callCount.incrementAndGet();
+        try {
+            gate.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        batches.add(values);
+    }
+
+    @Override
+    public int getCallCount() throws RemoteException {
+        checkAlive();
+        return callCount.get();
+    }
+}
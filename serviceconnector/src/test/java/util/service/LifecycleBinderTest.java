@@ -0,0 +1,197 @@
+package util.service;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import util.service.annotation.ServiceConnectionCallback;
+import util.service.annotation.ServiceInfo;
+
+import static util.service.ServiceConnectorHostTest.INTENT_TEST_SERVICE;
+
+/**
+ * Tests that the activities are bound, paused and unbound with their lifecycle
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class LifecycleBinderTest {
+
+    private static final long TIMEOUT = 5000;
+    //no callback is expected within this, in ms
+    private static final long QUIET_PERIOD = 300;
+
+    private static FakeContext context;
+    private static ServiceConnector scope;
+    private FakeService service;
+
+    @Before
+    public void setup() {
+        context = new FakeContext();
+        service = context.addService(INTENT_TEST_SERVICE, new FakeService(new FakeService.BinderFactory() {
+            @Override
+            public FakeBinder create() {
+                return new TestServiceImpl();
+            }
+        }));
+        scope = ServiceConnector.newScope(false);
+        scope.bindLifecycleTargets(RuntimeEnvironment.application, true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scope.close();
+        awaitNoBindings();
+    }
+
+    @Test(timeout = 10000)
+    public void testBoundWithLifecycle() throws Exception {
+        ActivityController<ServiceActivity> controller = Robolectric.buildActivity(ServiceActivity.class).create();
+        ServiceActivity activity = controller.get();
+        Assert.assertTrue(scope.isTargetBound(activity));
+        awaitConnected();
+        Assert.assertNotNull(activity.testService);
+        Assert.assertNull("Expected the callbacks held back till started", activity.nextConnectionEvent(QUIET_PERIOD));
+
+        controller.start();
+        Assert.assertEquals(Boolean.TRUE, activity.nextConnectionEvent(TIMEOUT));
+
+        controller.stop();
+        service.kill(true);
+        Assert.assertTrue(awaitRestarted());
+        Assert.assertNull("Expected the callbacks held back while stopped", activity.nextConnectionEvent(QUIET_PERIOD));
+
+        controller.start();
+        Assert.assertEquals("Expected the latest state only", Boolean.TRUE, activity.nextConnectionEvent(TIMEOUT));
+        Assert.assertNull(activity.nextConnectionEvent(QUIET_PERIOD));
+
+        controller.stop().destroy();
+        Assert.assertFalse(scope.isTargetBound(activity));
+        Assert.assertNull(activity.testService);
+        awaitNoBindings();
+    }
+
+    @Test(timeout = 10000)
+    public void testSelfBoundNotBoundTwice() throws Exception {
+        ActivityController<SelfBindingActivity> controller = Robolectric.buildActivity(SelfBindingActivity.class).create().start();
+        SelfBindingActivity activity = controller.get();
+        Assert.assertEquals(Boolean.TRUE, activity.nextConnectionEvent(TIMEOUT));
+        Assert.assertNull("Expected a single callback per connection", activity.nextConnectionEvent(QUIET_PERIOD));
+
+        controller.stop().destroy();
+        Assert.assertFalse(scope.isTargetBound(activity));
+        awaitNoBindings();
+    }
+
+    @Test(timeout = 10000)
+    public void testBoundBeforeCreatedLeftAlone() throws Exception {
+        ActivityController<EarlyBindingActivity> controller = Robolectric.buildActivity(EarlyBindingActivity.class).create();
+        EarlyBindingActivity activity = controller.get();
+        //not paused by the lifecycle, as it binds itself
+        Assert.assertEquals(Boolean.TRUE, activity.nextConnectionEvent(TIMEOUT));
+        Assert.assertNull(activity.nextConnectionEvent(QUIET_PERIOD));
+
+        controller.start().stop().destroy();
+        Assert.assertFalse(scope.isTargetBound(activity));
+    }
+
+    private void awaitConnected() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!scope.isServiceConnected(INTENT_TEST_SERVICE) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(scope.isServiceConnected(INTENT_TEST_SERVICE));
+    }
+
+    private boolean awaitRestarted() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while ((service.getStartCount() < 2 || !scope.isServiceConnected(INTENT_TEST_SERVICE))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return scope.isServiceConnected(INTENT_TEST_SERVICE);
+    }
+
+    private static void awaitNoBindings() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (context.getBindingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Expected no bindings left", 0, context.getBindingCount());
+    }
+
+    /**
+     * An activity bound by the lifecycle, binding to the services hosted by the test context
+     */
+    public static class ServiceActivity extends Activity {
+
+        @ServiceInfo(serviceIntent = INTENT_TEST_SERVICE)
+        ITestService testService;
+
+        private final BlockingQueue<Boolean> connectionEvents = new LinkedBlockingQueue<>();
+
+        @ServiceConnectionCallback
+        public void onServiceConnectionChanged(String serviceIntent, boolean connected) {
+            connectionEvents.add(connected);
+        }
+
+        @Override
+        public Context getApplicationContext() {
+            return context;
+        }
+
+        Boolean nextConnectionEvent(long timeout) throws InterruptedException {
+            return connectionEvents.poll(timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * An activity that binds itself once created, as it did before binding with the lifecycle
+     */
+    public static class SelfBindingActivity extends ServiceActivity {
+
+        @Override
+        protected void onCreate(Bundle savedInstanceState) {
+            super.onCreate(savedInstanceState);
+            scope.bindTarget(this, this);
+        }
+
+        @Override
+        protected void onDestroy() {
+            scope.unbindTarget(this);
+            super.onDestroy();
+        }
+    }
+
+    /**
+     * An activity that binds itself before it is created, and keeps its callbacks coming while stopped
+     */
+    public static class EarlyBindingActivity extends ServiceActivity {
+
+        @Override
+        protected void onCreate(Bundle savedInstanceState) {
+            scope.bindTarget(this, this);
+            super.onCreate(savedInstanceState);
+        }
+
+        @Override
+        protected void onDestroy() {
+            scope.unbindTarget(this);
+            super.onDestroy();
+        }
+    }
+}
@@ -0,0 +1,956 @@
+package util.service;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.DeadObjectException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import util.service.annotation.OverflowPolicy;
+import util.service.annotation.ServiceInfo;
+import util.service.annotation.ThrottlePolicy;
+import util.service.proxy.CallBulkhead;
+import util.service.proxy.CallLog;
+import util.service.proxy.CallMonitor;
+import util.service.proxy.CallQueue;
+import util.service.proxy.CallRateLimiter;
+import util.service.proxy.CallRecorder;
+import util.service.proxy.CallReport;
+import util.service.proxy.CallRetrier;
+import util.service.trace.ServiceTrace;
+
+/**
+ * Tests the service connector on the JVM, against services hosted by a {@link FakeContext}
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class ServiceConnectorHostTest {
+
+    static final String INTENT_TEST_SERVICE = "util.service.fake.TEST_SERVICE";
+    static final String INTENT_REFUSING_SERVICE = "util.service.fake.REFUSING_SERVICE";
+    static final String INTENT_UNRESOLVED_SERVICE = "util.service.fake.UNRESOLVED_SERVICE";
+    private static final long TIMEOUT = 5000;
+
+    private FakeContext context;
+    private FakeService service;
+
+    @Before
+    public void setup() {
+        context = new FakeContext();
+        service = context.addService(INTENT_TEST_SERVICE, newService());
+    }
+
+    @After
+    public void tearDown() {
+        Assert.assertEquals("Expected no bindings left", 0, context.getBindingCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testBindInjectsService() throws Exception {
+        FakeTarget target = new FakeTarget();
+        ServiceConnector.bind(target, context);
+
+        Assert.assertEquals("Expected connected callback", Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+        Assert.assertNotNull("Expected service field set", target.testService);
+        Assert.assertEquals(7, target.testService.echo(7));
+        Assert.assertTrue("Expected service to be connected", ServiceConnector.isConnected(INTENT_TEST_SERVICE));
+
+        ServiceConnector.unbind(target);
+        Assert.assertNull("Expected service field reset", target.testService);
+        Assert.assertFalse("Expected service not to be connected", ServiceConnector.isConnected(INTENT_TEST_SERVICE));
+    }
+
+    @Test(timeout = 10000)
+    public void testBindLatency() throws Exception {
+        service.setBindLatency(300);
+        FakeTarget target = new FakeTarget();
+        ServiceConnector.bind(target, context);
+
+        Assert.assertNull("Expected no callback before the bind latency", target.nextConnectionEvent(100));
+        Assert.assertNull("Expected service field not set", target.testService);
+        Assert.assertEquals("Expected connected callback", Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+        Assert.assertNotNull("Expected service field set", target.testService);
+
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testReconnectAfterServiceDeath() throws Exception {
+        FakeTarget target = new FakeTarget();
+        ServiceConnector.bind(target, context);
+        Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+        FakeBinder firstBinder = service.getBinder();
+
+        service.kill(true);
+
+        Assert.assertEquals("Expected disconnected callback", Boolean.FALSE, target.nextConnectionEvent(TIMEOUT));
+        Assert.assertEquals("Expected connected callback", Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+        Assert.assertNotSame("Expected a new binder", firstBinder, service.getBinder());
+        Assert.assertEquals("Expected service restarted", 2, service.getStartCount());
+        Assert.assertEquals(3, target.testService.echo(3));
+
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testSlowBindDoesNotBlockHandler() throws Exception {
+        context.setBindServiceLatency(1000);
+        FakeTarget target = new FakeTarget();
+        ServiceConnector.bind(target, context);
+        while (context.getBindCalls() == 0) {
+            Thread.sleep(5);
+        }
+
+        long start = System.nanoTime();
+        Assert.assertFalse(ServiceConnector.isConnected(INTENT_TEST_SERVICE));
+        Assert.assertTrue("Expected the state read while bindService is in progress",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+        Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testPausedCallbacks() throws Exception {
+        FakeTarget target = new FakeTarget();
+        ServiceConnector.bind(target, context);
+        Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+
+        ServiceConnector.pauseCallbacks(target);
+        service.kill(true);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while ((service.getStartCount() < 2 || !ServiceConnector.isConnected(INTENT_TEST_SERVICE))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertNull("Expected no callbacks while paused", target.nextConnectionEvent(200));
+        Assert.assertEquals("Expected service field updated while paused", 3, target.testService.echo(3));
+
+        ServiceConnector.resumeCallbacks(target);
+        Assert.assertEquals("Expected the latest state on resume", Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+        Assert.assertNull("Expected the held back events collapsed", target.nextConnectionEvent(200));
+
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testBindFlags() throws Exception {
+        ServiceConnector.setBindFlags(INTENT_TEST_SERVICE, Context.BIND_IMPORTANT);
+        try {
+            PriorityTarget target = new PriorityTarget();
+            ServiceConnector.bind(target, context);
+            ServiceConnector.waitForConnected(TIMEOUT, INTENT_TEST_SERVICE);
+
+            Assert.assertEquals("Expected the flags of the annotation and the ones set",
+                    Context.BIND_AUTO_CREATE | Context.BIND_ABOVE_CLIENT | Context.BIND_IMPORTANT, context.getLastBindFlags());
+            ServiceConnector.unbind(target);
+        } finally {
+            ServiceConnector.setBindFlags(INTENT_TEST_SERVICE, 0);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testFallbackIntents() throws Exception {
+        context.addService(INTENT_REFUSING_SERVICE, newService()).setBindRefused(true);
+        FallbackTarget target = new FallbackTarget();
+        ServiceConnector.bind(target, context);
+        while (target.testService == null) {
+            Thread.sleep(5);
+        }
+
+        Assert.assertEquals(3, target.testService.echo(3));
+        Assert.assertEquals("Expected the refusing service tried first", 2, context.getBindCalls());
+        Assert.assertEquals(1, service.getConnectionCount());
+        ServiceConnector.unbind(target);
+
+        target = new FallbackTarget();
+        ServiceConnector.bind(target, context);
+        ServiceConnector.waitForConnected(TIMEOUT, INTENT_REFUSING_SERVICE);
+        Assert.assertEquals("Expected the service bound last tried first", 3, context.getBindCalls());
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testExplicitComponent() throws Exception {
+        ExplicitTarget target = new ExplicitTarget();
+        ServiceConnector.bind(target, context);
+        while (target.testService == null) {
+            Thread.sleep(5);
+        }
+
+        Assert.assertEquals(3, target.testService.echo(3));
+        Assert.assertEquals(1, service.getConnectionCount());
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testStableProxy() throws Exception {
+        StableTarget target = new StableTarget();
+        ServiceConnector.bind(target, context);
+        ITestService stableService = target.testService;
+        Assert.assertNotNull("Expected the proxy injected on bind", stableService);
+
+        ServiceConnector.waitForConnected(TIMEOUT, INTENT_TEST_SERVICE);
+        Assert.assertEquals(3, stableService.echo(3));
+
+        service.kill(true);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while ((service.getStartCount() < 2 || !ServiceConnector.isConnected(INTENT_TEST_SERVICE))
+                && System.currentTimeMillis() < deadline) {
+            Assert.assertSame("Expected the proxy kept across reconnects", stableService, target.testService);
+            Thread.sleep(5);
+        }
+        Assert.assertSame(stableService, target.testService);
+        Assert.assertEquals(4, stableService.echo(4));
+
+        ServiceConnector.unbind(target);
+        Assert.assertNull("Expected field reset on unbind", target.testService);
+    }
+
+    @Test(timeout = 10000)
+    public void testStableProxyMismatchLogged() throws Exception {
+        StableTarget stableTarget = new StableTarget();
+        FakeTarget plainTarget = new FakeTarget();
+        ServiceConnector.bind(stableTarget, context);
+        ShadowLog.clear();
+        ServiceConnector.bind(plainTarget, context);
+
+        List<ShadowLog.LogItem> warnings = ShadowLog.getLogsForTag("ServiceConnector");
+        Assert.assertEquals("Expected the ignored stableProxy logged", 1, warnings.size());
+        Assert.assertTrue(warnings.get(0).msg.contains("ignoring stableProxy=false"));
+        Assert.assertSame("Expected the stable proxy injected in both", stableTarget.testService, plainTarget.testService);
+
+        ServiceConnector.unbind(plainTarget);
+        ServiceConnector.unbind(stableTarget);
+    }
+
+    @Test(timeout = 10000)
+    public void testIdempotentCallRetried() throws Exception {
+        FakeContext mainLooperContext = new FakeContext(true);
+        FakeService mainLooperService = mainLooperContext.addService(INTENT_TEST_SERVICE, newService());
+        FakeTarget target = new FakeTarget();
+        ServiceConnector.bind(target, mainLooperContext);
+        Assert.assertEquals(Boolean.TRUE, nextConnectionEventOnMainLooper(target));
+        final ITestService testService = target.testService;
+        testService.echo(1);
+        Assert.assertEquals(1, testService.getCallCount());
+
+        mainLooperService.kill(true);
+        //the service cannot reconnect while the main thread waits for it
+        long start = System.nanoTime();
+        try {
+            testService.getCallCount();
+            Assert.fail("Expected the call failed on the main thread");
+        } catch (DeadObjectException expected) {
+        }
+        Assert.assertTrue("Expected no wait on the main thread",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        Assert.assertEquals(1L, (long) ServiceConnector.getCallMetrics(INTENT_TEST_SERVICE).get(CallRetrier.METRIC_RETRY_TIMEOUTS));
+
+        final List<Integer> callCounts = new CopyOnWriteArrayList<>();
+        Thread backgroundCall = startCall(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    callCounts.add(testService.getCallCount());
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        });
+        //waiting for the service before it reconnects
+        while (backgroundCall.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(5);
+        }
+        while (backgroundCall.isAlive()) {
+            ShadowLooper.runUiThreadTasks();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Expected the call retried on the restarted service", Collections.singletonList(0), callCounts);
+        Assert.assertEquals(1L, (long) ServiceConnector.getCallMetrics(INTENT_TEST_SERVICE).get(CallRetrier.METRIC_RETRIED_CALLS));
+
+        ServiceConnector.unbind(target);
+        Assert.assertEquals(0, mainLooperContext.getBindingCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testBlockedQueueRejectsOnMainThread() throws Exception {
+        ServiceConnector.queueCalls(INTENT_TEST_SERVICE, new CallQueue.Policy(1, OverflowPolicy.BLOCK, TIMEOUT));
+        try {
+            FakeTarget target = new FakeTarget();
+            ServiceConnector.bind(target, context);
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            ITestService testService = target.testService;
+            service.kill(false);
+            Assert.assertEquals(Boolean.FALSE, target.nextConnectionEvent(TIMEOUT));
+
+            testService.send(1);
+            long start = System.nanoTime();
+            try {
+                testService.send(2);
+                Assert.fail("Expected the call rejected while the queue is full");
+            } catch (RejectedExecutionException expected) {
+            }
+            Assert.assertTrue("Expected no wait for room on the main thread",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+            Assert.assertEquals(1L, (long) ServiceConnector.getCallMetrics(INTENT_TEST_SERVICE).get(CallQueue.METRIC_REJECTED_QUEUED_CALLS));
+            ServiceConnector.unbind(target);
+        } finally {
+            ServiceConnector.queueCalls(INTENT_TEST_SERVICE, null);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCallsQueuedWhileDisconnected() throws Exception {
+        ServiceConnector.queueCalls(INTENT_TEST_SERVICE, new CallQueue.Policy(2, OverflowPolicy.DROP_OLDEST, 0));
+        try {
+            FakeTarget target = new FakeTarget();
+            ServiceConnector.bind(target, context);
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            ITestService testService = target.testService;
+
+            service.setBindLatency(200);
+            service.kill(true);
+            testService.send(1);
+            testService.send(2);
+            testService.send(3);
+
+            TestServiceImpl restartedService = (TestServiceImpl) service.getBinder();
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while ((restartedService == null || restartedService.getSentValues().size() < 2)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+                restartedService = (TestServiceImpl) service.getBinder();
+            }
+            Assert.assertNotNull(restartedService);
+            Assert.assertEquals("Expected the newest calls sent in order", Arrays.asList(2, 3), restartedService.getSentValues());
+            Map<String, Long> metrics = ServiceConnector.getCallMetrics(INTENT_TEST_SERVICE);
+            Assert.assertEquals(3L, (long) metrics.get(CallQueue.METRIC_QUEUED_CALLS));
+            Assert.assertEquals(1L, (long) metrics.get(CallQueue.METRIC_DROPPED_QUEUED_CALLS));
+
+            testService.send(4);
+            while (restartedService.getSentValues().size() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(Arrays.asList(2, 3, 4), restartedService.getSentValues());
+            ServiceConnector.unbind(target);
+        } finally {
+            ServiceConnector.queueCalls(INTENT_TEST_SERVICE, null);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentCallsLimited() throws Exception {
+        ServiceConnector.limitConcurrentCalls(INTENT_TEST_SERVICE, new CallBulkhead.Policy(1, 4, TIMEOUT));
+        try {
+            FakeTarget target = new FakeTarget();
+            ServiceConnector.bind(target, context);
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            final ITestService testService = target.testService;
+            ((TestServiceImpl) service.getBinder()).setCallLatency(300);
+
+            final List<Integer> completed = new CopyOnWriteArrayList<>();
+            Thread slowCall = startCall(new Runnable() {
+                @Override
+                public void run() {
+                    completed.add(echo(testService, 1));
+                }
+            });
+            Thread.sleep(100);
+            Thread backgroundCall = startCall(new Runnable() {
+                @Override
+                public void run() {
+                    completed.add(echo(testService, 2));
+                }
+            });
+            Thread.sleep(50);
+            Thread priorityCall = startCall(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        testService.send(3);
+                        completed.add(3);
+                    } catch (Exception ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+            });
+            slowCall.join();
+            backgroundCall.join();
+            priorityCall.join();
+
+            Assert.assertEquals(3, completed.size());
+            Assert.assertTrue("Expected the waiting call of higher priority first", completed.indexOf(3) < completed.indexOf(2));
+            Map<String, Long> metrics = ServiceConnector.getCallMetrics(INTENT_TEST_SERVICE);
+            Assert.assertEquals(2L, (long) metrics.get(CallBulkhead.METRIC_QUEUED_CALLS));
+            Assert.assertEquals(2L, (long) metrics.get(CallBulkhead.METRIC_MAX_QUEUE_DEPTH));
+            Assert.assertEquals(0L, (long) metrics.get(CallBulkhead.METRIC_QUEUE_DEPTH));
+            Assert.assertTrue(metrics.get(CallBulkhead.METRIC_QUEUE_WAIT_TIME) > 0);
+            ServiceConnector.unbind(target);
+        } finally {
+            ServiceConnector.limitConcurrentCalls(INTENT_TEST_SERVICE, null);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCallRateLimited() throws Exception {
+        ServiceConnector.limitCallRate(INTENT_TEST_SERVICE, new CallRateLimiter.Policy(1, 2, ThrottlePolicy.SHED, 0));
+        try {
+            FakeTarget target = new FakeTarget();
+            ServiceConnector.bind(target, context);
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            for (int i = 1; i <= 5; i++) {
+                target.testService.send(i);
+            }
+            Assert.assertEquals("Expected the calls beyond the burst shed", 0, target.testService.echo(6));
+
+            Assert.assertEquals(Arrays.asList(1, 2), ((TestServiceImpl) service.getBinder()).getSentValues());
+            Map<String, Long> metrics = ServiceConnector.getCallMetrics(INTENT_TEST_SERVICE);
+            Assert.assertEquals(4L, (long) metrics.get(CallRateLimiter.METRIC_THROTTLED_CALLS));
+            Assert.assertEquals(4L, (long) metrics.get(CallRateLimiter.METRIC_SHED_CALLS));
+            ServiceConnector.unbind(target);
+        } finally {
+            ServiceConnector.limitCallRate(INTENT_TEST_SERVICE, null);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCallsMonitored() throws Exception {
+        ServiceConnector.monitorCalls(new CallMonitor.Policy(true, 100, 1, true));
+        ServiceConnector.getCallReports().clear();
+        try {
+            FakeTarget target = new FakeTarget();
+            ServiceConnector.bind(target, context);
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            final ITestService testService = target.testService;
+            testService.echo(1);
+            ((TestServiceImpl) service.getBinder()).setCallLatency(150);
+            startCall(new Runnable() {
+                @Override
+                public void run() {
+                    echo(testService, 2);
+                }
+            }).join();
+
+            List<CallReport> reports = ServiceConnector.getCallReports().getReports();
+            Assert.assertEquals(2, reports.size());
+            CallReport mainThreadCall = reports.get(0);
+            Assert.assertTrue("Expected the call on the main thread reported", mainThreadCall.isMainThread());
+            Assert.assertEquals(ITestService.class.getName(), mainThreadCall.getServiceClassName());
+            Assert.assertEquals("echo", mainThreadCall.getMethodName());
+            Assert.assertNotNull(mainThreadCall.getStackTrace());
+            CallReport slowCall = reports.get(1);
+            Assert.assertFalse(slowCall.isMainThread());
+            Assert.assertTrue("Expected the slow call reported", slowCall.getDuration() >= 100);
+            ServiceConnector.unbind(target);
+        } finally {
+            ServiceConnector.monitorCalls(null);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testQueuedCallsMonitoredWhenSent() throws Exception {
+        ServiceConnector.monitorCalls(new CallMonitor.Policy(true, 0, 1, false));
+        ServiceConnector.queueCalls(INTENT_TEST_SERVICE, new CallQueue.Policy(2, OverflowPolicy.DROP_OLDEST, 0));
+        ServiceConnector.getCallReports().clear();
+        try {
+            FakeTarget target = new FakeTarget();
+            ServiceConnector.bind(target, context);
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            ITestService testService = target.testService;
+            service.setBindLatency(300);
+            service.kill(true);
+            Assert.assertEquals(Boolean.FALSE, target.nextConnectionEvent(TIMEOUT));
+
+            testService.send(1);
+            Assert.assertTrue("Expected no report of the queued call", ServiceConnector.getCallReports().getReports().isEmpty());
+
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (ServiceConnector.getCallReports().getReports().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            List<CallReport> reports = ServiceConnector.getCallReports().getReports();
+            Assert.assertEquals(1, reports.size());
+            Assert.assertEquals("send", reports.get(0).getMethodName());
+            Assert.assertFalse("Expected the call reported as sent from the queue", reports.get(0).isMainThread());
+            Assert.assertTrue("Expected the wait in the queue left out", reports.get(0).getDuration() < 300);
+            ServiceConnector.unbind(target);
+        } finally {
+            ServiceConnector.queueCalls(INTENT_TEST_SERVICE, null);
+            ServiceConnector.monitorCalls(null);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testTracedCalls() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        ServiceTrace.setSink(sink);
+        ServiceConnector.setEnableTracing(true);
+        try {
+            FakeTarget target = new FakeTarget();
+            ServiceConnector.bind(target, context);
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            Assert.assertEquals(5, target.testService.echo(5));
+            ServiceConnector.unbind(target);
+        } finally {
+            ServiceConnector.setEnableTracing(false);
+            ServiceTrace.setSink(null);
+        }
+
+        //the connected callbacks end their section on the callback thread
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (sink.getOpenSections() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Expected each section ended", 0, sink.getOpenSections());
+        Assert.assertEquals("Expected no end without a begin", 0, sink.getUnmatchedEnds());
+        List<String> sections = sink.getSections();
+        Assert.assertTrue(sections.toString(), sections.contains("ServiceConnector.bind " + FakeTarget.class.getName()));
+        Assert.assertTrue(sections.toString(), sections.contains("ServiceConnector.bindService " + INTENT_TEST_SERVICE));
+        Assert.assertTrue(sections.toString(), sections.contains("ServiceConnector.onServiceConnected " + INTENT_TEST_SERVICE));
+        Assert.assertTrue(sections.toString(), sections.contains("ServiceConnector.call " + INTENT_TEST_SERVICE + " echo"));
+    }
+
+    @Test(timeout = 10000)
+    public void testAsyncCalls() throws Exception {
+        ITestServiceAsync asyncService = ServiceConnector.getAsync(INTENT_TEST_SERVICE, ITestService.class, ITestServiceAsync.class);
+        try {
+            asyncService.echo(1).get(TIMEOUT, TimeUnit.MILLISECONDS);
+            Assert.fail("Expected the call to fail while not bound");
+        } catch (ExecutionException ex) {
+            Assert.assertTrue(ex.getCause() instanceof DeadObjectException);
+        }
+
+        FakeTarget target = new FakeTarget();
+        ServiceConnector.bind(target, context);
+        Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+        Future<Integer> echo = asyncService.echo(42);
+        Future<?> send = asyncService.send(7);
+        Assert.assertEquals(42, (int) echo.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertNull(send.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(Arrays.asList(7), ((TestServiceImpl) service.getBinder()).getSentValues());
+        ServiceConnector.unbind(target);
+
+        try {
+            ServiceConnector.getAsync(INTENT_TEST_SERVICE, ITestService.class, Runnable.class);
+            Assert.fail("Expected a method not returning a future to be refused");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testRecordedCallsReplayed() throws Exception {
+        File log = new File(context.getCacheDir(), "calls.log");
+        ServiceConnector.recordCalls(INTENT_TEST_SERVICE, log);
+        try {
+            FakeTarget target = new FakeTarget();
+            ServiceConnector.bind(target, context);
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            target.testService.send(1);
+            ServiceConnector.unbind(target);
+
+            //the recording goes on with the next connection
+            target = new FakeTarget();
+            ServiceConnector.bind(target, context);
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            target.testService.send(2);
+            Assert.assertEquals(3, target.testService.echo(3));
+            Assert.assertEquals(2L, (long) ServiceConnector.getCallMetrics(INTENT_TEST_SERVICE).get(CallRecorder.METRIC_RECORDED_CALLS));
+            ServiceConnector.unbind(target);
+        } finally {
+            ServiceConnector.recordCalls(INTENT_TEST_SERVICE, null);
+        }
+        //the log is closed in the background
+        while (countRecords(log) < 3) {
+            Thread.sleep(10);
+        }
+
+        FakeTarget target = new FakeTarget();
+        ServiceConnector.bind(target, context);
+        Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+        CallReplayer.Report report = ServiceConnector.replayCalls(INTENT_TEST_SERVICE, log, 0, 2);
+        Assert.assertEquals(3, report.getCalls());
+        Assert.assertEquals(0, report.getFailedCalls());
+        Assert.assertEquals(0, report.getSkippedCalls());
+        Assert.assertTrue(report.getLatency(50) <= report.getLatency(100));
+        List<Integer> sentValues = new ArrayList<>(((TestServiceImpl) service.getBinder()).getSentValues());
+        Collections.sort(sentValues);
+        Assert.assertEquals(Arrays.asList(1, 1, 2, 2), sentValues);
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testReplayLatencyFromDueTime() throws Exception {
+        File log = new File(context.getCacheDir(), "burst.log");
+        ServiceConnector.recordCalls(INTENT_TEST_SERVICE, log);
+        try {
+            FakeTarget target = new FakeTarget();
+            ServiceConnector.bind(target, context);
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            for (int i = 0; i < 3; i++) {
+                target.testService.echo(i);
+            }
+            ServiceConnector.unbind(target);
+        } finally {
+            ServiceConnector.recordCalls(INTENT_TEST_SERVICE, null);
+        }
+        while (countRecords(log) < 3) {
+            Thread.sleep(10);
+        }
+
+        FakeTarget target = new FakeTarget();
+        ServiceConnector.bind(target, context);
+        Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+        ((TestServiceImpl) service.getBinder()).setCallLatency(100);
+        //the burst is replayed as recorded by a single thread, so the last call waits for the two before
+        CallReplayer.Report report = ServiceConnector.replayCalls(INTENT_TEST_SERVICE, log, 1, 1);
+        Assert.assertEquals(3, report.getCalls());
+        Assert.assertTrue("Expected the wait for a thread in the latency, got " + report,
+                report.getLatency(100) >= TimeUnit.MILLISECONDS.toMicros(250));
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testReplayInCallOrder() throws Exception {
+        File log = new File(context.getCacheDir(), "overlap.log");
+        ServiceConnector.recordCalls(INTENT_TEST_SERVICE, log);
+        try {
+            FakeTarget target = new FakeTarget();
+            ServiceConnector.bind(target, context);
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            final ITestService testService = target.testService;
+            TestServiceImpl serviceImpl = (TestServiceImpl) service.getBinder();
+            serviceImpl.setCallLatency(300);
+            Thread slowCall = startCall(new Runnable() {
+                @Override
+                public void run() {
+                    echo(testService, 1);
+                }
+            });
+            Thread.sleep(150);
+            testService.send(2);
+            slowCall.join();
+            serviceImpl.setCallLatency(0);
+            ServiceConnector.unbind(target);
+        } finally {
+            ServiceConnector.recordCalls(INTENT_TEST_SERVICE, null);
+        }
+        while (countRecords(log) < 2) {
+            Thread.sleep(10);
+        }
+
+        FakeTarget target = new FakeTarget();
+        ServiceConnector.bind(target, context);
+        Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+        //the slow call completed last, but is replayed first, so that neither is made late
+        CallReplayer.Report report = ServiceConnector.replayCalls(INTENT_TEST_SERVICE, log, 1, 2);
+        Assert.assertEquals(2, report.getCalls());
+        Assert.assertTrue("Expected the calls made when due, got " + report,
+                report.getLatency(100) < TimeUnit.MILLISECONDS.toMicros(100));
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testClosedRecordingNotCounted() throws Exception {
+        File log = new File(context.getCacheDir(), "closed.log");
+        ServiceConnector.recordCalls(INTENT_TEST_SERVICE, log);
+        FakeTarget target = new FakeTarget();
+        try {
+            ServiceConnector.bind(target, context);
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+            target.testService.send(1);
+        } finally {
+            ServiceConnector.recordCalls(INTENT_TEST_SERVICE, null);
+        }
+        target.testService.send(2);
+        target.testService.send(3);
+
+        Map<String, Long> metrics = ServiceConnector.getCallMetrics(INTENT_TEST_SERVICE);
+        Assert.assertEquals(1L, (long) metrics.get(CallRecorder.METRIC_RECORDED_CALLS));
+        Assert.assertNull("Expected the calls after the recording not counted as dropped",
+                metrics.get(CallRecorder.METRIC_DROPPED_RECORDS));
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testBindFailure() throws Exception {
+        service.setBindException(new SecurityException("Not allowed"));
+        FakeTarget target = new FakeTarget();
+        ServiceConnector.bind(target, context);
+
+        Exception failure = target.nextFailure(TIMEOUT);
+        Assert.assertTrue("Expected bind failure callback", failure instanceof SecurityException);
+        Assert.assertFalse("Expected service not to be connected", ServiceConnector.isConnected(INTENT_TEST_SERVICE));
+
+        ServiceConnector.unbind(target);
+    }
+
+    @Test(timeout = 10000)
+    public void testSharedConnection() throws Exception {
+        FakeTarget firstTarget = new FakeTarget();
+        FakeTarget secondTarget = new FakeTarget();
+        ServiceConnector.bind(firstTarget, context);
+        Assert.assertEquals(Boolean.TRUE, firstTarget.nextConnectionEvent(TIMEOUT));
+        ServiceConnector.bind(secondTarget, context);
+        Assert.assertEquals(Boolean.TRUE, secondTarget.nextConnectionEvent(TIMEOUT));
+
+        Assert.assertEquals("Expected one connection for both targets", 1, service.getConnectionCount());
+
+        ServiceConnector.unbind(firstTarget);
+        Assert.assertNull(firstTarget.testService);
+        Assert.assertNotNull("Expected second target still connected", secondTarget.testService);
+
+        ServiceConnector.unbind(secondTarget);
+        Assert.assertEquals(0, service.getConnectionCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testScopes() throws Exception {
+        ServiceConnector firstScope = ServiceConnector.newScope(true);
+        ServiceConnector secondScope = ServiceConnector.newScope(true);
+        ServiceConnector separateScope = ServiceConnector.newScope(false);
+        FakeTarget firstTarget = new FakeTarget();
+        FakeTarget secondTarget = new FakeTarget();
+        FakeTarget separateTarget = new FakeTarget();
+        firstScope.bindTarget(firstTarget, context);
+        secondScope.bindTarget(secondTarget, context);
+        separateScope.bindTarget(separateTarget, context);
+        Assert.assertEquals(Boolean.TRUE, firstTarget.nextConnectionEvent(TIMEOUT));
+        Assert.assertEquals(Boolean.TRUE, secondTarget.nextConnectionEvent(TIMEOUT));
+        Assert.assertEquals(Boolean.TRUE, separateTarget.nextConnectionEvent(TIMEOUT));
+
+        Assert.assertEquals("Expected one connection shared by two scopes, one for the separate scope",
+                2, service.getConnectionCount());
+        Assert.assertTrue(firstScope.isServiceConnected(INTENT_TEST_SERVICE));
+        Assert.assertFalse("Expected the default connector not to see the scopes",
+                ServiceConnector.isConnected(INTENT_TEST_SERVICE));
+
+        firstScope.close();
+        Assert.assertNull(firstTarget.testService);
+        Assert.assertEquals("Expected shared connection kept for the second scope", 2, service.getConnectionCount());
+        Assert.assertEquals(5, secondTarget.testService.echo(5));
+
+        secondScope.unbindTarget(secondTarget);
+        Assert.assertEquals("Expected shared connection released", 1, service.getConnectionCount());
+        separateScope.close();
+        Assert.assertEquals(0, service.getConnectionCount());
+
+        try {
+            firstScope.bindTarget(firstTarget, context);
+            Assert.fail("Expected closed scope not to bind");
+        } catch (IllegalStateException expected) {
+        }
+        secondScope.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testSingleBindForManyTargets() throws Exception {
+        service.setBindLatency(200);
+        ServiceConnector scope = ServiceConnector.newScope(true);
+        FakeTarget[] targets = {new FakeTarget(), new FakeTarget(), new FakeTarget()};
+        ServiceConnector.bind(targets[0], context);
+        ServiceConnector.bind(targets[1], context);
+        scope.bindTarget(targets[2], context);
+        for (FakeTarget target : targets) {
+            Assert.assertEquals(Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+        }
+
+        Assert.assertEquals("Expected a single bindService call", 1, context.getBindCalls());
+        Assert.assertEquals(1, service.getConnectionCount());
+
+        ServiceConnector.unbind(targets[0]);
+        ServiceConnector.unbind(targets[1]);
+        Assert.assertEquals("Expected connection kept for the scope", 1, service.getConnectionCount());
+        Assert.assertNotNull(targets[2].testService);
+        scope.close();
+        Assert.assertEquals(0, service.getConnectionCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testBindsWithApplicationContext() throws Exception {
+        //a component context, that must not be held on to by the connection
+        Context componentContext = new ContextWrapper(context) {
+            @Override
+            public boolean bindService(Intent service, ServiceConnection connection, int flags) {
+                throw new AssertionError("Expected bind with the application context");
+            }
+        };
+        FakeTarget target = new FakeTarget();
+        ServiceConnector.bind(target, componentContext);
+
+        Assert.assertEquals("Expected connected callback", Boolean.TRUE, target.nextConnectionEvent(TIMEOUT));
+        Assert.assertEquals(1, service.getConnectionCount());
+
+        ServiceConnector.unbind(target);
+    }
+
+    /**
+     * Waits for the next connection callback, running the tasks of the main looper meanwhile
+     */
+    private static Boolean nextConnectionEventOnMainLooper(FakeTarget target) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        Boolean connected = null;
+        while (connected == null && System.currentTimeMillis() < deadline) {
+            ShadowLooper.runUiThreadTasks();
+            connected = target.nextConnectionEvent(10);
+        }
+        return connected;
+    }
+
+    private static Thread startCall(Runnable call) {
+        Thread thread = new Thread(call);
+        thread.start();
+        return thread;
+    }
+
+    private static int echo(ITestService testService, int value) {
+        try {
+            return testService.echo(value);
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static int countRecords(File log) {
+        try {
+            CallLog.Reader reader = new CallLog.Reader(log);
+            try {
+                int count = 0;
+                while (reader.next() != null) {
+                    count++;
+                }
+                return count;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ex) {
+            //not written out yet
+            return 0;
+        }
+    }
+
+    private static FakeService newService() {
+        return new FakeService(new FakeService.BinderFactory() {
+            @Override
+            public FakeBinder create() {
+                return new TestServiceImpl();
+            }
+        });
+    }
+
+    /**
+     * A target binding to the test service above its own priority
+     */
+    public static class PriorityTarget {
+
+        @ServiceInfo(serviceIntent = INTENT_TEST_SERVICE, bindFlags = Context.BIND_ABOVE_CLIENT)
+        ITestService testService;
+    }
+
+    /**
+     * A target of a service that refuses binds, falling back to the test service
+     */
+    public static class FallbackTarget {
+
+        @ServiceInfo(serviceIntent = INTENT_REFUSING_SERVICE, fallbackIntents = {INTENT_UNRESOLVED_SERVICE, INTENT_TEST_SERVICE})
+        volatile ITestService testService;
+    }
+
+    /**
+     * A target of an intent that does not resolve, naming the test service explicitly
+     */
+    public static class ExplicitTarget {
+
+        @ServiceInfo(serviceIntent = INTENT_UNRESOLVED_SERVICE, servicePackage = FakeContext.PACKAGE_NAME,
+                serviceClassName = INTENT_TEST_SERVICE)
+        volatile ITestService testService;
+    }
+
+    /**
+     * Async variant of {@link ITestService}
+     */
+    public interface ITestServiceAsync {
+
+        Future<Integer> echo(int value);
+
+        Future<?> send(int value);
+    }
+
+    /**
+     * Records the trace sections, matching each end with the last section begun on its thread
+     */
+    private static class RecordingSink implements ServiceTrace.Sink {
+
+        private final List<String> sections = new CopyOnWriteArrayList<>();
+        private final Map<Thread, Integer> openSections = new HashMap<>();
+        private int unmatchedEnds;
+
+        @Override
+        public synchronized void beginSection(String name) {
+            sections.add(name);
+            Integer open = openSections.get(Thread.currentThread());
+            openSections.put(Thread.currentThread(), open != null ? open + 1 : 1);
+        }
+
+        @Override
+        public synchronized void endSection() {
+            Integer open = openSections.get(Thread.currentThread());
+            if (open == null) {
+                unmatchedEnds++;
+            } else if (open == 1) {
+                openSections.remove(Thread.currentThread());
+            } else {
+                openSections.put(Thread.currentThread(), open - 1);
+            }
+        }
+
+        List<String> getSections() {
+            return sections;
+        }
+
+        synchronized int getOpenSections() {
+            int count = 0;
+            for (int open : openSections.values()) {
+                count += open;
+            }
+            return count;
+        }
+
+        synchronized int getUnmatchedEnds() {
+            return unmatchedEnds;
+        }
+    }
+
+    /**
+     * A target of the test service through a stable proxy
+     */
+    public static class StableTarget {
+
+        @ServiceInfo(serviceIntent = INTENT_TEST_SERVICE, stableProxy = true)
+        volatile ITestService testService;
+    }
+}
@@ -0,0 +1,307 @@
+package util.service;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import util.service.annotation.ServiceConnectionCallback;
+import util.service.annotation.ServiceConnectionFailureCallback;
+import util.service.annotation.ServiceInfo;
+
+import static util.service.ServiceConnectorHostTest.INTENT_TEST_SERVICE;
+
+/**
+ * Hammers bind, unbind and service connects/disconnects from many threads at once,
+ * and checks that the connector ends up consistent
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class ServiceConnectorStressTest {
+
+    static final String INTENT_OTHER_SERVICE = "util.service.fake.OTHER_SERVICE";
+    private static final String TAG = "ServiceConnector";
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 300;
+    private static final long TIMEOUT = 5000;
+
+    private final List<Throwable> failures = new CopyOnWriteArrayList<>();
+    private FakeContext context;
+    private FakeService testService;
+    private FakeService otherService;
+    private long seed;
+
+    @Before
+    public void setup() {
+        seed = System.nanoTime();
+        context = new FakeContext();
+        testService = context.addService(INTENT_TEST_SERVICE, newService());
+        otherService = context.addService(INTENT_OTHER_SERVICE, newService());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        awaitNoBindings();
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentBindUnbind() throws Exception {
+        final List<StressTarget> unboundTargets = new CopyOnWriteArrayList<>();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread killer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(seed);
+                while (running.get()) {
+                    (random.nextBoolean() ? testService : otherService).kill(true);
+                    sleep(random.nextInt(20));
+                }
+            }
+        });
+        killer.start();
+
+        runConcurrently(new Worker() {
+            @Override
+            public void run(Random random) throws Exception {
+                List<StressTarget> boundTargets = new ArrayList<>();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    if (boundTargets.isEmpty() || random.nextInt(3) > 0) {
+                        StressTarget target = random.nextBoolean() ? new StressTarget() : new StressSubTarget();
+                        ServiceConnector.bind(target, context);
+                        boundTargets.add(target);
+                        if (random.nextInt(10) == 0) {
+                            Assert.assertTrue("Expected services injected, seed " + seed, target.awaitServices(TIMEOUT));
+                        }
+                    } else {
+                        StressTarget target = boundTargets.remove(random.nextInt(boundTargets.size()));
+                        ServiceConnector.unbind(target);
+                        Assert.assertTrue("Expected fields reset on unbind, seed " + seed, target.isReset());
+                        unboundTargets.add(target);
+                    }
+                }
+                for (StressTarget target : boundTargets) {
+                    Assert.assertTrue("Expected services injected, seed " + seed, target.awaitServices(TIMEOUT));
+                }
+                for (StressTarget target : boundTargets) {
+                    ServiceConnector.unbind(target);
+                    unboundTargets.add(target);
+                }
+            }
+        });
+        running.set(false);
+        killer.join();
+
+        awaitNoBindings();
+        for (StressTarget target : unboundTargets) {
+            Assert.assertTrue("Expected no service injected after unbind, seed " + seed, target.isReset());
+        }
+        assertConsistent();
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentFirstBind() throws Exception {
+        final List<StressTarget> targets = new CopyOnWriteArrayList<>();
+        runConcurrently(new Worker() {
+            @Override
+            public void run(Random random) throws Exception {
+                StressTarget target = new StressTarget();
+                targets.add(target);
+                ServiceConnector.bind(target, context);
+            }
+        });
+
+        for (StressTarget target : targets) {
+            Assert.assertTrue("Expected services injected", target.awaitServices(TIMEOUT));
+        }
+        Assert.assertEquals("Expected a single connection", 1, testService.getConnectionCount());
+        Assert.assertEquals("Expected a single connection", 1, otherService.getConnectionCount());
+
+        for (StressTarget target : targets) {
+            ServiceConnector.unbind(target);
+        }
+        awaitNoBindings();
+        assertConsistent();
+    }
+
+    @Test(timeout = 60000)
+    public void testUnbindRacingBind() throws Exception {
+        runConcurrently(new Worker() {
+            @Override
+            public void run(Random random) throws Exception {
+                //one target stays bound while others come and go, so that the last unbind of a service
+                //races with the first bind of the next target
+                StressTarget keeper = new StressTarget();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    StressTarget target = new StressTarget();
+                    ServiceConnector.bind(target, context);
+                    if (i % 50 == 0) {
+                        ServiceConnector.unbind(keeper);
+                        keeper = new StressTarget();
+                        ServiceConnector.bind(keeper, context);
+                    }
+                    ServiceConnector.unbind(target);
+                }
+                Assert.assertTrue("Expected services injected, seed " + seed, keeper.awaitServices(TIMEOUT));
+                ServiceConnector.unbind(keeper);
+            }
+        });
+
+        awaitNoBindings();
+        assertConsistent();
+    }
+
+    /**
+     * Runs the worker on {@link #THREADS} threads at once, failing if any of them fails
+     */
+    private void runConcurrently(final Worker worker) throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            final Random random = new Random(seed + i);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        barrier.await();
+                        worker.run(random);
+                    } catch (Throwable throwable) {
+                        failures.add(throwable);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "stress-" + i).start();
+        }
+        Assert.assertTrue("Workers did not finish, seed " + seed, done.await(50, TimeUnit.SECONDS));
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError(failures.size() + " workers failed, seed " + seed);
+            error.initCause(failures.get(0));
+            throw error;
+        }
+    }
+
+    /**
+     * Checks that nothing is left behind in the connector, and that nothing failed in its callbacks
+     */
+    private void assertConsistent() throws Exception {
+        Assert.assertTrue("Expected no handlers left", getConnectorMap("serviceHandlerMap").isEmpty());
+        Assert.assertTrue("Expected no fields left", getConnectorMap("serviceInfoMap").isEmpty());
+        Assert.assertEquals(0, testService.getConnectionCount());
+        Assert.assertEquals(0, otherService.getConnectionCount());
+        for (ShadowLog.LogItem logItem : ShadowLog.getLogsForTag(TAG)) {
+            if (logItem.throwable != null) {
+                AssertionError error = new AssertionError("Unexpected failure: " + logItem.msg);
+                error.initCause(logItem.throwable);
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * Waits for the connections to be released, as they are unbound on the connector threads
+     */
+    private void awaitNoBindings() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (context.getBindingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("Expected no bindings left", 0, context.getBindingCount());
+    }
+
+    private Map<?, ?> getConnectorMap(String name) throws Exception {
+        Method getInstance = ServiceConnector.class.getDeclaredMethod("getInstance");
+        getInstance.setAccessible(true);
+        Field field = ServiceConnector.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return (Map<?, ?>) field.get(getInstance.invoke(null));
+    }
+
+    private static FakeService newService() {
+        return new FakeService(new FakeService.BinderFactory() {
+            @Override
+            public FakeBinder create() {
+                return new TestServiceImpl();
+            }
+        });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Worker {
+        void run(Random random) throws Exception;
+    }
+
+    /**
+     * A target of both services, with callbacks
+     */
+    public static class StressTarget {
+
+        @ServiceInfo(serviceIntent = INTENT_TEST_SERVICE)
+        volatile ITestService testService;
+
+        @ServiceInfo(serviceIntent = INTENT_OTHER_SERVICE)
+        volatile ITestService otherService;
+
+        @ServiceConnectionCallback
+        public void onServiceConnectionChanged(String serviceIntent, boolean connected) {
+        }
+
+        @ServiceConnectionFailureCallback
+        public void onServiceConnectionFailed(String serviceIntent, Exception exception) {
+        }
+
+        /**
+         * Waits until both the services are injected
+         */
+        boolean awaitServices(long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (testService == null || otherService == null) {
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+                Thread.sleep(5);
+            }
+            return true;
+        }
+
+        boolean isReset() {
+            return testService == null && otherService == null;
+        }
+    }
+
+    /**
+     * A target that gets the test service from its parent, and declares its own field for it as well
+     */
+    public static class StressSubTarget extends StressTarget {
+
+        @ServiceInfo(serviceIntent = INTENT_TEST_SERVICE)
+        volatile ITestService subTestService;
+
+        @Override
+        boolean isReset() {
+            return super.isReset() && subTestService == null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package util.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLog;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import util.service.handler.AbstractServiceHandler;
+import util.service.handler.AidlServiceHandler;
+import util.service.handler.ServiceListener;
+
+/**
+ * Tests the handlers shared between connectors
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class ServiceHandlerPoolTest {
+
+    private static final String SERVICE_INTENT = "util.service.fake.POOLED_SERVICE";
+    private static final String CONFIGURATION = "ITestService{bindFlags=1}";
+
+    private final ServiceHandlerPool serviceHandlerPool = new ServiceHandlerPool();
+    private final AtomicInteger destroyCount = new AtomicInteger();
+    private final ServiceHandlerPool.HandlerFactory handlerFactory = new ServiceHandlerPool.HandlerFactory() {
+        @Override
+        public AbstractServiceHandler create(ExecutorService executor, ServiceListener serviceListener) {
+            return new AidlServiceHandler(RuntimeEnvironment.application, SERVICE_INTENT, ITestService.class, executor, serviceListener, false) {
+                @Override
+                public void destroy() {
+                    destroyCount.incrementAndGet();
+                    super.destroy();
+                }
+            };
+        }
+    };
+
+    @Test
+    public void testReacquiredBeforeRelease() {
+        ServiceListener connector = new NoOpServiceListener();
+        AbstractServiceHandler serviceHandler = serviceHandlerPool.acquire(SERVICE_INTENT, CONFIGURATION, connector, handlerFactory);
+
+        //an unbind removed the handler, and a bind acquires it again before the unbind releases it
+        Assert.assertSame(serviceHandler, serviceHandlerPool.acquire(SERVICE_INTENT, CONFIGURATION, connector, handlerFactory));
+        serviceHandlerPool.release(SERVICE_INTENT, connector);
+        Assert.assertEquals("Expected the handler kept for the rebound target", 0, destroyCount.get());
+
+        serviceHandlerPool.release(SERVICE_INTENT, connector);
+        Assert.assertEquals(1, destroyCount.get());
+        Assert.assertNotSame(serviceHandler, serviceHandlerPool.acquire(SERVICE_INTENT, CONFIGURATION, connector, handlerFactory));
+    }
+
+    @Test
+    public void testSharedBetweenConnectors() {
+        ServiceListener firstConnector = new NoOpServiceListener();
+        ServiceListener secondConnector = new NoOpServiceListener();
+        AbstractServiceHandler serviceHandler = serviceHandlerPool.acquire(SERVICE_INTENT, CONFIGURATION, firstConnector, handlerFactory);
+        Assert.assertSame(serviceHandler, serviceHandlerPool.acquire(SERVICE_INTENT, CONFIGURATION, secondConnector, handlerFactory));
+
+        serviceHandlerPool.release(SERVICE_INTENT, firstConnector);
+        //a release without a reference changes nothing
+        serviceHandlerPool.release(SERVICE_INTENT, firstConnector);
+        Assert.assertEquals(0, destroyCount.get());
+
+        serviceHandlerPool.release(SERVICE_INTENT, secondConnector);
+        Assert.assertEquals(1, destroyCount.get());
+    }
+
+    @Test
+    public void testFirstConfigurationKept() {
+        ServiceListener firstConnector = new NoOpServiceListener();
+        ServiceListener secondConnector = new NoOpServiceListener();
+        AbstractServiceHandler serviceHandler = serviceHandlerPool.acquire(SERVICE_INTENT, CONFIGURATION, firstConnector, handlerFactory);
+        ShadowLog.clear();
+
+        Assert.assertSame(serviceHandler, serviceHandlerPool.acquire(SERVICE_INTENT, "ITestService{bindFlags=0}", secondConnector, handlerFactory));
+        List<ShadowLog.LogItem> warnings = ShadowLog.getLogsForTag("ServiceConnector");
+        Assert.assertEquals("Expected the ignored configuration logged", 1, warnings.size());
+        Assert.assertTrue(warnings.get(0).msg.contains("bindFlags=0"));
+
+        serviceHandlerPool.release(SERVICE_INTENT, firstConnector);
+        serviceHandlerPool.release(SERVICE_INTENT, secondConnector);
+    }
+
+    private static class NoOpServiceListener implements ServiceListener {
+
+        @Override
+        public void onServiceConnected(String serviceIntent, AbstractServiceHandler serviceHandler) {
+        }
+
+        @Override
+        public void onServiceDisconnected(String serviceIntent, AbstractServiceHandler serviceHandler) {
+        }
+
+        @Override
+        public void onServiceConnectionFailed(String serviceIntent, Exception exception) {
+        }
+    }
+}
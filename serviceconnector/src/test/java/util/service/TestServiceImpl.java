@@ -0,0 +1,58 @@
+package util.service;
+
+import android.os.RemoteException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ITestService} implementation that can be slowed down to simulate call latency
+ */
+public class TestServiceImpl extends ITestService.Stub {
+
+    private final AtomicInteger callCount = new AtomicInteger();
+    private final List<Integer> sentValues = new CopyOnWriteArrayList<>();
+    private volatile long callLatency;
+
+    /**
+     * Sets how long each call takes, in ms
+     */
+    public void setCallLatency(long callLatency) {
+        this.callLatency = callLatency;
+    }
+
+    @Override
+    public int echo(int value) throws RemoteException {
+        checkAlive();
+        callCount.incrementAndGet();
+        if (callLatency > 0) {
+            try {
+                Thread.sleep(callLatency);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the values sent to this service, in order
+     */
+    public List<Integer> getSentValues() {
+        return sentValues;
+    }
+
+    @Override
+    public void send(int value) throws RemoteException {
+        checkAlive();
+        callCount.incrementAndGet();
+        sentValues.add(value);
+    }
+
+    @Override
+    public int getCallCount() throws RemoteException {
+        checkAlive();
+        return callCount.get();
+    }
+}
@@ -0,0 +1,92 @@
+package util.service.handler;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageInfo;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowPackageManager;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that the resolved services are kept across processes, and dropped once their packages change
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class ResolutionCacheTest {
+
+    private static final String PACKAGE_NAME = "util.service.resolved";
+    private static final String SERVICE_INTENT = "util.service.resolved.SERVICE";
+    private static final long TIMEOUT = 5000;
+
+    private Context context;
+    private Intent serviceIntent;
+
+    @Before
+    public void setup() {
+        context = RuntimeEnvironment.application;
+        installPackage(1);
+        serviceIntent = new Intent(SERVICE_INTENT).setComponent(new ComponentName(PACKAGE_NAME, PACKAGE_NAME + ".Service"));
+    }
+
+    @Test(timeout = 10000)
+    public void testPersistedResolution() throws Exception {
+        ResolutionCache firstProcess = new ResolutionCache();
+        firstProcess.enablePersistence(context);
+        Assert.assertNull(firstProcess.get(SERVICE_INTENT));
+        firstProcess.put(SERVICE_INTENT, serviceIntent);
+        awaitSaved();
+
+        ResolutionCache nextProcess = new ResolutionCache();
+        nextProcess.enablePersistence(context);
+        Assert.assertTrue(nextProcess.awaitLoaded(TIMEOUT, TimeUnit.MILLISECONDS));
+        Intent resolvedIntent = nextProcess.get(SERVICE_INTENT);
+        Assert.assertNotNull("Expected the resolution loaded", resolvedIntent);
+        Assert.assertTrue(serviceIntent.filterEquals(resolvedIntent));
+    }
+
+    @Test(timeout = 10000)
+    public void testPackageUpdateDropsResolution() throws Exception {
+        ResolutionCache firstProcess = new ResolutionCache();
+        firstProcess.enablePersistence(context);
+        firstProcess.put(SERVICE_INTENT, serviceIntent);
+        awaitSaved();
+
+        installPackage(2);
+        ResolutionCache nextProcess = new ResolutionCache();
+        nextProcess.enablePersistence(context);
+        Assert.assertNull("Expected no resolution used before validated", nextProcess.get(SERVICE_INTENT));
+        Assert.assertTrue(nextProcess.awaitLoaded(TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertNull("Expected the resolution of the updated package dropped", nextProcess.get(SERVICE_INTENT));
+    }
+
+    private void installPackage(int versionCode) {
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = PACKAGE_NAME;
+        packageInfo.versionCode = versionCode;
+        ShadowPackageManager packageManager = Shadow.extract(context.getPackageManager());
+        packageManager.addPackage(packageInfo);
+    }
+
+    /**
+     * Waits for the file to be written, which is replaced at once
+     */
+    private void awaitSaved() throws InterruptedException {
+        File file = new File(context.getCacheDir(), "serviceconnector_resolutions");
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!file.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue("Expected the resolutions saved", file.exists());
+    }
+}
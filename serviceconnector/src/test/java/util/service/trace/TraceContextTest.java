@@ -0,0 +1,163 @@
+package util.service.trace;
+
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Tests that the trace context of the caller reaches the service through the binder, without disturbing the call
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class TraceContextTest {
+
+    @After
+    public void tearDown() {
+        TraceContext.attach(null);
+    }
+
+    @Test
+    public void testContextSentWithCall() throws Exception {
+        EchoBinder service = new EchoBinder(true);
+        IBinder binder = TraceContext.propagateThrough(service);
+        TraceContext traceContext = TraceContext.newTrace();
+        TraceContext.attach(traceContext);
+
+        Assert.assertEquals("Expected the arguments read as sent", 42, call(binder, 42));
+        Assert.assertEquals("Expected the context restored by the service", traceContext, service.received);
+        Assert.assertEquals(1, service.handshakes);
+
+        call(binder, 43);
+        Assert.assertEquals("Expected a single handshake", 1, service.handshakes);
+    }
+
+    @Test
+    public void testCallWithoutContext() throws Exception {
+        EchoBinder service = new EchoBinder(true);
+        IBinder binder = TraceContext.propagateThrough(service);
+        TraceContext.attach(TraceContext.newTrace());
+        call(binder, 1);
+        TraceContext.attach(null);
+
+        Assert.assertEquals(7, call(binder, 7));
+        Assert.assertNull("Expected no context restored for a call without one", service.received);
+        Assert.assertNull(service.currentAfterRestore);
+    }
+
+    @Test
+    public void testContextNotSentWithoutHandshake() throws Exception {
+        EchoBinder service = new EchoBinder(false);
+        IBinder binder = TraceContext.propagateThrough(service);
+        TraceContext.attach(TraceContext.newTrace());
+
+        Assert.assertEquals(5, call(binder, 5));
+        Assert.assertEquals("Expected the call sent unchanged", 4, service.dataSize);
+        Assert.assertNull(service.received);
+        call(binder, 6);
+        Assert.assertEquals("Expected the service asked once", 1, service.handshakes);
+    }
+
+    @Test
+    public void testServiceExposesBinder() throws Exception {
+        EchoBinder service = new EchoBinder(true);
+        IEcho echo = TraceContext.exposeBinder(new EchoProxy(TraceContext.propagateThrough(service)), IEcho.class, service);
+        TraceContext traceContext = TraceContext.newTrace();
+        TraceContext.attach(traceContext);
+
+        Assert.assertSame("Expected the binder that can be sent", service, echo.asBinder());
+        Assert.assertEquals(3, echo.echo(3));
+        Assert.assertEquals(traceContext, service.received);
+    }
+
+    private static int call(IBinder binder, int value) throws RemoteException {
+        Parcel data = Parcel.obtain();
+        Parcel reply = Parcel.obtain();
+        try {
+            data.writeInt(value);
+            binder.transact(IBinder.FIRST_CALL_TRANSACTION, data, reply, 0);
+            reply.setDataPosition(0);
+            return reply.readInt();
+        } finally {
+            data.recycle();
+            reply.recycle();
+        }
+    }
+
+    /**
+     * A service interface shaped like the ones generated from AIDL
+     */
+    public interface IEcho extends IInterface {
+
+        int echo(int value) throws RemoteException;
+    }
+
+    /**
+     * Client side of {@link IEcho}, like the proxy generated from AIDL
+     */
+    private static class EchoProxy implements IEcho {
+
+        private final IBinder remote;
+
+        EchoProxy(IBinder remote) {
+            this.remote = remote;
+        }
+
+        @Override
+        public int echo(int value) throws RemoteException {
+            return call(remote, value);
+        }
+
+        @Override
+        public IBinder asBinder() {
+            return remote;
+        }
+    }
+
+    /**
+     * Service side, restoring the context of each call before reading its arguments if it answers the handshake
+     */
+    private static class EchoBinder extends Binder {
+
+        private final boolean restoring;
+        volatile int handshakes;
+        volatile int dataSize;
+        volatile TraceContext received;
+        volatile TraceContext currentAfterRestore;
+
+        EchoBinder(boolean restoring) {
+            this.restoring = restoring;
+        }
+
+        @Override
+        protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+            if (code == TraceContext.HANDSHAKE_TRANSACTION) {
+                handshakes++;
+            }
+            if (restoring) {
+                if (TraceContext.acceptHandshake(code, reply)) {
+                    return true;
+                }
+                received = TraceContext.restore(data);
+                currentAfterRestore = TraceContext.current();
+            } else if (code != FIRST_CALL_TRANSACTION) {
+                return super.onTransact(code, data, reply, flags);
+            }
+            try {
+                dataSize = data.dataSize();
+                reply.writeInt(data.readInt());
+                return true;
+            } finally {
+                TraceContext.attach(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package util.service.transfer;
+
+import android.os.ParcelFileDescriptor;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests reading the records a service streams, from a file standing in for the pipe
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class ServiceInputStreamTest {
+
+    private static final long TIMEOUT = 5000;
+
+    private final List<ServiceInputStream> endedStreams = new CopyOnWriteArrayList<>();
+    private final ServiceInputStream.Listener listener = new ServiceInputStream.Listener() {
+        @Override
+        public void onStreamEnded(ServiceInputStream stream) {
+            endedStreams.add(stream);
+        }
+    };
+    private ExecutorService executor;
+    private File file;
+
+    @Before
+    public void setup() {
+        executor = Executors.newCachedThreadPool();
+        file = new File(RuntimeEnvironment.application.getCacheDir(), "stream");
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        file.delete();
+    }
+
+    @Test
+    public void testRecordsRead() throws Exception {
+        OutputStream out = new FileOutputStream(file);
+        for (int i = 0; i < 100; i++) {
+            ServiceStreams.writeRecord(out, new byte[]{(byte) i, (byte) (i + 1)});
+        }
+        out.close();
+
+        //chunks smaller than a record, so that records span chunks
+        ServiceInputStream stream = open(3, 2);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertArrayEquals(new byte[]{(byte) i, (byte) (i + 1)}, stream.readRecord());
+        }
+        Assert.assertTrue("Expected the stream not ended before its end was read", endedStreams.isEmpty());
+        Assert.assertNull("Expected the end of the stream", stream.readRecord());
+        Assert.assertEquals("Expected the listener notified once at the end", 1, endedStreams.size());
+        Assert.assertSame(stream, endedStreams.get(0));
+        stream.close();
+        Assert.assertEquals(1, endedStreams.size());
+    }
+
+    @Test
+    public void testSingleByteReads() throws Exception {
+        OutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{0, 0, 1, 2, (byte) 0xff});
+        out.close();
+
+        ServiceInputStream stream = open(2, 1);
+        DataInputStream input = new DataInputStream(stream);
+        Assert.assertEquals(0x0102, input.readInt());
+        Assert.assertEquals(0xff, stream.read());
+        Assert.assertEquals(-1, stream.read());
+        Assert.assertEquals(1, endedStreams.size());
+    }
+
+    @Test
+    public void testClosedStream() throws Exception {
+        OutputStream out = new FileOutputStream(file);
+        out.write(new byte[1024]);
+        out.close();
+
+        ServiceInputStream stream = open(16, 2);
+        stream.read();
+        stream.close();
+        Assert.assertTrue(stream.isClosed());
+        Assert.assertEquals("Expected the listener notified on close", 1, endedStreams.size());
+        try {
+            stream.read();
+            Assert.fail("Expected reads to fail once closed");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testInvalidRecordLength() throws Exception {
+        OutputStream out = new FileOutputStream(file);
+        new DataOutputStream(out).writeInt(-1);
+        out.close();
+        try {
+            open(16, 2).readRecord();
+            Assert.fail("Expected a negative length refused");
+        } catch (IOException expected) {
+        }
+
+        out = new FileOutputStream(file);
+        new DataOutputStream(out).writeInt(ServiceStreams.MAX_RECORD_LENGTH + 1);
+        out.close();
+        try {
+            open(16, 2).readRecord();
+            Assert.fail("Expected a length beyond the maximum refused");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testStreamCutWithinLength() throws Exception {
+        OutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{0, 0});
+        out.close();
+        try {
+            open(16, 2).readRecord();
+            Assert.fail("Expected a stream cut within the length to fail rather than end");
+        } catch (EOFException expected) {
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseWakesBlockedReads() throws Exception {
+        //a named pipe the writer keeps open without writing, so that the read ahead blocks on it
+        final File fifo = new File(RuntimeEnvironment.application.getCacheDir(), "fifo");
+        fifo.delete();
+        Assert.assertEquals(0, new ProcessBuilder("mkfifo", fifo.getPath()).start().waitFor());
+        Future<FileOutputStream> writer = executor.submit(new Callable<FileOutputStream>() {
+            @Override
+            public FileOutputStream call() throws Exception {
+                return new FileOutputStream(fifo);
+            }
+        });
+        ParcelFileDescriptor pipe = ParcelFileDescriptor.open(fifo, ParcelFileDescriptor.MODE_READ_ONLY);
+        ThreadPoolExecutor readAheadExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        try {
+            final ServiceInputStream stream = new ServiceInputStream(pipe, 16, 2, readAheadExecutor);
+            Future<Exception> reader = executor.submit(new Callable<Exception>() {
+                @Override
+                public Exception call() {
+                    try {
+                        stream.read();
+                        return null;
+                    } catch (IOException ex) {
+                        return ex;
+                    }
+                }
+            });
+            Thread.sleep(200);
+            stream.close();
+            Assert.assertNotNull("Expected the waiting read failed on close", reader.get(TIMEOUT, TimeUnit.MILLISECONDS));
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (readAheadExecutor.getActiveCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals("Expected the read ahead not left blocked on the pipe", 0, readAheadExecutor.getActiveCount());
+        } finally {
+            readAheadExecutor.shutdownNow();
+            writer.get().close();
+            fifo.delete();
+        }
+    }
+
+    private ServiceInputStream open(int chunkSize, int readAheadChunks) throws IOException {
+        ParcelFileDescriptor pipe = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        ServiceInputStream stream = new ServiceInputStream(pipe, chunkSize, readAheadChunks, executor);
+        stream.setListener(listener);
+        return stream;
+    }
+}
@@ -0,0 +1,84 @@
+package util.service.transfer;
+
+import android.os.Parcel;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tests the payload written to pooled shared buffers, and their reuse
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class SharedBufferTest {
+
+    //the regions are not closed, as closing them is not supported on the JVM
+    private SharedBufferPool pool;
+
+    @Before
+    public void setup() {
+        pool = new SharedBufferPool("test", 4);
+    }
+
+    @Test
+    public void testPayloadRoundTrip() throws Exception {
+        byte[] payload = new byte[100 * 1024];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        SharedBuffer buffer = pool.obtain(payload.length);
+        Assert.assertTrue("Expected a region fitting the payload", buffer.getCapacity() >= payload.length);
+        buffer.write(payload);
+
+        Assert.assertEquals(payload.length, buffer.getLength());
+        Assert.assertArrayEquals("Expected the payload read back as written", payload, buffer.read());
+        ByteBuffer byteBuffer = buffer.getByteBuffer();
+        Assert.assertEquals("Expected the mapping limited to the payload", payload.length, byteBuffer.remaining());
+
+        Parcel parcel = Parcel.obtain();
+        try {
+            buffer.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            Assert.assertEquals("Expected the length of the payload sent ahead of the region", payload.length, parcel.readInt());
+        } finally {
+            parcel.recycle();
+        }
+        buffer.recycle();
+    }
+
+    @Test
+    public void testBuffersReused() throws Exception {
+        SharedBuffer buffer = pool.obtain(10);
+        buffer.write(new byte[]{1, 2, 3});
+        buffer.recycle();
+
+        SharedBuffer reused = pool.obtain(5);
+        Assert.assertSame("Expected the recycled buffer reused", buffer, reused);
+        Assert.assertEquals("Expected the payload of the last call dropped", 0, reused.getLength());
+
+        SharedBuffer large = pool.obtain(reused.getCapacity() + 1);
+        Assert.assertNotSame(reused, large);
+        large.recycle();
+        reused.recycle();
+        Assert.assertSame("Expected the smallest region that fits reused", reused, pool.obtain(5));
+        Assert.assertSame(large, pool.obtain(reused.getCapacity() + 1));
+    }
+
+    @Test
+    public void testPayloadBeyondCapacity() throws Exception {
+        SharedBuffer buffer = pool.obtain(10);
+        try {
+            buffer.write(new byte[buffer.getCapacity() + 1]);
+            Assert.fail("Expected a payload larger than the region refused");
+        } catch (IllegalArgumentException expected) {
+        } finally {
+            buffer.recycle();
+        }
+    }
+}